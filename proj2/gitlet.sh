@@ -0,0 +1,13 @@
+#!/bin/sh
+# Usage: gitlet.sh ARG...
+# Run gitlet.Main with ARG..., from the directory holding this script.  If
+# "make cds" has built gitlet.jar and its class-data-sharing archive
+# gitlet.jsa, use them, so that the JVM maps the classes Gitlet needs
+# instead of loading and verifying them on every command.
+
+DIR=$(cd "$(dirname "$0")" && pwd)
+if [ -f "$DIR/gitlet.jsa" ] && [ -f "$DIR/gitlet.jar" ]; then
+    exec java -XX:SharedArchiveFile="$DIR/gitlet.jsa" -Xlog:cds=off \
+         -cp "$DIR/gitlet.jar" gitlet.Main "$@"
+fi
+exec java -cp "$DIR" gitlet.Main "$@"
@@ -0,0 +1,774 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/** Timing and space measurements of Gitlet's storage machinery, invoked as
+ *      java gitlet.Benchmarks NAME [ARG...]
+ *  where NAME selects one of the benchmarks below.  Each works in a
+ *  scratch directory that it removes when done, and prints one line per
+ *  measurement.
+ */
+public class Benchmarks {
+
+    /** Run the benchmark named by ARGS[0] with arguments ARGS[1..]. */
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java gitlet.Benchmarks NAME [ARG...]");
+            System.exit(1);
+        }
+        switch (args[0]) {
+            case "delta":
+                delta(intArg(args, 1, 1000), intArg(args, 2, 1 << 18));
+                break;
+            case "statcache":
+                statCache(intArg(args, 1, 50000));
+                break;
+            case "scan":
+                scan(intArg(args, 1, 20000), intArg(args, 2, 1 << 14),
+                     intArg(args, 3,
+                            Runtime.getRuntime().availableProcessors()));
+                break;
+            case "codec":
+                codec(intArg(args, 1, 20000), intArg(args, 2, 50));
+                break;
+            case "compression":
+                compression(intArg(args, 1, 200), intArg(args, 2, 1 << 18));
+                break;
+            case "checkout":
+                checkout(intArg(args, 1, 16), intArg(args, 2, 64));
+                break;
+            case "chunking":
+                chunking(intArg(args, 1, 10), intArg(args, 2, 64));
+                break;
+            case "renames":
+                renames(intArg(args, 1, 5000), intArg(args, 2, 4096));
+                break;
+            case "merge":
+                merge(intArg(args, 1, 100000), intArg(args, 2, 1000));
+                break;
+            case "shards":
+                shards(intArg(args, 1, 1000000), intArg(args, 2, 20000),
+                       intArg(args, 3, 20));
+                break;
+            case "remote":
+                remote(intArg(args, 1, 50000), intArg(args, 2, 10));
+                break;
+            case "train":
+                train();
+                break;
+            case "startup":
+                startup(intArg(args, 1, 20),
+                        args.length > 2 ? args[2] : "gitlet.jar",
+                        args.length > 3 ? args[3] : "gitlet.jsa");
+                break;
+            default:
+                System.err.printf("Unknown benchmark: %s%n", args[0]);
+                System.exit(1);
+        }
+    }
+
+    /** Store VERSIONS successive edits of a SIZE-byte file, once as full
+     *  blobs and once as deltas against the previous version, reporting
+     *  the space used and the time to read back every version. */
+    static void delta(int versions, int size) throws IOException {
+        Random rand = new Random(61);
+        byte[][] edits = new byte[versions][];
+        byte[] data = randomText(rand, size);
+        for (int i = 0; i < versions; i += 1) {
+            edits[i] = data;
+            data = data.clone();
+            for (int k = 0; k < 4; k += 1) {
+                data[rand.nextInt(data.length)] = (byte) ('a' + k);
+            }
+        }
+        for (boolean useDeltas : new boolean[] { false, true }) {
+            File dir = scratchDir();
+            ObjectStore store = new ObjectStore(dir);
+            String[] ids = new String[versions];
+            long start = System.nanoTime();
+            String prev = null;
+            for (int i = 0; i < versions; i += 1) {
+                ids[i] = store.putBlob(edits[i], useDeltas ? prev : null);
+                prev = ids[i];
+            }
+            long writeNanos = System.nanoTime() - start;
+            long bytes = diskUsage(dir);
+            start = System.nanoTime();
+            for (String id : ids) {
+                store.get(id);
+            }
+            long readNanos = System.nanoTime() - start;
+            System.out.printf("%-6s %d versions of %d bytes: %,d bytes on "
+                              + "disk, %.1f us/write, %.1f us/read%n",
+                              useDeltas ? "delta" : "full", versions, size,
+                              bytes, writeNanos / 1e3 / versions,
+                              readNanos / 1e3 / versions);
+            removeAll(dir);
+        }
+    }
+
+    /** Create FILES small working files and report the time to find all
+     *  their blob ids with an empty index, and again once the index has
+     *  been saved (as a status command on an unchanged tree would). */
+    static void statCache(int files) throws IOException {
+        File dir = scratchDir();
+        Random rand = new Random(61);
+        String[] names = new String[files];
+        for (int i = 0; i < files; i += 1) {
+            names[i] = "f" + i + ".txt";
+            Utils.writeContents(Utils.join(dir, names[i]),
+                                randomText(rand, 200 + rand.nextInt(2000)));
+        }
+        File index = Utils.join(dir, "index");
+        for (String pass : new String[] { "cold", "warm" }) {
+            long start = System.nanoTime();
+            StatCache cache = new StatCache(index);
+            for (String name : names) {
+                cache.blobId(name, Utils.join(dir, name));
+            }
+            cache.save();
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%s index, %d files: %.1f ms, %d unhashed%n",
+                              pass, files, nanos / 1e6, cache.hits());
+            pause(20);
+        }
+        removeAll(dir);
+    }
+
+    /** Create FILES working files of up to SIZE bytes and report the time
+     *  to scan and hash them all with 1, 2, 4, ... threads, up to
+     *  MAXTHREADS.  No index is kept, so every file is hashed. */
+    static void scan(int files, int size, int maxThreads)
+        throws IOException {
+        File dir = scratchDir();
+        Random rand = new Random(61);
+        for (int i = 0; i < files; i += 1) {
+            Utils.writeContents(Utils.join(dir, "f" + i),
+                                randomText(rand, rand.nextInt(size)));
+        }
+        File index = Utils.join(dir.getParentFile(), "no-such-index");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long start = System.nanoTime();
+            new TreeScanner(threads).scan(dir, new StatCache(index));
+            System.out.printf("%d files, %2d threads: %.1f ms%n", files,
+                              threads, (System.nanoTime() - start) / 1e6);
+        }
+        removeAll(dir);
+    }
+
+    /** Encode and decode COMMITS commits of FILES files each, with Java
+     *  serialization and with the binary codec, reporting size and
+     *  throughput. */
+    static void codec(int commits, int files) {
+        Commit[] sample = new Commit[commits];
+        String parent = Utils.sha1("root");
+        for (int i = 0; i < commits; i += 1) {
+            TreeMap<String, String> blobs = new TreeMap<>();
+            for (int k = 0; k < files; k += 1) {
+                blobs.put("src/file" + k + ".java", Utils.sha1(i + ":" + k));
+            }
+            sample[i] = new Commit("commit number " + i,
+                                   new Date(1600000000000L + i * 1000L),
+                                   List.of(parent), blobs);
+            parent = Utils.sha1("commit" + i);
+        }
+        for (String codec : new String[] { "java", "binary" }) {
+            boolean java = codec.equals("java");
+            byte[][] encoded = new byte[commits][];
+            long bytes = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < commits; i += 1) {
+                encoded[i] = java ? Utils.serialize(sample[i])
+                    : sample[i].encode();
+                bytes += encoded[i].length;
+            }
+            long writeNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (byte[] data : encoded) {
+                if (java) {
+                    deserialize(data);
+                } else {
+                    Commit.decode(data);
+                }
+            }
+            long readNanos = System.nanoTime() - start;
+            System.out.printf("%-6s %d commits of %d files: %d bytes/commit, "
+                              + "%.0f writes/s, %.0f reads/s%n", codec,
+                              commits, files, bytes / commits,
+                              commits / (writeNanos / 1e9),
+                              commits / (readNanos / 1e9));
+        }
+    }
+
+    /** Return the object Java-serialized in DATA, which Gitlet itself no
+     *  longer reads, for comparison with the binary codec. */
+    private static Object deserialize(byte[] data) {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Add FILES text files of about SIZE bytes each to a store, then read
+     *  them all back, at compression levels 0 (none), 1, 6 and 9,
+     *  reporting the space used and the add and checkout throughput. */
+    static void compression(int files, int size) throws IOException {
+        File work = scratchDir();
+        Random rand = new Random(61);
+        String[] words = new String[500];
+        for (int i = 0; i < words.length; i += 1) {
+            words[i] = new String(randomText(rand, 2 + rand.nextInt(8)))
+                .replace('\n', 'e');
+        }
+        long total = 0;
+        File[] sources = new File[files];
+        for (int i = 0; i < files; i += 1) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < size) {
+                text.append(words[rand.nextInt(words.length)])
+                    .append(rand.nextInt(12) == 0 ? '\n' : ' ');
+            }
+            sources[i] = Utils.join(work, "src" + i + ".txt");
+            Utils.writeContents(sources[i], text.toString());
+            total += sources[i].length();
+        }
+        for (int level : new int[] { 0, 1, 6, 9 }) {
+            System.setProperty(Compression.LEVEL_PROPERTY,
+                               Integer.toString(level));
+            File dir = scratchDir();
+            ObjectStore store = new ObjectStore(dir);
+            String[] ids = new String[files];
+            long start = System.nanoTime();
+            for (int i = 0; i < files; i += 1) {
+                ids[i] = store.putBlob(Utils.readContents(sources[i]), null);
+            }
+            long addNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String id : ids) {
+                store.get(id);
+            }
+            long readNanos = System.nanoTime() - start;
+            System.out.printf("level %d: ratio %.2f, add %.0f MB/s, "
+                              + "checkout %.0f MB/s%n", level,
+                              (double) total / diskUsage(dir),
+                              total / 1e6 / (addNanos / 1e9),
+                              total / 1e6 / (readNanos / 1e9));
+            removeAll(dir);
+        }
+        System.clearProperty(Compression.LEVEL_PROPERTY);
+        removeAll(work);
+    }
+
+    /** Store FILES text files of MEGABYTES MB each, uncompressed and at
+     *  the default compression level, loose and packed, and check them all
+     *  out by reading each blob into memory and writing it (the old path)
+     *  and by ObjectStore.copyTo, reporting the throughput of each. */
+    static void checkout(int files, int megabytes) throws IOException {
+        File work = scratchDir();
+        Random rand = new Random(61);
+        File[] sources = new File[files];
+        for (int i = 0; i < files; i += 1) {
+            sources[i] = Utils.join(work, "src" + i + ".txt");
+            Utils.writeContents(sources[i],
+                                randomText(rand, megabytes << 20));
+        }
+        long total = (long) files * megabytes << 20;
+        for (int level : new int[] { 0, Compression.DEFAULT_LEVEL }) {
+            System.setProperty(Compression.LEVEL_PROPERTY,
+                               Integer.toString(level));
+            File dir = scratchDir();
+            ObjectStore store = new ObjectStore(dir);
+            String[] ids = new String[files];
+            for (int i = 0; i < files; i += 1) {
+                ids[i] = store.putFile(sources[i], null);
+            }
+            for (String form : new String[] { "loose", "packed" }) {
+                if (form.equals("packed")) {
+                    store.gc();
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < files; i += 1) {
+                    Utils.writeContents(sources[i], store.get(ids[i]));
+                }
+                long copyNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < files; i += 1) {
+                    store.copyTo(ids[i], sources[i]);
+                }
+                long streamNanos = System.nanoTime() - start;
+                System.out.printf("level %d, %s: read and write %.0f MB/s, "
+                                  + "copyTo %.0f MB/s%n", level, form,
+                                  total / 1e6 / (copyNanos / 1e9),
+                                  total / 1e6 / (streamNanos / 1e9));
+            }
+            for (PackFile pack : store.packs()) {
+                pack.close();
+            }
+            removeAll(dir);
+        }
+        System.clearProperty(Compression.LEVEL_PROPERTY);
+        removeAll(work);
+    }
+
+    /** Store VERSIONS versions of a MEGABYTES MB binary file, like a disk
+     *  image, each differing from the last by a few small overwrites and
+     *  an insertion, once as whole blobs and once in chunks, reporting the
+     *  space used, and the time to store and to check out every version. */
+    static void chunking(int versions, int megabytes) throws IOException {
+        File work = scratchDir();
+        Random rand = new Random(61);
+        byte[] data = new byte[megabytes << 20];
+        rand.nextBytes(data);
+        File[] sources = new File[versions];
+        for (int v = 0; v < versions; v += 1) {
+            sources[v] = Utils.join(work, "image" + v + ".bin");
+            Utils.writeContents(sources[v], data);
+            for (int k = 0; k < 8; k += 1) {
+                int at = rand.nextInt(data.length - 512);
+                for (int i = at; i < at + 512; i += 1) {
+                    data[i] = (byte) rand.nextInt();
+                }
+            }
+            int at = rand.nextInt(data.length);
+            byte[] next = new byte[data.length + 100];
+            System.arraycopy(data, 0, next, 0, at);
+            System.arraycopy(data, at, next, at + 100, data.length - at);
+            data = next;
+        }
+        long total = 0;
+        for (File source : sources) {
+            total += source.length();
+        }
+        for (String threshold : new String[] { "0", "1048576" }) {
+            System.setProperty(ObjectStore.CHUNK_PROPERTY, threshold);
+            File dir = scratchDir();
+            ObjectStore store = new ObjectStore(dir);
+            String[] ids = new String[versions];
+            long start = System.nanoTime();
+            for (int v = 0; v < versions; v += 1) {
+                ids[v] = store.putFile(sources[v], null);
+            }
+            long addNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String id : ids) {
+                store.copyTo(id, Utils.join(work, "out.bin"));
+            }
+            long readNanos = System.nanoTime() - start;
+            System.out.printf("%s: %d MB stored in %d MB, add %.0f MB/s, "
+                              + "checkout %.0f MB/s%n",
+                              threshold.equals("0") ? "whole" : "chunked",
+                              total >> 20, diskUsage(dir) >> 20,
+                              total / 1e6 / (addNanos / 1e9),
+                              total / 1e6 / (readNanos / 1e9));
+            removeAll(dir);
+        }
+        System.clearProperty(ObjectStore.CHUNK_PROPERTY);
+        removeAll(work);
+    }
+
+    /** Store OBJECTS small loose objects, once directly in the objects
+     *  directory, as earlier versions did, and once in shards, reporting
+     *  the time per write, per read of LOOKUPS present objects, per test
+     *  for LOOKUPS absent ones, per lookup of PREFIXES abbreviated ids, and
+     *  to enumerate every object (as global-log and find do). */
+    static void shards(int objects, int lookups, int prefixes)
+        throws IOException {
+        Random rand = new Random(61);
+        for (boolean sharded : new boolean[] { false, true }) {
+            File dir = scratchDir();
+            File flat = Utils.join(dir, "objects");
+            flat.mkdirs();
+            ObjectStore store = new ObjectStore(dir);
+            String[] ids = new String[objects];
+            long start = System.nanoTime();
+            for (int i = 0; i < objects; i += 1) {
+                byte[] data = ("object " + i).getBytes();
+                if (sharded) {
+                    ids[i] = store.put(ObjectStore.BLOB, data);
+                } else {
+                    ids[i] = Utils.sha1(data);
+                    File tmp = File.createTempFile(".tmp-", "", flat);
+                    Utils.writeContents(tmp, new byte[] { ObjectStore.BLOB },
+                                        data);
+                    WriteBatch.rename(tmp, Utils.join(flat, ids[i]));
+                }
+            }
+            long writeNanos = System.nanoTime() - start;
+            store = new ObjectStore(dir);
+            start = System.nanoTime();
+            for (int k = 0; k < lookups; k += 1) {
+                store.get(ids[rand.nextInt(objects)]);
+            }
+            long readNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int k = 0; k < lookups; k += 1) {
+                store.contains(Utils.sha1("absent " + k));
+            }
+            long missNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int k = 0; k < prefixes; k += 1) {
+                String id = ids[rand.nextInt(objects)];
+                store.findByPrefix(id.substring(0, 7), ObjectStore.BLOB, 2);
+            }
+            long prefixNanos = System.nanoTime() - start;
+            long[] count = new long[1];
+            start = System.nanoTime();
+            store.forEachId(ObjectStore.BLOB, id -> count[0] += 1);
+            long listNanos = System.nanoTime() - start;
+            System.out.printf("%-7s %,d objects: %.1f us/write, %.1f us/read, "
+                              + "%.1f us/miss, %.2f ms/prefix lookup, "
+                              + "%.0f ms to enumerate %,d%n",
+                              sharded ? "sharded" : "flat", objects,
+                              writeNanos / 1e3 / objects,
+                              readNanos / 1e3 / lookups,
+                              missNanos / 1e3 / lookups,
+                              prefixNanos / 1e6 / prefixes,
+                              listNanos / 1e6, count[0]);
+            store.close();
+            removeAll(dir);
+        }
+    }
+
+    /** Build a repository of COMMITS commits, each editing one of 100
+     *  files, and fetch it into empty repositories, once through a pipe to
+     *  a server thread and once through a loopback socket; then make MORE
+     *  commits and fetch them into each.  Reports the objects stored, the
+     *  bytes crossing the connection and the time for every fetch, against
+     *  the size of the repository's objects. */
+    static void remote(int commits, int more) throws IOException {
+        File dir = scratchDir();
+        File src = Utils.join(dir, "src");
+        ObjectStore store = new ObjectStore(src);
+        CommitGraph graph = new CommitGraph(Utils.join(src, "commit-graph"));
+        Random rand = new Random(61);
+        byte[][] files = new byte[100][];
+        for (int f = 0; f < files.length; f += 1) {
+            files[f] = randomText(rand, 4096);
+        }
+        TreeMap<String, String> blobs = new TreeMap<>();
+        String[] tip = new String[1];
+        int[] made = new int[1];
+        Runnable commit = () -> {
+            int f = rand.nextInt(files.length);
+            files[f][rand.nextInt(files[f].length)] = '!';
+            String name = "file" + f + ".txt";
+            blobs.put(name, store.putBlob(files[f], blobs.get(name)));
+            Commit c = new Commit("commit " + made[0], new Date(made[0]),
+                                  tip[0] == null ? List.of()
+                                  : List.of(tip[0]), blobs);
+            tip[0] = store.put(ObjectStore.COMMIT, c.encode());
+            graph.add(tip[0], c, id -> Commit.decode(store.get(id)));
+            made[0] += 1;
+        };
+        for (int i = 0; i < commits; i += 1) {
+            commit.run();
+        }
+        graph.save();
+        store.gc();
+        Refs refs = new Refs();
+        refs.setHead("master");
+        refs.setBranch("master", tip[0]);
+        Utils.writeContents(Utils.join(src, "refs"), refs.encode());
+        System.out.printf("%,d commits: %,d bytes of objects%n", commits,
+                          diskUsage(Utils.join(src, "packs")));
+
+        try (ServerSocket server =
+                 new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread serving = new Thread(() -> Remote.serve(server, List.of(src)));
+            serving.setDaemon(true);
+            serving.start();
+            String[] locations = {
+                src.getPath(),
+                "tcp://127.0.0.1:" + server.getLocalPort()
+                    + src.getAbsolutePath()
+            };
+            String[] names = { "pipe", "socket" };
+            String old = tip[0];
+            for (int phase = 0; phase < 2; phase += 1) {
+                for (int t = 0; t < locations.length; t += 1) {
+                    File dst = Utils.join(dir, names[t]);
+                    ObjectStore local = new ObjectStore(dst);
+                    CommitGraph localGraph =
+                        new CommitGraph(Utils.join(dst, "commit-graph"));
+                    Remote.Endpoint end =
+                        new Remote.Endpoint(local, localGraph,
+                                            id -> Commit.decode(local.get(id)));
+                    long start = System.nanoTime();
+                    Remote.Result result =
+                        Remote.fetch(end, phase == 0 ? List.of()
+                                     : List.of(old),
+                                     locations[t], "master", null);
+                    long nanos = System.nanoTime() - start;
+                    end.position(result.tip);
+                    localGraph.save();
+                    local.close();
+                    System.out.printf("%-6s %-11s fetch: %,d objects, "
+                                      + "%,d bytes, %.1f ms%n", names[t],
+                                      phase == 0 ? "full" : "incremental",
+                                      result.objects, result.bytes,
+                                      nanos / 1e6);
+                }
+                if (phase == 0) {
+                    for (int i = 0; i < more; i += 1) {
+                        commit.run();
+                    }
+                    graph.save();
+                    refs.setBranch("master", tip[0]);
+                    Utils.writeContents(Utils.join(src, "refs"),
+                                        refs.encode());
+                }
+            }
+        }
+        store.close();
+        removeAll(dir);
+    }
+
+    /** Time rename detection for a commit that moves FILES text files of
+     *  about SIZE bytes, editing every other one slightly, deletes FILES
+     *  more, and adds FILES unrelated ones, reporting how many renames are
+     *  found. */
+    static void renames(int files, int size) {
+        Random rand = new Random(61);
+        HashMap<String, byte[]> blobs = new HashMap<>();
+        TreeMap<String, String> sources = new TreeMap<>();
+        TreeMap<String, String> targets = new TreeMap<>();
+        for (int i = 0; i < 3 * files; i += 1) {
+            byte[] data = randomText(rand, size);
+            String id = Utils.sha1(data);
+            blobs.put(id, data);
+            if (i < 2 * files) {
+                sources.put("old/f" + i, id);
+            }
+            if (i < files) {
+                if (i % 2 == 1) {
+                    data = data.clone();
+                    data[rand.nextInt(size)] = '!';
+                    id = Utils.sha1(data);
+                    blobs.put(id, data);
+                }
+                targets.put("new/f" + i, id);
+            } else if (i >= 2 * files) {
+                targets.put("new/f" + i, id);
+            }
+        }
+        RenameDetector detector = new RenameDetector(blobs::get);
+        long start = System.nanoTime();
+        List<RenameDetector.Match> matches =
+            detector.detect(sources, targets);
+        long nanos = System.nanoTime() - start;
+        int correct = 0;
+        for (RenameDetector.Match m : matches) {
+            if (m.source.substring(4).equals(m.target.substring(4))) {
+                correct += 1;
+            }
+        }
+        System.out.printf("%d sources, %d targets: %d matches (%d correct) "
+                          + "in %.0f ms%n", sources.size(), targets.size(),
+                          matches.size(), correct, nanos / 1e6);
+    }
+
+    /** Merge two edited versions of a synthetic file of LINES lines, each
+     *  making EDITS scattered edits of a few lines, of which about one in
+     *  ten overlaps an edit by the other side, reporting the time to diff
+     *  each version against the base and to merge them. */
+    static void merge(int lines, int edits) {
+        Random rand = new Random(61);
+        String[] base = new String[lines];
+        for (int i = 0; i < lines; i += 1) {
+            base[i] = new String(randomText(rand, 10 + rand.nextInt(60)))
+                .replace('\n', ' ') + "\n";
+        }
+        String[] ours = base.clone(), theirs = base.clone();
+        int stride = lines / edits;
+        for (int k = 0; k < edits; k += 1) {
+            int at = k * stride + rand.nextInt(stride / 2);
+            ours[at] = "ours " + k + "\n";
+            int other = k % 10 == 0 ? at : at + stride / 2;
+            theirs[other] = theirs[other] + "theirs " + k + "\n";
+        }
+        byte[] b = String.join("", base).getBytes();
+        byte[] o = String.join("", ours).getBytes();
+        byte[] t = String.join("", theirs).getBytes();
+        for (int run = 0; run < 5; run += 1) {
+            long start = System.nanoTime();
+            ThreeWayMerge m = new ThreeWayMerge(b, o, t);
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%d lines, %d edits per side: %d conflicts, "
+                              + "%d bytes in %.1f ms%n", lines, edits,
+                              m.conflicts(), m.contents().length,
+                              nanos / 1e6);
+        }
+        int[] x = new int[lines], y = new int[lines];
+        for (int i = 0; i < lines; i += 1) {
+            x[i] = rand.nextInt(lines);
+            y[i] = rand.nextInt(lines);
+        }
+        long start = System.nanoTime();
+        int hunks = LineDiff.diff(x, y).size();
+        System.out.printf("%d unrelated lines: %d hunks in %.1f ms%n", lines,
+                          hunks, (System.nanoTime() - start) / 1e6);
+    }
+
+    /** Exercise the machinery of the common commands (init, add, commit,
+     *  log, and checkout) in a scratch repository.  Run in a JVM started
+     *  with -XX:ArchiveClassesAtExit, this is the training run that makes
+     *  the class-data archive used by gitlet.sh (see "make cds"). */
+    static void train() throws IOException {
+        File work = scratchDir();
+        File cwd = Repository.CWD;
+        Repository.open(work);
+        for (String cmnd : new String[] { "init", "add", "commit", "log" }) {
+            Main.run(new String[] { cmnd });
+        }
+        Repository.GITLET_DIR.mkdir();
+        Random rand = new Random(61);
+        List<String> heads = new ArrayList<>();
+        for (int i = 0; i < 3; i += 1) {
+            Utils.writeContents(Utils.join(work, "f" + i + ".txt"),
+                                randomText(rand, 1000 << i));
+            StagingArea stage = Repository.readStagingArea();
+            for (String name : Repository.workingFiles().keySet()) {
+                stage.add(name, Repository.writeBlob(Utils.join(work, name),
+                                                     null));
+            }
+            Repository.writeStagingArea(stage);
+            Commit commit = new Commit("round " + i, new Date(), heads,
+                                       stage.getAdditions());
+            heads = List.of(Repository.writeCommit(commit));
+            Repository.writeBranch("master", heads.get(0));
+            Repository.setCurrentBranch("master");
+            Repository.writeStagingArea(new StagingArea());
+            Repository.flush();
+        }
+        StringBuilder log = new StringBuilder();
+        String head = Repository.readBranch(Repository.currentBranch());
+        for (String id : Repository.history(head)) {
+            Commit commit = Repository.readCommit(id);
+            log.append(String.format("===%ncommit %s%nDate: %2$ta %2$tb %2$te "
+                                     + "%2$tT %2$tY %2$tz%n%3$s%n%n", id,
+                                     commit.getTimestamp(),
+                                     commit.getMessage()));
+        }
+        String first = Repository.resolveCommitId(
+            Repository.history(head).get(2).substring(0, 8));
+        Repository.switchTree(head, first);
+        Repository.switchTree(first, head);
+        Main.run(new String[] { "gc" });
+        Repository.open(cwd);
+        removeAll(work);
+    }
+
+    /** Report the mean wall time over RUNS runs of each of the commands
+     *  init, add, commit, log and gc, each in a fresh JVM running Gitlet
+     *  from the jar JAR, without and with the class-data archive
+     *  ARCHIVE. */
+    static void startup(int runs, String jar, String archive)
+        throws IOException {
+        String classpath = new File(jar).getAbsolutePath();
+        String[][] commands = {
+            { "init" }, { "add", "f.txt" }, { "commit", "message" }, { "log" },
+            { "gc" }
+        };
+        File work = scratchDir();
+        Utils.join(work, ".gitlet").mkdir();
+        Utils.writeContents(Utils.join(work, "f.txt"), "contents\n");
+        for (String[] cmnd : commands) {
+            ProcessBuilder[] builders = new ProcessBuilder[2];
+            for (int shared = 0; shared < 2; shared += 1) {
+                List<String> argv = new ArrayList<>();
+                argv.add(Path.of(System.getProperty("java.home"), "bin",
+                                 "java").toString());
+                if (shared == 1) {
+                    argv.add("-XX:SharedArchiveFile="
+                             + new File(archive).getAbsolutePath());
+                }
+                argv.addAll(List.of("-cp", classpath, "gitlet.Main"));
+                argv.addAll(List.of(cmnd));
+                builders[shared] = new ProcessBuilder(argv)
+                    .directory(work)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD);
+            }
+            double[] millis = new double[2];
+            for (int i = 0; i < runs; i += 1) {
+                for (int shared = 0; shared < 2; shared += 1) {
+                    long start = System.nanoTime();
+                    try {
+                        builders[shared].start().waitFor();
+                    } catch (InterruptedException excp) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    millis[shared] += (System.nanoTime() - start) / 1e6 / runs;
+                }
+            }
+            System.out.printf("%-7s %.1f ms without archive, %.1f ms with%n",
+                              cmnd[0] + ":", millis[0], millis[1]);
+        }
+        removeAll(work);
+    }
+
+    /** Wait MILLIS milliseconds, so that files written afterwards have
+     *  later timestamps than those written before. */
+    static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Return N random lower-case letters and newlines, using RAND. */
+    static byte[] randomText(Random rand, int n) {
+        byte[] result = new byte[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = rand.nextInt(40) == 0 ? (byte) '\n'
+                : (byte) ('a' + rand.nextInt(26));
+        }
+        return result;
+    }
+
+    /** Return ARGS[K] as an integer, or DFLT if there is no such
+     *  argument. */
+    static int intArg(String[] args, int k, int dflt) {
+        return args.length > k ? Integer.parseInt(args[k]) : dflt;
+    }
+
+    /** Return a new, empty scratch directory. */
+    static File scratchDir() throws IOException {
+        return Files.createTempDirectory("gitlet-bench").toFile();
+    }
+
+    /** Return the total size of the plain files under DIR. */
+    static long diskUsage(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.filter(Files::isRegularFile)
+                .mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    /** Remove DIR and everything under it. */
+    static void removeAll(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/** Content-defined chunking: splits a stream of bytes into chunks whose
+ *  boundaries depend only on the bytes near them, so that an edit to a
+ *  large file changes only the chunks it touches, and inserting or
+ *  deleting bytes does not shift the boundaries after it.  Chunked blobs
+ *  (see ObjectStore) store each distinct chunk once.
+ *
+ *  Boundaries are found with the Gear rolling hash, h = (h << 1) +
+ *  GEAR[b] for each byte b, whose top bits depend on the last 64 bytes.
+ *  As in FastCDC, a position is a boundary when the top bits of h are all
+ *  zero, testing more bits ("normalized chunking") before the chunk
+ *  reaches AVERAGE bytes and fewer after, which keeps chunk sizes close
+ *  to AVERAGE; no chunk is shorter than MIN (except the last) or longer
+ *  than MAX.  The table GEAR is part of the storage format: changing it
+ *  would change every boundary, and so the chunks of every new blob.
+ */
+class Chunker {
+
+    /** Minimum length of a chunk other than the last. */
+    static final int MIN = 1 << 11;
+    /** Length near which chunk lengths are concentrated. */
+    static final int AVERAGE = 1 << 13;
+    /** Maximum length of a chunk. */
+    static final int MAX = 1 << 16;
+
+    /** Number of top bits of the hash that must be zero at a boundary
+     *  before the chunk reaches AVERAGE bytes. */
+    private static final int SMALL_BITS = 15;
+    /** Number of top bits of the hash that must be zero at a boundary
+     *  after the chunk reaches AVERAGE bytes. */
+    private static final int LARGE_BITS = 11;
+
+    /** Random values added to the hash for each byte value, from the
+     *  SplitMix64 sequence starting at 0. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long x = 0;
+        for (int b = 0; b < GEAR.length; b += 1) {
+            x += 0x9e3779b97f4a7c15L;
+            long z = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[b] = z ^ (z >>> 31);
+        }
+    }
+
+    /** A chunker dividing the contents of IN. */
+    Chunker(InputStream in) {
+        _in = in;
+    }
+
+    /** Return the next chunk of the input, or null at its end. */
+    byte[] next() throws IOException {
+        if (_end - _pos < MAX && !_eof) {
+            System.arraycopy(_buf, _pos, _buf, 0, _end - _pos);
+            _end -= _pos;
+            _pos = 0;
+            int n = _in.readNBytes(_buf, _end, _buf.length - _end);
+            _end += n;
+            _eof = _end < _buf.length;
+        }
+        if (_pos == _end) {
+            return null;
+        }
+        int len = cut(_buf, _pos, _end);
+        byte[] chunk = Arrays.copyOfRange(_buf, _pos, _pos + len);
+        _pos += len;
+        return chunk;
+    }
+
+    /** Return the length of the chunk beginning at DATA[START], given that
+     *  the input continues to DATA[END - 1] and, unless END - START is at
+     *  least MAX, ends there. */
+    static int cut(byte[] data, int start, int end) {
+        int n = Math.min(end - start, MAX);
+        if (n <= MIN) {
+            return n;
+        }
+        int normal = Math.min(n, AVERAGE);
+        long h = 0;
+        int i = MIN;
+        for (; i < normal; i += 1) {
+            h = (h << 1) + GEAR[data[start + i] & 0xff];
+            if (h >>> (64 - SMALL_BITS) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i += 1) {
+            h = (h << 1) + GEAR[data[start + i] & 0xff];
+            if (h >>> (64 - LARGE_BITS) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /** Source of the input. */
+    private final InputStream _in;
+    /** Input read but not yet returned in chunks, in _buf[_pos.._end-1];
+     *  it holds at least MAX bytes unless the input has ended. */
+    private final byte[] _buf = new byte[2 * MAX];
+    /** Bounds of the unreturned input in _buf. */
+    private int _pos, _end;
+    /** True iff the input has been read to its end. */
+    private boolean _eof;
+}
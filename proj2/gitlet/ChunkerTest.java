@@ -0,0 +1,50 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** Tests of content-defined chunking. */
+public class ChunkerTest {
+
+    /** Return the SHA-1 ids of the chunks of DATA, checking that they
+     *  have allowed lengths and together make up DATA. */
+    private static Set<String> chunks(byte[] data) throws IOException {
+        Set<String> result = new HashSet<>();
+        Chunker chunker = new Chunker(new ByteArrayInputStream(data));
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        for (byte[] c = chunker.next(); c != null; c = chunker.next()) {
+            assertTrue(c.length <= Chunker.MAX);
+            assertTrue(c.length >= Chunker.MIN
+                       || all.size() + c.length == data.length);
+            all.write(c);
+            result.add(Utils.sha1(c));
+        }
+        assertArrayEquals(data, all.toByteArray());
+        return result;
+    }
+
+    @Test
+    public void editsChangeFewChunks() throws IOException {
+        Random rand = new Random(61);
+        byte[] data = new byte[3 << 20];
+        rand.nextBytes(data);
+        Set<String> original = chunks(data);
+        assertTrue(original.size() > data.length / Chunker.AVERAGE / 2);
+        byte[] edited = new byte[data.length - 100];
+        System.arraycopy(data, 0, edited, 0, 1000000);
+        System.arraycopy(data, 1000100, edited, 1000000,
+                         data.length - 1000100);
+        Set<String> changed = chunks(edited);
+        changed.removeAll(original);
+        assertTrue(changed.size() <= 2);
+        assertTrue(chunks(new byte[0]).isEmpty());
+        assertTrue(chunks(new byte[Chunker.MAX * 3]).size() <= 2);
+    }
+}
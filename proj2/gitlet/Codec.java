@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Primitives of Gitlet's compact binary object formats.  Integers are
+ *  written as LEB128 varints (signed ones zig-zag encoded first), strings
+ *  as a varint byte count followed by UTF-8, and SHA-1 ids as their 20 raw
+ *  bytes rather than 40 hexadecimal characters.  Each format begins with a
+ *  two-byte magic number and a version byte, so that readers can tell it
+ *  from other formats and from older versions of itself.
+ */
+class Codec {
+
+    /** Largest number of bytes in a varint of a long. */
+    static final int MAX_VARINT_BYTES = 10;
+
+    /** Return true iff DATA begins with the two-byte MAGIC. */
+    static boolean hasMagic(byte[] data, int magic) {
+        return data.length >= 3
+            && ((data[0] & 0xff) << 8 | (data[1] & 0xff)) == magic;
+    }
+
+    /** Write the non-negative value X to OUT as an unsigned LEB128
+     *  varint. */
+    static void writeVarint(ByteArrayOutputStream out, long x) {
+        while ((x & ~0x7fL) != 0) {
+            out.write((int) ((x & 0x7f) | 0x80));
+            x >>>= 7;
+        }
+        out.write((int) x);
+    }
+
+    /** Return X, which is non-negative, as a varint of exactly WIDTH
+     *  bytes, padded with continuation bytes that add nothing to its
+     *  value, so that a length can be reserved before it is known and
+     *  filled in afterwards.  The readers below read it as they do the
+     *  shortest form.  WIDTH must be large enough to hold X. */
+    static byte[] fixedVarint(long x, int width) {
+        byte[] result = new byte[width];
+        for (int i = 0; i < width - 1; i += 1) {
+            result[i] = (byte) ((x & 0x7f) | 0x80);
+            x >>>= 7;
+        }
+        if ((x & ~0x7fL) != 0) {
+            throw new IllegalArgumentException("varint too wide");
+        }
+        result[width - 1] = (byte) x;
+        return result;
+    }
+
+    /** Return the varint in DATA at POS[0], advancing POS[0] past it. */
+    static long readVarint(byte[] data, int[] pos) {
+        long x = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= data.length) {
+                throw new IllegalArgumentException("truncated varint");
+            }
+            byte b = data[pos[0]++];
+            x |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return x;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /** Return the varint at the position of BUF, advancing past it. */
+    static long readVarint(ByteBuffer buf) {
+        long x = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!buf.hasRemaining()) {
+                throw new IllegalArgumentException("truncated varint");
+            }
+            byte b = buf.get();
+            x |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return x;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /** Accumulates an encoded object. */
+    static class Writer {
+
+        /** A writer whose output begins with the two-byte MAGIC and the
+         *  version byte VERSION. */
+        Writer(int magic, int version) {
+            _out.write(magic >>> 8);
+            _out.write(magic);
+            _out.write(version);
+        }
+
+        /** Append the non-negative X as a varint. */
+        Writer varint(long x) {
+            writeVarint(_out, x);
+            return this;
+        }
+
+        /** Append X, which may be negative, as a zig-zag varint. */
+        Writer signed(long x) {
+            writeVarint(_out, (x << 1) ^ (x >> 63));
+            return this;
+        }
+
+        /** Append S as a length-prefixed UTF-8 string. */
+        Writer string(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(_out, bytes.length);
+            _out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        /** Append DATA as a length-prefixed sequence of bytes. */
+        Writer bytes(byte[] data) {
+            writeVarint(_out, data.length);
+            _out.write(data, 0, data.length);
+            return this;
+        }
+
+        /** Append the hexadecimal SHA-1 id ID as 20 raw bytes. */
+        Writer id(String id) {
+            byte[] bytes = Utils.fromHex(id);
+            if (bytes.length != PackFile.ID_BYTES) {
+                throw new IllegalArgumentException("not a SHA-1 id: " + id);
+            }
+            _out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        /** Return the bytes written so far. */
+        byte[] toByteArray() {
+            return _out.toByteArray();
+        }
+
+        /** Destination of the encoding. */
+        private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+    }
+
+    /** Decodes an object written by a Writer.  Malformed input causes an
+     *  IllegalArgumentException. */
+    static class Reader {
+
+        /** A reader of DATA, which must begin with the two-byte MAGIC.
+         *  The version byte that follows is available from version(). */
+        Reader(byte[] data, int magic) {
+            if (!hasMagic(data, magic)) {
+                throw new IllegalArgumentException("bad magic number");
+            }
+            _data = data;
+            _version = data[2] & 0xff;
+            _pos[0] = 3;
+        }
+
+        /** Return the version byte of the encoding. */
+        int version() {
+            return _version;
+        }
+
+        /** Read a varint. */
+        long varint() {
+            return readVarint(_data, _pos);
+        }
+
+        /** Read a varint that must fit in a non-negative int. */
+        int count() {
+            long n = varint();
+            if (n > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("count out of range");
+            }
+            return (int) n;
+        }
+
+        /** Read a zig-zag varint. */
+        long signed() {
+            long x = varint();
+            return (x >>> 1) ^ -(x & 1);
+        }
+
+        /** Read a length-prefixed UTF-8 string. */
+        String string() {
+            int len = count();
+            check(len);
+            String s = new String(_data, _pos[0], len, StandardCharsets.UTF_8);
+            _pos[0] += len;
+            return s;
+        }
+
+        /** Read a length-prefixed sequence of bytes. */
+        byte[] bytes() {
+            int len = count();
+            check(len);
+            _pos[0] += len;
+            return Arrays.copyOfRange(_data, _pos[0] - len, _pos[0]);
+        }
+
+        /** Read a raw 20-byte id and return it in hexadecimal. */
+        String id() {
+            check(PackFile.ID_BYTES);
+            _pos[0] += PackFile.ID_BYTES;
+            return Utils.toHex(Arrays.copyOfRange(_data,
+                                                  _pos[0] - PackFile.ID_BYTES,
+                                                  _pos[0]));
+        }
+
+        /** Throw an exception unless all input has been read. */
+        void end() {
+            if (_pos[0] != _data.length) {
+                throw new IllegalArgumentException("trailing bytes");
+            }
+        }
+
+        /** Throw an exception unless at least N more bytes remain. */
+        private void check(int n) {
+            if (n > _data.length - _pos[0]) {
+                throw new IllegalArgumentException("truncated object");
+            }
+        }
+
+        /** The encoded object. */
+        private final byte[] _data;
+        /** The version byte. */
+        private final int _version;
+        /** Current position in _data, boxed for readVarint. */
+        private final int[] _pos = { 0 };
+    }
+}
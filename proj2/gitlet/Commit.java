@@ -1,26 +1,116 @@
 package gitlet;
 
-// TODO: any imports you need here
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
-import java.util.Date; // TODO: You'll likely use this in this class
-
-/** Represents a gitlet commit object.
- *  TODO: It's a good idea to give a description here of what else this Class
- *  does at a high level.
+/** Represents a gitlet commit object: a message, a timestamp, the ids of
+ *  zero (for the initial commit), one, or two (for a merge) parent
+ *  commits, and a map from each tracked file name to the id of the blob
+ *  holding its contents.  Commits are immutable, and are stored in the
+ *  ObjectStore under the SHA-1 of their encoding.
+ *
+ *  A commit is encoded in a compact, versioned binary form (see Codec):
+ *  the timestamp in milliseconds, the parents and blob ids as raw 20-byte
+ *  hashes, and the file names and message as length-prefixed UTF-8.
+ *  This is the only encoding read, whether from this repository or
+ *  another, since deserializing arbitrary data can run arbitrary code.
  *
  *  @author TODO
  */
-public class Commit {
-    /**
-     * TODO: add instance variables here.
-     *
-     * List all instance variables of the Commit class here with a useful
-     * comment above them describing what that variable represents and how that
-     * variable is used. We've provided one example for `message`.
-     */
+public class Commit implements Dumpable {
 
-    /** The message of this Commit. */
-    private String message;
+    /** Magic number beginning an encoded commit ("GC"). */
+    static final int MAGIC = 0x4743;
+    /** Current version of the commit encoding. */
+    static final int VERSION = 1;
+
+    /** A commit with message MESSAGE, made at TIMESTAMP, whose parents
+     *  have ids PARENTS, and which tracks the files in BLOBS, mapped to
+     *  their blob ids. */
+    Commit(String message, Date timestamp, List<String> parents,
+           Map<String, String> blobs) {
+        this.message = message;
+        this.timestamp = new Date(timestamp.getTime());
+        this.parents = new ArrayList<>(parents);
+        this.blobs = new TreeMap<>(blobs);
+    }
+
+    /** Return the message of this commit. */
+    String getMessage() {
+        return message;
+    }
+
+    /** Return the time at which this commit was made. */
+    Date getTimestamp() {
+        return new Date(timestamp.getTime());
+    }
 
-    /* TODO: fill in the rest of this class. */
+    /** Return the ids of the parents of this commit, first parent first. */
+    List<String> getParents() {
+        return Collections.unmodifiableList(parents);
+    }
+
+    /** Return the map from tracked file names to blob ids, in order of
+     *  name. */
+    SortedMap<String, String> getBlobs() {
+        return Collections.unmodifiableSortedMap(blobs);
+    }
+
+    /** Return the encoding of this commit. */
+    byte[] encode() {
+        Codec.Writer out = new Codec.Writer(MAGIC, VERSION);
+        out.signed(timestamp.getTime());
+        out.varint(parents.size());
+        for (String parent : parents) {
+            out.id(parent);
+        }
+        out.string(message);
+        out.varint(blobs.size());
+        for (Map.Entry<String, String> e : blobs.entrySet()) {
+            out.string(e.getKey()).id(e.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the commit encoded in DATA.  Throws IllegalArgumentException
+     *  if DATA is not a valid encoding. */
+    static Commit decode(byte[] data) {
+        Codec.Reader in = new Codec.Reader(data, MAGIC);
+        if (in.version() != VERSION) {
+            throw new IllegalArgumentException("unknown commit version");
+        }
+        Date timestamp = new Date(in.signed());
+        List<String> parents = new ArrayList<>();
+        for (int n = in.count(); n > 0; n -= 1) {
+            parents.add(in.id());
+        }
+        String message = in.string();
+        TreeMap<String, String> blobs = new TreeMap<>();
+        for (int n = in.count(); n > 0; n -= 1) {
+            String name = in.string();
+            blobs.put(name, in.id());
+        }
+        in.end();
+        return new Commit(message, timestamp, parents, blobs);
+    }
+
+    @Override
+    public void dump() {
+        System.out.printf("message: %s%ntimestamp: %s%nparents: %s%n"
+                          + "blobs: %s%n", message, timestamp, parents, blobs);
+    }
+
+    /** The message of this Commit. */
+    private final String message;
+    /** The time at which this Commit was made. */
+    private final Date timestamp;
+    /** Ids of the parents of this Commit, first parent first. */
+    private final ArrayList<String> parents;
+    /** Map from each tracked file name to its blob id. */
+    private final TreeMap<String, String> blobs;
 }
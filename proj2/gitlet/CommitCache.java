@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/** A size-bounded cache of decoded commits, keyed by id, that evicts the
+ *  least recently used commit when full.  Since commits are immutable, a
+ *  cached commit never goes stale, and walks over ancestry (log, merge
+ *  split-point search) read and decode each commit at most once as long
+ *  as the history they visit fits in the cache.
+ */
+class CommitCache {
+
+    /** Name of the system property giving the capacity. */
+    static final String SIZE_PROPERTY = "gitlet.commitCacheSize";
+    /** Default capacity. */
+    static final int DEFAULT_SIZE = 10000;
+
+    /** A cache holding at most CAPACITY commits. */
+    CommitCache(int capacity) {
+        _capacity = Math.max(1, capacity);
+        _map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Commit> e) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** A cache whose capacity is given by gitlet.commitCacheSize. */
+    CommitCache() {
+        this(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+    }
+
+    /** Return the commit with id ID, obtaining it from LOADER and caching
+     *  it if it is not already cached. */
+    Commit get(String id, Function<String, Commit> loader) {
+        Commit result = _map.get(id);
+        if (result != null) {
+            _hits += 1;
+            return result;
+        }
+        _misses += 1;
+        result = loader.apply(id);
+        _map.put(id, result);
+        return result;
+    }
+
+    /** Record that COMMIT has id ID. */
+    void put(String id, Commit commit) {
+        _map.put(id, commit);
+    }
+
+    /** Return a one-line summary of the cache's effectiveness. */
+    String stats() {
+        long total = _hits + _misses;
+        return String.format("commit cache: %d hits, %d misses (%.1f%% hit "
+                             + "rate), %d evictions, %d/%d entries",
+                             _hits, _misses,
+                             total == 0 ? 0.0 : 100.0 * _hits / total,
+                             _evictions, _map.size(), _capacity);
+    }
+
+    /** Return the number of lookups satisfied from the cache. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that had to load a commit. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Maximum number of cached commits. */
+    private final int _capacity;
+    /** Cached commits by id, in order of last use. */
+    private final LinkedHashMap<String, Commit> _map;
+    /** Counts of hits, misses and evictions. */
+    private long _hits, _misses, _evictions;
+}
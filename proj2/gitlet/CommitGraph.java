@@ -0,0 +1,286 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/** The shape of a repository's history, kept in .gitlet/commit-graph so
+ *  that ancestry questions can be answered without reading commits.  For
+ *  each commit, the graph records its id, the positions in the graph of
+ *  its parents, its timestamp, and its generation number: 1 for a commit
+ *  with no parents, and otherwise one more than the largest generation of
+ *  its parents.  A commit's ancestors all have smaller generations, which
+ *  lets merge-base searches stop early.
+ *
+ *  Commits are appended as they are made, so that a commit's parents
+ *  always precede it.  The file holds a header (MAGIC, VERSION, count)
+ *  followed by fixed-size records of the form ID (20 bytes), FIRST PARENT
+ *  and SECOND PARENT positions (4 bytes each, -1 if absent), TIMESTAMP
+ *  (8 bytes), and GENERATION (4 bytes).  The count is updated only after
+ *  the records are on disk, so a partly written record is ignored.
+ */
+class CommitGraph {
+
+    /** Magic number beginning the graph file. */
+    private static final int MAGIC = 0x47434752;
+    /** Current version of the format. */
+    private static final int VERSION = 1;
+    /** Size of the header in bytes. */
+    private static final int HEADER = 12;
+    /** Size of a record in bytes. */
+    private static final int RECORD = PackFile.ID_BYTES + 4 + 4 + 8 + 4;
+    /** Marks an absent parent. */
+    static final int NONE = -1;
+
+    /** The graph stored in FILE, which is read in full if it exists. */
+    CommitGraph(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        ByteBuffer buf;
+        try {
+            buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (buf.limit() < HEADER || buf.getInt() != MAGIC
+            || buf.getInt() != VERSION) {
+            throw new IllegalArgumentException("bad commit graph");
+        }
+        int n = Math.min(buf.getInt(), (buf.limit() - HEADER) / RECORD);
+        grow(n);
+        byte[] id = new byte[PackFile.ID_BYTES];
+        for (int k = 0; k < n; k += 1) {
+            buf.get(id);
+            append(Utils.toHex(id), buf.getInt(), buf.getInt(),
+                   buf.getLong(), buf.getInt());
+        }
+        _saved = n;
+    }
+
+    /** Return the number of commits in the graph. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the position of the commit with id ID, or NONE if it is not
+     *  in the graph. */
+    int position(String id) {
+        Integer k = _positions.get(id);
+        return k == null ? NONE : k;
+    }
+
+    /** Return the id of the commit at position K. */
+    String id(int k) {
+        return _ids.get(k);
+    }
+
+    /** Return the position of the first parent of the commit at K, or
+     *  NONE. */
+    int firstParent(int k) {
+        return _parent1[k];
+    }
+
+    /** Return the position of the second parent of the commit at K, or
+     *  NONE. */
+    int secondParent(int k) {
+        return _parent2[k];
+    }
+
+    /** Return the generation number of the commit at K. */
+    int generation(int k) {
+        return _generation[k];
+    }
+
+    /** Return the timestamp, in milliseconds, of the commit at K. */
+    long timestamp(int k) {
+        return _timestamp[k];
+    }
+
+    /** Add the commit COMMIT, whose id is ID, to the graph, first adding
+     *  any of its ancestors that are missing, as found by LOADER.
+     *  (Ancestors are missing only in a repository made before the graph
+     *  was kept.)  The additions reach the graph file on the next save.
+     *  Returns the commit's position. */
+    int add(String id, Commit commit, Function<String, Commit> loader) {
+        if (position(id) != NONE) {
+            return position(id);
+        }
+        Deque<String> pending = new ArrayDeque<>();
+        HashMap<String, Commit> loaded = new HashMap<>();
+        pending.push(id);
+        loaded.put(id, commit);
+        while (!pending.isEmpty()) {
+            String next = pending.peek();
+            Commit c = loaded.computeIfAbsent(next, loader);
+            boolean ready = true;
+            for (String p : c.getParents()) {
+                if (position(p) == NONE) {
+                    pending.push(p);
+                    ready = false;
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            pending.pop();
+            if (position(next) != NONE) {
+                continue;
+            }
+            List<String> parents = c.getParents();
+            int p1 = parents.size() > 0 ? position(parents.get(0)) : NONE;
+            int p2 = parents.size() > 1 ? position(parents.get(1)) : NONE;
+            int gen = 1 + Math.max(p1 == NONE ? 0 : _generation[p1],
+                                   p2 == NONE ? 0 : _generation[p2]);
+            long time = c.getTimestamp().getTime();
+            grow(_size + 1);
+            append(next, p1, p2, time, gen);
+        }
+        return position(id);
+    }
+
+    /** Return the position of a latest common ancestor of the commits at
+     *  A and B: a common ancestor that is not an ancestor of any other
+     *  common ancestor.  Returns NONE if they have no common ancestor.
+     *
+     *  Commits are visited in decreasing order of generation, marking each
+     *  with the side(s) it is reachable from.  A commit's descendants all
+     *  have larger generations, so its marks are final when it is visited,
+     *  and the first commit found reachable from both sides is the
+     *  answer.  Only commits whose generation is at least that of the
+     *  answer are ever visited. */
+    int mergeBase(int a, int b) {
+        HashMap<Integer, Integer> marks = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (x, y) -> _generation[x] != _generation[y]
+                ? Integer.compare(_generation[y], _generation[x])
+                : Integer.compare(y, x));
+        marks.put(a, 1);
+        marks.merge(b, 2, (x, y) -> x | y);
+        queue.add(a);
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int x = queue.poll();
+            int mark = marks.get(x);
+            if (mark == 3) {
+                return x;
+            }
+            while (!queue.isEmpty() && queue.peek() == x) {
+                queue.poll();
+            }
+            for (int p : new int[] { _parent1[x], _parent2[x] }) {
+                if (p != NONE) {
+                    int old = marks.getOrDefault(p, 0);
+                    if ((old | mark) != old) {
+                        marks.put(p, old | mark);
+                        queue.add(p);
+                    }
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /** Return the ids of the commit at K and its first-parent ancestors,
+     *  newest first, as followed by log. */
+    List<String> firstParentChain(int k) {
+        List<String> result = new ArrayList<>();
+        for (; k != NONE; k = _parent1[k]) {
+            result.add(_ids.get(k));
+        }
+        return result;
+    }
+
+    /** Make room in the arrays for at least N commits. */
+    private void grow(int n) {
+        if (n > _parent1.length) {
+            int cap = Math.max(n, 2 * _parent1.length);
+            _parent1 = Arrays.copyOf(_parent1, cap);
+            _parent2 = Arrays.copyOf(_parent2, cap);
+            _timestamp = Arrays.copyOf(_timestamp, cap);
+            _generation = Arrays.copyOf(_generation, cap);
+        }
+    }
+
+    /** Add a commit with id ID, parent positions P1 and P2, timestamp TIME
+     *  and generation GEN to the in-memory graph. */
+    private void append(String id, int p1, int p2, long time, int gen) {
+        _ids.add(id);
+        _positions.put(id, _size);
+        _parent1[_size] = p1;
+        _parent2[_size] = p2;
+        _timestamp[_size] = time;
+        _generation[_size] = gen;
+        _size += 1;
+    }
+
+    /** Append the commits added since the last save to the graph file,
+     *  creating it if needed, and then update its count.  If another
+     *  command has extended the file since this graph read it, nothing is
+     *  saved, since positions in this graph no longer match the file's;
+     *  the commits missing from the file are added again when needed. */
+    void save() {
+        if (_saved == _size) {
+            return;
+        }
+        try (RandomAccessFile out = new RandomAccessFile(_file, "rw")) {
+            if (out.length() < HEADER) {
+                if (_saved != 0) {
+                    return;
+                }
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(0);
+            } else {
+                out.seek(8);
+                if (out.readInt() != _saved) {
+                    return;
+                }
+            }
+            ByteBuffer records = ByteBuffer.allocate((_size - _saved) * RECORD);
+            for (int k = _saved; k < _size; k += 1) {
+                records.put(Utils.fromHex(_ids.get(k)))
+                    .putInt(_parent1[k]).putInt(_parent2[k])
+                    .putLong(_timestamp[k]).putInt(_generation[k]);
+            }
+            out.seek(HEADER + (long) _saved * RECORD);
+            out.write(records.array());
+            out.setLength(HEADER + (long) _size * RECORD);
+            out.getFD().sync();
+            out.seek(8);
+            out.writeInt(_size);
+            _saved = _size;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The graph file. */
+    private final File _file;
+    /** Number of commits. */
+    private int _size;
+    /** Number of commits in the graph file. */
+    private int _saved;
+    /** Commit ids by position. */
+    private final ArrayList<String> _ids = new ArrayList<>();
+    /** Positions by commit id. */
+    private final HashMap<String, Integer> _positions = new HashMap<>();
+    /** First- and second-parent positions by position. */
+    private int[] _parent1 = new int[0], _parent2 = new int[0];
+    /** Timestamps by position. */
+    private long[] _timestamp = new long[0];
+    /** Generation numbers by position. */
+    private int[] _generation = new int[0];
+}
@@ -0,0 +1,67 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Tests of the commit graph and merge-base search. */
+public class CommitGraphTest {
+
+    /** Commits made by commit, by id. */
+    private final Map<String, Commit> commits = new HashMap<>();
+
+    /** Make and return the id of a commit with message MSG and PARENTS,
+     *  without adding it to any graph. */
+    private String commit(String msg, String... parents) {
+        Commit c = new Commit(msg, new Date(commits.size() * 1000L),
+                              List.of(parents), new TreeMap<>());
+        String id = Utils.sha1(c.encode());
+        commits.put(id, c);
+        return id;
+    }
+
+    @Test
+    public void mergeBaseAndPersistence() throws IOException {
+        File file = Utils.join(ObjectStoreTest.tempGitletDir(), "graph");
+        String root = commit("root");
+        String a1 = commit("a1", root);
+        String b1 = commit("b1", root);
+        String a2 = commit("a2", a1);
+        String m = commit("merge", b1, a2);
+        String b2 = commit("b2", m);
+        String a3 = commit("a3", a2);
+
+        CommitGraph graph = new CommitGraph(file);
+        graph.add(b2, commits.get(b2), commits::get);
+        graph.add(a3, commits.get(a3), commits::get);
+        graph.save();
+        assertEquals(7, graph.size());
+        assertEquals(5, graph.generation(graph.position(b2)));
+
+        CommitGraph reread = new CommitGraph(file);
+        assertEquals(7, reread.size());
+        assertEquals(a2, reread.id(reread.mergeBase(reread.position(b2),
+                                                    reread.position(a3))));
+        assertEquals(root, reread.id(reread.mergeBase(reread.position(a1),
+                                                      reread.position(b1))));
+        assertEquals(a1, reread.id(reread.mergeBase(reread.position(a1),
+                                                    reread.position(b2))));
+        assertEquals(List.of(b2, m, b1, root),
+                     reread.firstParentChain(reread.position(b2)));
+
+        String other = commit("unrelated");
+        reread.add(other, commits.get(other), commits::get);
+        reread.save();
+        assertEquals(8, new CommitGraph(file).size());
+        assertEquals(CommitGraph.NONE,
+                     reread.mergeBase(reread.position(other),
+                                      reread.position(a3)));
+    }
+}
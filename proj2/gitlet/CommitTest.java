@@ -0,0 +1,91 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/** Tests of the binary encodings of commits and the staging area. */
+public class CommitTest {
+
+    /** Return a commit with N files and the given PARENTS. */
+    static Commit sample(int n, String... parents) {
+        TreeMap<String, String> blobs = new TreeMap<>();
+        for (int i = 0; i < n; i += 1) {
+            blobs.put("file" + i + ".txt", Utils.sha1("contents" + i));
+        }
+        return new Commit("message \u00e9 " + n, new Date(1234567890123L),
+                          Arrays.asList(parents), blobs);
+    }
+
+    @Test
+    public void roundTrip() {
+        Commit c = sample(20, Utils.sha1("p1"), Utils.sha1("p2"));
+        Commit d = Commit.decode(c.encode());
+        assertEquals(c.getMessage(), d.getMessage());
+        assertEquals(c.getTimestamp(), d.getTimestamp());
+        assertEquals(c.getParents(), d.getParents());
+        assertEquals(c.getBlobs(), d.getBlobs());
+        assertArrayEquals(c.encode(), d.encode());
+
+        Commit initial = new Commit("initial commit", new Date(0),
+                                    List.of(), new TreeMap<>());
+        assertEquals(new Date(0),
+                     Commit.decode(initial.encode()).getTimestamp());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void serializedCommitsAreRefused() {
+        Commit.decode(Utils.serialize(sample(3, Utils.sha1("p"))));
+    }
+
+    @Test
+    public void binaryIsSmaller() {
+        Commit c = sample(100, Utils.sha1("p"));
+        assertTrue(3 * c.encode().length < 2 * Utils.serialize(c).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedCommitRejected() {
+        byte[] data = sample(5).encode();
+        Commit.decode(Arrays.copyOf(data, data.length - 3));
+    }
+
+    @Test
+    public void stagingRoundTrip() {
+        StagingArea stage = new StagingArea();
+        stage.add("a.txt", Utils.sha1("a"));
+        stage.add("b.txt", Utils.sha1("b"));
+        stage.remove("b.txt");
+        stage.remove("c.txt");
+        StagingArea copy = StagingArea.decode(stage.encode());
+        assertEquals(stage.getAdditions(), copy.getAdditions());
+        assertEquals(stage.getRemovals(), copy.getRemovals());
+    }
+
+    @Test
+    public void cacheEvictsLeastRecentlyUsed() {
+        CommitCache cache = new CommitCache(2);
+        int[] loads = { 0 };
+        Function<String, Commit> loader = id -> {
+            loads[0] += 1;
+            return sample(1, id);
+        };
+        String a = Utils.sha1("a"), b = Utils.sha1("b"), c = Utils.sha1("c");
+        cache.get(a, loader);
+        cache.get(b, loader);
+        cache.get(a, loader);
+        cache.get(c, loader);
+        assertEquals(3, loads[0]);
+        cache.get(a, loader);
+        assertEquals(3, loads[0]);
+        cache.get(b, loader);
+        assertEquals(4, loads[0]);
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+}
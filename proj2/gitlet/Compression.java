@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/** Compression of stored objects.  The high four bits of an object's
+ *  stored type byte name the method used to compress its payload, and the
+ *  low four bits give its type, so that an object written before
+ *  compression was introduced (method NONE) reads as before.  A
+ *  compressed payload is the uncompressed length as a varint followed by
+ *  the compressed bytes.
+ *
+ *  The compression level (0-9) is taken from the system property
+ *  gitlet.compression; level 0 stores objects uncompressed.
+ */
+class Compression {
+
+    /** Method code for an uncompressed payload. */
+    static final int NONE = 0;
+    /** Method code for a payload compressed with java.util.zip.Deflater. */
+    static final int DEFLATE = 1;
+
+    /** Mask selecting the object type from a stored type byte. */
+    static final int TYPE_MASK = 0x0f;
+
+    /** Name of the system property giving the compression level. */
+    static final String LEVEL_PROPERTY = "gitlet.compression";
+    /** Default compression level. */
+    static final int DEFAULT_LEVEL = 1;
+
+    /** Return the configured compression level. */
+    static int level() {
+        return Math.max(0, Math.min(9, Integer.getInteger(LEVEL_PROPERTY,
+                                                          DEFAULT_LEVEL)));
+    }
+
+    /** Return the stored type byte for an object of type TYPE whose payload
+     *  is compressed with METHOD. */
+    static byte typeByte(byte type, int method) {
+        return (byte) (method << 4 | type);
+    }
+
+    /** Return the compression method recorded in stored type byte TYPE. */
+    static int method(byte type) {
+        return (type & 0xff) >>> 4;
+    }
+
+    /** Return the object type recorded in stored type byte TYPE. */
+    static byte type(byte type) {
+        return (byte) (type & TYPE_MASK);
+    }
+
+    /** Return DATA compressed at LEVEL with DEFLATE, in the form described
+     *  above. */
+    static byte[] deflate(byte[] data, int level) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Codec.writeVarint(out, data.length);
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buf = new byte[1 << 16];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the uncompressed form of PAYLOAD, which was compressed with
+     *  METHOD.  Throws IllegalArgumentException if PAYLOAD is corrupt or
+     *  METHOD unknown. */
+    static byte[] inflate(byte[] payload, int method) {
+        if (method == NONE) {
+            return payload;
+        } else if (method != DEFLATE) {
+            throw new IllegalArgumentException("unknown compression method");
+        }
+        int[] pos = { 0 };
+        long len = Codec.readVarint(payload, pos);
+        if (len > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("object too large");
+        }
+        byte[] result = new byte[(int) len];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload, pos[0], payload.length - pos[0]);
+            int n = 0;
+            while (n < result.length) {
+                long read = inflater.getBytesRead();
+                int k = inflater.inflate(result, n, result.length - n);
+                if (k == 0) {
+                    checkProgress(inflater, read);
+                }
+                n += k;
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /** Inflate the LEN-byte payload compressed with DEFLATE at position
+     *  POS of IN onto OUT a block at a time, so that neither the payload
+     *  nor its uncompressed contents are ever held in memory at once,
+     *  whatever their size.  IN is read with positional reads, so that its
+     *  position is unchanged and other threads may share it.  Throws
+     *  IllegalArgumentException if the payload is corrupt. */
+    static void inflate(FileChannel in, long pos, long len,
+                        WritableByteChannel out)
+        throws IOException {
+        long end = pos + len;
+        ByteBuffer input = ByteBuffer.allocateDirect(1 << 16);
+        input.limit((int) Math.min(len, Codec.MAX_VARINT_BYTES));
+        readFully(in, input, pos);
+        input.flip();
+        long length = Codec.readVarint(input);
+        long next = pos + input.position();
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+        Inflater inflater = new Inflater();
+        try {
+            long n = 0;
+            while (n < length) {
+                if (inflater.needsInput() && next < end) {
+                    input.clear();
+                    input.limit((int) Math.min(input.capacity(), end - next));
+                    readFully(in, input, next);
+                    next += input.limit();
+                    input.flip();
+                    inflater.setInput(input);
+                }
+                buf.clear();
+                long read = inflater.getBytesRead();
+                int k = inflater.inflate(buf);
+                if (k == 0) {
+                    if (inflater.needsInput() && next < end) {
+                        continue;
+                    }
+                    checkProgress(inflater, read);
+                }
+                n += k;
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Return the uncompressed length of the LEN-byte payload at position
+     *  POS of IN, which was compressed with METHOD, reading at most its
+     *  leading varint. */
+    static long length(FileChannel in, long pos, long len, int method)
+        throws IOException {
+        if (method == NONE) {
+            return len;
+        } else if (method != DEFLATE) {
+            throw new IllegalArgumentException("unknown compression method");
+        }
+        ByteBuffer header =
+            ByteBuffer.allocate((int) Math.min(len, Codec.MAX_VARINT_BYTES));
+        readFully(in, header, pos);
+        header.flip();
+        return Codec.readVarint(header);
+    }
+
+    /** Fill the remaining space of BUF from IN, starting at position POS
+     *  of IN.  Throws IllegalArgumentException if IN ends first. */
+    private static void readFully(FileChannel in, ByteBuffer buf, long pos)
+        throws IOException {
+        long start = buf.position();
+        while (buf.hasRemaining()) {
+            if (in.read(buf, pos + buf.position() - start) < 0) {
+                throw new IllegalArgumentException("truncated object");
+            }
+        }
+    }
+
+    /** Check a round of inflating by INFLATER that produced no output,
+     *  given that it holds all of the payload not yet read, and READ is
+     *  the number of payload bytes read before the round.  Throws
+     *  IllegalArgumentException if the payload ended early, needs a preset
+     *  dictionary (which Gitlet never writes), or the round read nothing,
+     *  since repeating such a round would loop forever. */
+    private static void checkProgress(Inflater inflater, long read) {
+        if (inflater.finished() || inflater.needsInput()) {
+            throw new IllegalArgumentException("truncated object");
+        } else if (inflater.needsDictionary()
+                   || inflater.getBytesRead() == read) {
+            throw new IllegalArgumentException("corrupt object");
+        }
+    }
+
+    /** Number of bytes of the fixed-width length written by the streaming
+     *  deflate, enough for any length up to 2**63 - 1. */
+    static final int STREAMED_LENGTH_BYTES = 9;
+
+    /** Write the DEFLATE form of the remaining contents of IN, in the form
+     *  described above, at LEVEL onto OUT at its position, and return the
+     *  number of bytes read from IN.  IN is read once, to its end, so the
+     *  length that precedes the compressed bytes is reserved as a
+     *  fixed-width varint and filled in from the count of bytes actually
+     *  read.  Does not close IN or OUT. */
+    static long deflate(InputStream in, FileChannel out, int level)
+        throws IOException {
+        long lengthAt = out.position();
+        out.write(ByteBuffer.wrap(Codec.fixedVarint(0,
+                                                    STREAMED_LENGTH_BYTES)));
+        Deflater deflater = new Deflater(level);
+        try {
+            DeflaterOutputStream z =
+                new DeflaterOutputStream(Channels.newOutputStream(out),
+                                         deflater, 1 << 16);
+            long length = in.transferTo(z);
+            z.finish();
+            byte[] header = Codec.fixedVarint(length, STREAMED_LENGTH_BYTES);
+            out.write(ByteBuffer.wrap(header), lengthAt);
+            return length;
+        } finally {
+            deflater.end();
+        }
+    }
+}
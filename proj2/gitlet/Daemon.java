@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** A long-running server that executes Gitlet commands on behalf of
+ *  clients, so that a script running many commands pays for starting and
+ *  warming up a JVM once rather than once per command.  It is started as
+ *      java gitlet.Daemon [SOCKET]
+ *  and listens on the Unix-domain socket SOCKET (by default, DEFAULT_SOCKET
+ *  in the temporary directory) until killed.  testing/gitlet_client.py is
+ *  a client.
+ *
+ *  A request is a count N (4 bytes) followed by N strings, each a length
+ *  (4 bytes) and that many bytes of UTF-8: the client's working directory
+ *  and then the command's arguments.  The reply is a sequence of frames,
+ *  each a channel byte followed by a 4-byte number.  On channel 1 or 2,
+ *  the number is a length, followed by that many bytes written to the
+ *  standard output or standard error respectively, in the order written.
+ *  A frame on channel 0 ends the reply, and its number is the exit status.
+ *
+ *  Commands run one at a time, through Main.run, exactly as in a fresh
+ *  JVM, so their output is the same.  Between commands, Repository.open
+ *  discards everything loaded from the previous working directory except
+ *  cached commits, which, being named by their hashes, are valid in any
+ *  repository.  The client's standard input is not forwarded, so a batch
+ *  command must name its script file.
+ */
+public class Daemon {
+
+    /** Name of the default socket file, in the temporary directory. */
+    static final String DEFAULT_SOCKET = "gitlet-daemon.sock";
+
+    /** Channel of the frame ending a reply. */
+    static final int EXIT = 0;
+    /** Channel of standard output frames. */
+    static final int STDOUT = 1;
+    /** Channel of standard error frames. */
+    static final int STDERR = 2;
+
+    /** Serve requests on the socket named by ARGS[0], if present, until
+     *  killed. */
+    public static void main(String... args) throws IOException {
+        Path socket = args.length > 0 ? Path.of(args[0])
+            : Path.of(System.getProperty("java.io.tmpdir"), DEFAULT_SOCKET);
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        if (Files.exists(socket)) {
+            try {
+                SocketChannel.open(address).close();
+            } catch (IOException excp) {
+                /* Nothing accepted the connection: a stale socket. */
+                Files.delete(socket);
+            }
+            if (Files.exists(socket)) {
+                System.err.printf("A daemon is already listening on %s%n",
+                                  socket);
+                System.exit(1);
+            }
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                socket.toFile().delete()));
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    serve(client);
+                } catch (IOException excp) {
+                    /* The client went away; carry on with the next. */
+                }
+            }
+        }
+    }
+
+    /** Read one request from CLIENT, run it, and send the reply. */
+    static void serve(SocketChannel client) throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        int n = in.readInt();
+        if (n < 1) {
+            throw new IOException("empty request");
+        }
+        String[] request = new String[n];
+        for (int i = 0; i < request.length; i += 1) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            request[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        String[] args = new String[request.length - 1];
+        System.arraycopy(request, 1, args, 0, args.length);
+
+        PrintStream stdout = System.out, stderr = System.err;
+        PrintStream cmdOut = new PrintStream(new Frames(out, STDOUT), true);
+        PrintStream cmdErr = new PrintStream(new Frames(out, STDERR), true);
+        int status;
+        System.setOut(cmdOut);
+        System.setErr(cmdErr);
+        try {
+            _serving = true;
+            Repository.open(new File(request[0]));
+            status = Main.run(args);
+        } catch (RuntimeException | Error excp) {
+            cmdErr.print("Exception in thread \"main\" ");
+            excp.printStackTrace(cmdErr);
+            status = 1;
+        } finally {
+            _serving = false;
+            cmdOut.flush();
+            cmdErr.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        out.writeByte(EXIT);
+        out.writeInt(status);
+        out.flush();
+    }
+
+    /** Return true iff the current command is being run for a client,
+     *  whose standard input is not available to it. */
+    static boolean serving() {
+        return _serving;
+    }
+
+    /** True while a command is being run for a client. */
+    private static volatile boolean _serving;
+
+    /** A stream that sends what is written to it as frames on one
+     *  channel of a reply. */
+    private static class Frames extends OutputStream {
+
+        /** A stream sending frames on CHANNEL to OUT. */
+        Frames(DataOutputStream out, int channel) {
+            _out = out;
+            _channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                _out.writeByte(_channel);
+                _out.writeInt(len);
+                _out.write(b, off, len);
+                _out.flush();
+            }
+        }
+
+        /** The reply being written. */
+        private final DataOutputStream _out;
+        /** The channel of this stream's frames. */
+        private final int _channel;
+    }
+}
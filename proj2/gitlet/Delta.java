@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+import static gitlet.Codec.readVarint;
+import static gitlet.Codec.writeVarint;
+
+/** Binary deltas in the style of xdelta.  A delta describes a TARGET byte
+ *  array as a sequence of instructions that either copy a range of some
+ *  BASE array or insert literal bytes.  Copies are found by indexing the
+ *  base in fixed-size blocks and scanning the target with a rolling hash,
+ *  so encoding takes time linear in the sizes of the two arrays.
+ *
+ *  A delta is encoded as the base length and the target length (both as
+ *  varints) followed by instructions, each either INSERT, a varint length,
+ *  and that many literal bytes, or COPY, a varint base offset, and a
+ *  varint length.
+ */
+class Delta {
+
+    /** Instruction code for inserting literal bytes. */
+    private static final int INSERT = 0;
+    /** Instruction code for copying a range of the base. */
+    private static final int COPY = 1;
+    /** Size of the blocks by which the base is indexed. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the polynomial rolling hash. */
+    private static final int MULT = 0x01000193;
+
+    /** Return a delta that transforms BASE into TARGET. */
+    static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        int[] table = indexBlocks(base);
+        int mask = table.length - 1;
+        int pending = 0;
+        int p = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        int topPower = power(BLOCK - 1);
+        while (p + BLOCK <= target.length) {
+            int cand = table[mix(h) & mask] - 1;
+            if (cand >= 0 && matches(base, cand, target, p, BLOCK)) {
+                int start = cand;
+                int tStart = p;
+                while (start > 0 && tStart > pending
+                       && base[start - 1] == target[tStart - 1]) {
+                    start -= 1;
+                    tStart -= 1;
+                }
+                int end = cand + BLOCK;
+                int tEnd = p + BLOCK;
+                while (end < base.length && tEnd < target.length
+                       && base[end] == target[tEnd]) {
+                    end += 1;
+                    tEnd += 1;
+                }
+                writeInsert(out, target, pending, tStart);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, end - start);
+                p = pending = tEnd;
+                if (p + BLOCK <= target.length) {
+                    h = hash(target, p);
+                }
+            } else {
+                if (p + BLOCK < target.length) {
+                    h = (h - (target[p] & 0xff) * topPower) * MULT
+                        + (target[p + BLOCK] & 0xff);
+                }
+                p += 1;
+            }
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE.  Throws
+     *  IllegalArgumentException if DELTA was not made against an array
+     *  the length of BASE or is malformed.  The target length in DELTA is
+     *  checked against the most its instructions could produce before
+     *  anything is allocated, so a corrupt delta cannot exhaust memory. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = { 0 };
+        if (readVarint(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta base mismatch");
+        }
+        long length = readVarint(delta, pos);
+        if (length < 0 || length > maxTarget(base.length,
+                                              delta.length - pos[0])) {
+            throw new IllegalArgumentException("bad delta target length");
+        }
+        byte[] result = new byte[(int) length];
+        int n = 0;
+        try {
+            while (pos[0] < delta.length) {
+                int op = delta[pos[0]++];
+                if (op == INSERT) {
+                    int len = (int) readVarint(delta, pos);
+                    System.arraycopy(delta, pos[0], result, n, len);
+                    pos[0] += len;
+                    n += len;
+                } else if (op == COPY) {
+                    int off = (int) readVarint(delta, pos);
+                    int len = (int) readVarint(delta, pos);
+                    System.arraycopy(base, off, result, n, len);
+                    n += len;
+                } else {
+                    throw new IllegalArgumentException("bad delta opcode");
+                }
+            }
+        } catch (IndexOutOfBoundsException excp) {
+            throw new IllegalArgumentException("malformed delta");
+        }
+        if (n != result.length) {
+            throw new IllegalArgumentException("malformed delta");
+        }
+        return result;
+    }
+
+    /** Return the largest target that SIZE bytes of instructions could
+     *  produce from a base of BASELENGTH bytes: a COPY takes at least three
+     *  bytes and yields at most the whole base, and an INSERT yields at
+     *  most its own bytes. */
+    private static long maxTarget(int baseLength, int size) {
+        long result = (long) size / 3 * baseLength + size;
+        return Math.min(result, Integer.MAX_VALUE - 8);
+    }
+
+    /** Return an open-addressed table mapping the hashes of the aligned
+     *  blocks of BASE to their offsets plus one (0 marks an empty slot).
+     *  Where two blocks collide, the earlier one is kept. */
+    private static int[] indexBlocks(byte[] base) {
+        int blocks = base.length / BLOCK;
+        int size = Integer.highestOneBit(Math.max(2 * blocks, 16) - 1) << 1;
+        int[] table = new int[size];
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            int slot = mix(hash(base, i)) & (size - 1);
+            if (table[slot] == 0) {
+                table[slot] = i + 1;
+            }
+        }
+        return table;
+    }
+
+    /** Write an INSERT of TARGET[FROM .. TO) to OUT if that range is
+     *  non-empty. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target,
+                                    int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Return the rolling hash of the BLOCK bytes of DATA at OFF. */
+    private static int hash(byte[] data, int off) {
+        int h = 0;
+        for (int i = off; i < off + BLOCK; i += 1) {
+            h = h * MULT + (data[i] & 0xff);
+        }
+        return h;
+    }
+
+    /** Return MULT raised to the power K. */
+    private static int power(int k) {
+        int r = 1;
+        for (int i = 0; i < k; i += 1) {
+            r *= MULT;
+        }
+        return r;
+    }
+
+    /** Return H with its high bits folded into its low bits, for use as a
+     *  table index. */
+    private static int mix(int h) {
+        return h ^ (h >>> 15) ^ (h >>> 23);
+    }
+
+    /** Return true iff the LEN bytes of A at AOFF equal those of B at
+     *  BOFF. */
+    private static boolean matches(byte[] a, int aOff, byte[] b, int bOff,
+                                   int len) {
+        for (int i = 0; i < len; i += 1) {
+            if (a[aOff + i] != b[bOff + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Tests of delta encoding and delta-compressed blob storage. */
+public class DeltaTest {
+
+    /** Return N random bytes drawn from a small alphabet, using RAND. */
+    private static byte[] randomText(Random rand, int n) {
+        byte[] result = new byte[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = (byte) ('a' + rand.nextInt(26));
+        }
+        return result;
+    }
+
+    /** Return a copy of DATA with a few random insertions, deletions and
+     *  overwrites, using RAND. */
+    private static byte[] edit(Random rand, byte[] data) {
+        byte[] result = data;
+        for (int k = 0; k < 3; k += 1) {
+            int at = rand.nextInt(result.length);
+            byte[] piece = randomText(rand, rand.nextInt(40));
+            byte[] next = new byte[result.length + piece.length];
+            System.arraycopy(result, 0, next, 0, at);
+            System.arraycopy(piece, 0, next, at, piece.length);
+            System.arraycopy(result, at, next, at + piece.length,
+                             result.length - at);
+            result = next;
+        }
+        int cut = rand.nextInt(result.length - 100);
+        byte[] next = new byte[result.length - 50];
+        System.arraycopy(result, 0, next, 0, cut);
+        System.arraycopy(result, cut + 50, next, cut, result.length - cut - 50);
+        return next;
+    }
+
+    @Test
+    public void roundTrip() {
+        Random rand = new Random(61);
+        byte[] base = randomText(rand, 10000);
+        byte[] target = edit(rand, base);
+        byte[] delta = Delta.encode(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < target.length / 10);
+    }
+
+    @Test
+    public void edgeCases() {
+        byte[] empty = new byte[0];
+        byte[] small = { 1, 2, 3 };
+        assertArrayEquals(small, Delta.apply(empty, Delta.encode(empty, small)));
+        assertArrayEquals(empty, Delta.apply(small, Delta.encode(small, empty)));
+        byte[] big = randomText(new Random(1), 5000);
+        assertArrayEquals(big, Delta.apply(big, Delta.encode(big, big)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongBase() {
+        byte[] base = randomText(new Random(2), 100);
+        Delta.apply(Arrays.copyOf(base, 99), Delta.encode(base, base));
+    }
+
+    @Test
+    public void garbledTargetLengthsRejected() {
+        byte[] base = randomText(new Random(3), 100);
+        for (byte[] delta : new byte[][] {
+                { 100, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                  0x0f },
+                { 100, (byte) 0xff, (byte) 0xff, 0x7f, 1, 0, 100 },
+                { 100, (byte) 0xff } }) {
+            try {
+                Delta.apply(base, delta);
+                fail();
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void boundedChains() throws IOException {
+        ObjectStore store = new ObjectStore(ObjectStoreTest.tempGitletDir());
+        Random rand = new Random(17);
+        byte[] data = randomText(rand, 20000);
+        String prev = null;
+        byte[][] versions = new byte[40][];
+        String[] ids = new String[versions.length];
+        for (int i = 0; i < versions.length; i += 1) {
+            versions[i] = data;
+            ids[i] = prev = store.putBlob(data, prev);
+            assertTrue(store.deltaDepth(prev) <= ObjectStore.MAX_DELTA_DEPTH);
+            data = edit(rand, data);
+        }
+        assertEquals(1, store.deltaDepth(ids[1]));
+        assertEquals(1, store.deltaDepth(ids[ObjectStore.MAX_DELTA_DEPTH + 1]));
+        store.gc();
+        for (int i = 0; i < versions.length; i += 1) {
+            assertArrayEquals(versions[i], store.get(ids[i]));
+            assertEquals(ObjectStore.BLOB, store.typeOf(ids[i]));
+        }
+    }
+}
@@ -3,41 +3,101 @@ package gitlet;
 import java.io.File;
 
 /** A debugging class whose main program may be invoked as follows:
- *      java gitlet.DumpObj FILE...
- *  where each FILE is a file produced by Utils.writeObject (or any file
- *  containing a serialized object).  This will simply read FILE,
- *  deserialize it, and call the dump method on the resulting Object.
- *  The object must implement the gitlet.Dumpable interface for this
- *  to work.  For example, you might define your class like this:
+ *      java gitlet.DumpObj [--dir DIR] NAME...
+ *  where each NAME is either the id of an object in the .gitlet directory
+ *  DIR (by default, .gitlet) or one of its files, such as DIR/refs.  An
+ *  object is read from DIR's ObjectStore; a commit is printed by its dump
+ *  method, and a blob as its length and contents.  A file is recognized
+ *  by the magic number of its binary encoding (see Codec) as a snapshot
+ *  of the references (Refs), a staging area, or a commit, and printed.
+ *  Everything is decoded by the same decoders Gitlet uses, never by Java
+ *  deserialization, so dumping a file cannot run code hidden in it.
  *
- *        import java.io.Serializable;
- *        import java.util.TreeMap;
- *        class MyClass implements Serializeable, Dumpable {
- *            ...
- *            @Override
- *            public void dump() {
- *               System.out.printf("size: %d%nmapping: %s%n", _size, _mapping);
- *            }
- *            ...
- *            int _size;
- *            TreeMap<String, String> _mapping = new TreeMap<>();
- *        }
- *
- *  As illustrated, your dump method should print useful information from
- *  objects of your class.
+ *  Invoked instead as
+ *      java gitlet.DumpObj --fsck [DIR]
+ *  it checks every object in the .gitlet directory DIR (by default,
+ *  .gitlet), as described in Fsck, and exits with status 1 if any is
+ *  corrupt or missing.
  *  @author P. N. Hilfinger
  */
 public class DumpObj {
 
-    /** Deserialize and apply dump to the contents of each of the files
-     *  in FILES. */
-    public static void main(String... files) {
-        for (String fileName : files) {
-            Dumpable obj = Utils.readObject(new File(fileName),
-                                            Dumpable.class);
-            obj.dump();
-            System.out.println("---");
+    /** Print the objects or files named by ARGS, as described above, and
+     *  exit with status 1 if any cannot be read. */
+    public static void main(String... args) {
+        if (args.length > 0 && args[0].equals("--fsck")) {
+            File dir = new File(args.length > 1 ? args[1] : ".gitlet");
+            if (!dir.isDirectory()) {
+                System.err.printf("Not a .gitlet directory: %s%n", dir);
+                System.exit(1);
+            }
+            System.exit(new Fsck(dir, System.out).run() == 0 ? 0 : 1);
+        }
+        File dir = new File(".gitlet");
+        int first = 0;
+        if (args.length > 1 && args[0].equals("--dir")) {
+            dir = new File(args[1]);
+            first = 2;
+        }
+        ObjectStore store = new ObjectStore(dir);
+        int status = 0;
+        try {
+            for (int i = first; i < args.length; i += 1) {
+                File file = new File(args[i]);
+                try {
+                    if (file.isFile()) {
+                        dumpFile(file);
+                    } else {
+                        dumpObject(store, args[i]);
+                    }
+                    System.out.println("---");
+                } catch (IllegalArgumentException excp) {
+                    System.err.printf("%s: %s%n", args[i], excp.getMessage());
+                    status = 1;
+                }
+            }
+        } finally {
+            store.close();
+        }
+        System.exit(status);
+    }
+
+    /** Print the object of STORE with id ID. */
+    private static void dumpObject(ObjectStore store, String id) {
+        byte type = store.typeOf(id);
+        byte[] data = type == 0 ? null : store.get(id);
+        if (data == null) {
+            throw new IllegalArgumentException("no such object");
+        } else if (type == ObjectStore.COMMIT) {
+            Commit.decode(data).dump();
+        } else {
+            System.out.printf("blob: %d bytes%n", data.length);
+            System.out.write(data, 0, data.length);
+            System.out.flush();
+        }
+    }
+
+    /** Print the contents of FILE, according to its encoding. */
+    private static void dumpFile(File file) {
+        byte[] data = Utils.readContents(file);
+        if (Codec.hasMagic(data, Refs.MAGIC)) {
+            Refs refs = Refs.read(file);
+            System.out.printf("generation: %d%nhead: %s%nbranches: %s%n",
+                              refs.generation(), refs.head(),
+                              refs.branches());
+            dumpStaging(StagingArea.decode(refs.staging()));
+        } else if (Codec.hasMagic(data, StagingArea.MAGIC)) {
+            dumpStaging(StagingArea.decode(data));
+        } else if (Codec.hasMagic(data, Commit.MAGIC)) {
+            Commit.decode(data).dump();
+        } else {
+            throw new IllegalArgumentException("unknown encoding");
         }
     }
-}
 
+    /** Print the staging area STAGE. */
+    private static void dumpStaging(StagingArea stage) {
+        System.out.printf("additions: %s%nremovals: %s%n",
+                          stage.getAdditions(), stage.getRemovals());
+    }
+}
@@ -0,0 +1,364 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static gitlet.Utils.*;
+
+/** A check of every object in a repository, invoked as
+ *      java gitlet.DumpObj --fsck [DIR]
+ *  for the .gitlet directory DIR (by default, .gitlet).  It reports
+ *    - the number of objects and their stored and content sizes, for each
+ *      stored form: whole blobs, deltas, chunked blobs, and commits;
+ *    - corrupt objects, whose contents do not hash to their ids or cannot
+ *      be read or decoded;
+ *    - missing objects, which a branch, the staging area, a commit, a
+ *      delta or a chunked blob refers to but which are absent (or are of
+ *      the wrong type); and
+ *    - unreachable objects, which are needed by no commit reachable from
+ *      a branch and by no staged file.
+ *
+ *  The store is enumerated once (see ObjectStore.forEachObject) while
+ *  gitlet.threads threads (see TreeScanner) hash the objects taken from a
+ *  bounded queue, streaming their contents rather than reading them into
+ *  memory.  The only state kept for every object is an eight-byte key,
+ *  the first 56 bits of its id and its stored type byte, in a sorted array
+ *  on which reachability is marked, so two objects whose ids agree in
+ *  their first 14 digits would be marked together.  Unreachable objects
+ *  are then listed by enumerating the store again.
+ */
+class Fsck {
+
+    /** Stored forms of objects, as reported. */
+    private static final String[] FORMS = {
+        "blob", "delta", "chunked", "commit"
+    };
+
+    /** A check of the repository whose .gitlet directory is GITLETDIR,
+     *  reporting on OUT. */
+    Fsck(File gitletDir, PrintStream out) {
+        _dir = gitletDir;
+        _out = out;
+        _threads = Math.max(1, Integer.getInteger(
+                                TreeScanner.THREADS_PROPERTY,
+                                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Check the repository, reporting each problem as it is found and then
+     *  a summary, and return the number of corrupt and missing objects.
+     *  Unreachable objects are reported but not counted. */
+    int run() {
+        ObjectStore store = new ObjectStore(_dir);
+        try {
+            verify(store);
+            Arrays.sort(_keys, 0, _size);
+            connect(store);
+            listUnreachable(store);
+        } finally {
+            store.close();
+        }
+        summarize();
+        return _corrupt.get() + _missing.size();
+    }
+
+    /** Enumerate the objects in STORE, recording their keys, sizes and
+     *  forms, while other threads hash them. */
+    private void verify(ObjectStore store) {
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; _threads > 1 && t < _threads; t += 1) {
+            Thread worker = new Thread(() -> hashAll(queue));
+            worker.start();
+            workers.add(worker);
+        }
+        ObjectStore hasher = workers.isEmpty() ? new ObjectStore(_dir) : null;
+        store.forEachObject((id, type, size, packed) -> {
+            int form = form(type);
+            if (form < 0) {
+                problem("corrupt object %s: unknown type %d", id, type);
+                return;
+            }
+            _count[form] += 1;
+            _stored[form] += size;
+            if (packed) {
+                _packed += 1;
+            }
+            addKey(key(id) | (type & 0xff));
+            if (hasher != null) {
+                hash(hasher, id, form);
+            } else {
+                put(queue, id + form);
+            }
+        });
+        for (int t = 0; t < workers.size(); t += 1) {
+            put(queue, "");
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (hasher != null) {
+            hasher.close();
+        }
+    }
+
+    /** Hash the objects named by the tasks in QUEUE, each an id followed by
+     *  the digit of its form, until taking an empty task. */
+    private void hashAll(BlockingQueue<String> queue) {
+        ObjectStore store = new ObjectStore(_dir);
+        try {
+            while (true) {
+                String task = queue.take();
+                if (task.isEmpty()) {
+                    break;
+                }
+                hash(store, task.substring(0, UID_LENGTH),
+                     task.charAt(UID_LENGTH) - '0');
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            store.close();
+        }
+    }
+
+    /** Check that the contents of the object ID of form FORM in STORE hash
+     *  to ID, and that a commit can be decoded, reporting it as corrupt
+     *  otherwise. */
+    private void hash(ObjectStore store, String id, int form) {
+        HashingChannel contents = new HashingChannel();
+        try {
+            if (!store.copyTo(id, contents)) {
+                return;
+            }
+            _contents[form].addAndGet(contents.count());
+            String actual = contents.id();
+            if (!actual.equals(id)) {
+                problem("corrupt %s %s: contents hash to %s",
+                        FORMS[form], id, actual);
+            } else if (FORMS[form].equals("commit")) {
+                Commit.decode(store.get(id));
+            }
+        } catch (RuntimeException excp) {
+            problem("corrupt %s %s: %s", FORMS[form], id, excp.getMessage());
+        }
+    }
+
+    /** Mark the objects reachable from the branches and staging area as
+     *  reachable, reporting missing ones, reading commits from STORE. */
+    private void connect(ObjectStore store) {
+        _reachable = new BitSet(_size);
+        Refs refs = Refs.read(join(_dir, "refs"));
+        if (refs == null) {
+            refs = new Refs();
+        }
+        Deque<String> commits = new ArrayDeque<>();
+        for (Map.Entry<String, String> e : refs.branches().entrySet()) {
+            reach(store, e.getValue(), ObjectStore.COMMIT,
+                  "branch " + e.getKey(), commits);
+        }
+        StagingArea stage = StagingArea.decode(refs.staging());
+        for (Map.Entry<String, String> e : stage.getAdditions().entrySet()) {
+            reach(store, e.getValue(), ObjectStore.BLOB,
+                  "staged file " + e.getKey(), commits);
+        }
+        while (!commits.isEmpty()) {
+            String id = commits.pop();
+            Commit commit;
+            try {
+                commit = Commit.decode(store.get(id));
+            } catch (RuntimeException excp) {
+                continue;
+            }
+            for (String parent : commit.getParents()) {
+                reach(store, parent, ObjectStore.COMMIT, "commit " + id,
+                      commits);
+            }
+            for (String blob : commit.getBlobs().values()) {
+                reach(store, blob, ObjectStore.BLOB, "commit " + id, commits);
+            }
+        }
+    }
+
+    /** Mark the object ID in STORE, which REFERRER needs as an object of
+     *  type TYPE, and the objects on which its stored form depends, as
+     *  reachable, adding it to COMMITS if it is a commit not yet reached.
+     *  Reports ID if it is missing or of another type. */
+    private void reach(ObjectStore store, String id, byte type,
+                       String referrer, Deque<String> commits) {
+        int k = find(id);
+        if (k < 0 || ObjectStore.logicalType((byte) _keys[k]) != type) {
+            if (_missing.add(id)) {
+                problem("missing %s %s, needed by %s",
+                        type == ObjectStore.COMMIT ? "commit" : "blob", id,
+                        referrer);
+            }
+            return;
+        }
+        if (_reachable.get(k)) {
+            return;
+        }
+        _reachable.set(k);
+        byte stored = Compression.type((byte) _keys[k]);
+        if (stored == ObjectStore.COMMIT) {
+            commits.push(id);
+        } else if (stored == ObjectStore.DELTA
+                   || stored == ObjectStore.CHUNKED) {
+            String name = (stored == ObjectStore.DELTA ? "delta "
+                           : "chunked blob ") + id;
+            try {
+                store.forEachDependency(id, dep -> reach(store, dep,
+                                                         ObjectStore.BLOB,
+                                                         name, commits));
+            } catch (IllegalArgumentException excp) {
+                /* Already reported as corrupt. */
+            }
+        }
+    }
+
+    /** Report each object in STORE that was not marked reachable. */
+    private void listUnreachable(ObjectStore store) {
+        store.forEachObject((id, type, size, packed) -> {
+            int k = find(id);
+            if (k >= 0 && !_reachable.get(k)) {
+                _unreachable += 1;
+                _out.printf("unreachable %s %s%n", FORMS[form(type)], id);
+            }
+        });
+    }
+
+    /** Print the counts and sizes of objects by form, and of problems. */
+    private void summarize() {
+        _out.printf("%-8s %12s %16s %16s%n", "form", "objects", "stored bytes",
+                    "content bytes");
+        long count = 0, stored = 0, contents = 0;
+        for (int f = 0; f < FORMS.length; f += 1) {
+            _out.printf("%-8s %,12d %,16d %,16d%n", FORMS[f], _count[f],
+                        _stored[f], _contents[f].get());
+            count += _count[f];
+            stored += _stored[f];
+            contents += _contents[f].get();
+        }
+        _out.printf("%-8s %,12d %,16d %,16d%n", "total", count, stored,
+                    contents);
+        _out.printf("%,d loose, %,d packed%n", count - _packed, _packed);
+        _out.printf("%,d corrupt, %,d missing, %,d unreachable%n",
+                    _corrupt.get(), _missing.size(), _unreachable);
+    }
+
+    /** Report a problem described by String.format(FORMAT, ARGS), counting
+     *  it as a corrupt object if it begins "corrupt". */
+    private void problem(String format, Object... args) {
+        if (format.startsWith("corrupt")) {
+            _corrupt.incrementAndGet();
+        }
+        synchronized (_out) {
+            _out.printf(format + "%n", args);
+        }
+    }
+
+    /** Return the index of the form of objects whose stored type byte is
+     *  TYPE in FORMS, or -1 if TYPE is not a known type. */
+    private static int form(byte type) {
+        switch (Compression.type(type)) {
+            case ObjectStore.BLOB:
+                return 0;
+            case ObjectStore.DELTA:
+                return 1;
+            case ObjectStore.CHUNKED:
+                return 2;
+            case ObjectStore.COMMIT:
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /** Return the key of the object ID without its type byte: the first
+     *  56 bits of ID shifted left 8 bits. */
+    private static long key(String id) {
+        return Long.parseUnsignedLong(id.substring(0, 14), 16) << 8;
+    }
+
+    /** Return the index in _keys of the object ID, or -1 if it is not
+     *  present. */
+    private int find(String id) {
+        if (id.length() != UID_LENGTH) {
+            return -1;
+        }
+        long key;
+        try {
+            key = key(id);
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+        int k = -Arrays.binarySearch(_keys, 0, _size, key) - 1;
+        return k < _size && (_keys[k] & ~0xffL) == key ? k : -1;
+    }
+
+    /** Append KEY to _keys. */
+    private void addKey(long key) {
+        if (_size == _keys.length) {
+            _keys = Arrays.copyOf(_keys, 2 * _size);
+        }
+        _keys[_size] = key;
+        _size += 1;
+    }
+
+    /** Add TASK to QUEUE, waiting while it is full. */
+    private static void put(BlockingQueue<String> queue, String task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Maximum number of objects waiting to be hashed. */
+    private static final int QUEUE_SIZE = 1024;
+
+    /** The .gitlet directory checked. */
+    private final File _dir;
+    /** Stream on which to report. */
+    private final PrintStream _out;
+    /** Number of hashing threads. */
+    private final int _threads;
+    /** Keys of the objects (see key), with their stored type bytes in the
+     *  low 8 bits; sorted after the first enumeration. */
+    private long[] _keys = new long[1024];
+    /** Number of keys in _keys. */
+    private int _size;
+    /** Bits marking the reachable objects, parallel to _keys. */
+    private BitSet _reachable;
+    /** Number of objects and their stored bytes, by form. */
+    private final long[] _count = new long[FORMS.length],
+        _stored = new long[FORMS.length];
+    /** Content bytes, by form. */
+    private final AtomicLong[] _contents = {
+        new AtomicLong(), new AtomicLong(), new AtomicLong(), new AtomicLong()
+    };
+    /** Number of packed objects. */
+    private long _packed;
+    /** Number of corrupt objects. */
+    private final AtomicInteger _corrupt = new AtomicInteger();
+    /** Ids of missing objects. */
+    private final Set<String> _missing = new HashSet<>();
+    /** Number of unreachable objects. */
+    private long _unreachable;
+}
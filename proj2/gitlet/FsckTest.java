@@ -0,0 +1,124 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Tests of the object store check. */
+public class FsckTest {
+
+    /** Run a check of the .gitlet directory DIR, returning its report and
+     *  placing its result in RESULT[0]. */
+    private static String fsck(File dir, int[] result) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        result[0] = new Fsck(dir, new PrintStream(bytes, true)).run();
+        return bytes.toString();
+    }
+
+    @Test
+    public void findsCorruptMissingAndUnreachableObjects()
+        throws IOException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] text = Benchmarks.randomText(new Random(61), 20000);
+        String base = store.putBlob(text, null);
+        text[100] = '!';
+        String edited = store.putBlob(text, base);
+        assertEquals(1, store.deltaDepth(edited));
+        String first = store.put(ObjectStore.COMMIT,
+                                 new Commit("first", new Date(0), List.of(),
+                                            Map.of("f", base)).encode());
+        String second = store.put(ObjectStore.COMMIT,
+                                  new Commit("second", new Date(1),
+                                             List.of(first),
+                                             Map.of("f", edited)).encode());
+        String stray = store.put(ObjectStore.BLOB, "stray".getBytes());
+        Refs refs = new Refs();
+        refs.setHead("master");
+        refs.setBranch("master", second);
+        Utils.writeContents(Utils.join(dir, "refs"), refs.encode());
+
+        int[] result = new int[1];
+        for (int pass = 0; pass < 2; pass += 1) {
+            String report = fsck(dir, result);
+            assertEquals(report, 0, result[0]);
+            assertTrue(report, report.contains("unreachable blob " + stray));
+            assertTrue(report, report.contains("0 corrupt, 0 missing, "
+                                               + "1 unreachable"));
+            assertTrue(report, report.contains(pass == 0 ? "5 loose, 0 packed"
+                                               : "0 loose, 5 packed"));
+            store.gc();
+        }
+        store.close();
+
+        store = new ObjectStore(dir);
+        store.put(ObjectStore.BLOB, "loose".getBytes());
+        File objects = Utils.join(dir, "objects");
+        String bad = Utils.sha1("wrong");
+        File shard = Utils.join(objects, bad.substring(0, 2));
+        shard.mkdirs();
+        Utils.writeContents(Utils.join(shard, bad.substring(2)),
+                            new byte[] { ObjectStore.BLOB },
+                            "right".getBytes());
+        refs.setBranch("dev", Utils.sha1("no such commit"));
+        Utils.writeContents(Utils.join(dir, "refs"), refs.encode());
+        String report = fsck(dir, result);
+        assertEquals(report, 2, result[0]);
+        assertTrue(report, report.contains("corrupt blob " + bad
+                                           + ": contents hash to "
+                                           + Utils.sha1("right")));
+        assertTrue(report, report.contains("missing commit "
+                                           + Utils.sha1("no such commit")
+                                           + ", needed by branch dev"));
+        assertTrue(report, report.contains("1 corrupt, 1 missing, "
+                                           + "3 unreachable"));
+    }
+
+    /** Write PAYLOAD, a delta against the blob BASE, as the loose object
+     *  ID under the .gitlet directory DIR. */
+    private static void writeDelta(File dir, String id, String base,
+                                   byte[] payload) {
+        File shard = Utils.join(dir, "objects", id.substring(0, 2));
+        shard.mkdirs();
+        Utils.writeContents(Utils.join(shard, id.substring(2)),
+                            new byte[] { ObjectStore.DELTA },
+                            Utils.fromHex(base), payload);
+    }
+
+    @Test(timeout = 60000)
+    public void garbledDeltasAreReportedAsCorrupt() throws IOException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] text = Benchmarks.randomText(new Random(5), 5000);
+        String base = store.putBlob(text, null);
+        store.close();
+        byte[] delta = Delta.encode(text, "edited".getBytes());
+        String truncated = Utils.sha1("truncated");
+        writeDelta(dir, truncated, base,
+                   Arrays.copyOf(delta, delta.length / 2));
+        String huge = Utils.sha1("huge");
+        writeDelta(dir, huge, base,
+                   new byte[] { (byte) 0x88, 0x27, (byte) 0xff, (byte) 0xff,
+                                (byte) 0xff, (byte) 0xff, 0x7f });
+        String negative = Utils.sha1("negative");
+        writeDelta(dir, negative, base,
+                   new byte[] { (byte) 0x88, 0x27, (byte) 0xff, (byte) 0xff,
+                                (byte) 0xff, (byte) 0xff, 0x0f });
+
+        int[] result = new int[1];
+        String report = fsck(dir, result);
+        assertEquals(report, 3, result[0]);
+        for (String id : new String[] { truncated, huge, negative }) {
+            assertTrue(report, report.contains("corrupt delta " + id));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/** A channel that discards what is written to it, computing its SHA-1 id
+ *  and length, so that the contents of a stored object can be checked
+ *  against its id (see ObjectStore.copyTo) without holding them in
+ *  memory. */
+class HashingChannel implements WritableByteChannel {
+
+    @Override
+    public int write(ByteBuffer src) {
+        int n = src.remaining();
+        _md.update(src);
+        _count += n;
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /** Return the SHA-1 id of what has been written. */
+    String id() {
+        return Utils.toHex(_md.digest());
+    }
+
+    /** Return the number of bytes written. */
+    long count() {
+        return _count;
+    }
+
+    /** Digest of what has been written. */
+    private final MessageDigest _md = Utils.sha1Digest();
+    /** Number of bytes written. */
+    private long _count;
+}
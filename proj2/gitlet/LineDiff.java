@@ -0,0 +1,253 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Line-by-line differences between two sequences, found with Myers'
+ *  O(ND) algorithm in its linear-space form: rather than keeping the
+ *  whole edit graph, each step finds the "middle snake" of an optimal
+ *  path by searching from both ends at once, and then solves the halves
+ *  on either side of it recursively.  Time is O((N + M) D) for sequences
+ *  of lengths N and M differing in D lines, and space O(N + M).
+ *
+ *  Lines are given as ints, equal lines having equal numbers.  Lines that
+ *  occur in only one of the sequences cannot be matched, and are marked
+ *  as changed before the search begins, so that files that differ almost
+ *  everywhere are compared in time near linear rather than quadratic.
+ *  As in GNU diff, a search for a middle snake that goes on for more than
+ *  _tooExpensive edits stops at the point furthest along in either
+ *  direction, so that long files with many scattered changes among
+ *  common lines still take near-linear time, at the price of a diff that
+ *  may no longer be the shortest.
+ */
+class LineDiff {
+
+    /** Least number of edits searched for a middle snake before settling
+     *  for an approximate one. */
+    private static final int MIN_COST = 256;
+
+    /** An edit replacing lines [aStart, aEnd) of the first sequence with
+     *  lines [bStart, bEnd) of the second.  One range may be empty. */
+    static class Hunk {
+
+        /** The hunk replacing A[ASTART..AEND-1] with B[BSTART..BEND-1]. */
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%d,%d)->[%d,%d)", aStart, aEnd,
+                                 bStart, bEnd);
+        }
+
+        /** Bounds of the replaced lines of the first sequence. */
+        final int aStart, aEnd;
+        /** Bounds of the replacing lines of the second sequence. */
+        final int bStart, bEnd;
+    }
+
+    /** Return a shortest list of hunks, in order, that turns A into B.
+     *  The elements of A and B must be nonnegative. */
+    static List<Hunk> diff(int[] a, int[] b) {
+        return new LineDiff(a, b).hunks();
+    }
+
+    /** A comparison of A with B. */
+    private LineDiff(int[] a, int[] b) {
+        _deleted = new boolean[a.length];
+        _inserted = new boolean[b.length];
+        int[] aKeep = discard(a, b, _deleted);
+        int[] bKeep = discard(b, a, _inserted);
+        _a = new int[aKeep.length];
+        for (int i = 0; i < aKeep.length; i += 1) {
+            _a[i] = a[aKeep[i]];
+        }
+        _b = new int[bKeep.length];
+        for (int j = 0; j < bKeep.length; j += 1) {
+            _b[j] = b[bKeep[j]];
+        }
+        int max = (_a.length + _b.length + 1) / 2 + 1;
+        _forward = new int[2 * max + 1];
+        _backward = new int[2 * max + 1];
+        _offset = max;
+        _tooExpensive = Math.max(MIN_COST, (int) Math.sqrt(max));
+        _aDeleted = new boolean[_a.length];
+        _bInserted = new boolean[_b.length];
+        compare(0, _a.length, 0, _b.length);
+        for (int i = 0; i < aKeep.length; i += 1) {
+            _deleted[aKeep[i]] = _aDeleted[i];
+        }
+        for (int j = 0; j < bKeep.length; j += 1) {
+            _inserted[bKeep[j]] = _bInserted[j];
+        }
+    }
+
+    /** Mark as CHANGED each line of X that does not occur in Y, and return
+     *  the indices of the others, in order. */
+    private static int[] discard(int[] x, int[] y, boolean[] changed) {
+        int size = 0;
+        for (int v : x) {
+            size = Math.max(size, v + 1);
+        }
+        boolean[] inY = new boolean[size];
+        for (int v : y) {
+            if (v < size) {
+                inY[v] = true;
+            }
+        }
+        int[] keep = new int[x.length];
+        int n = 0;
+        for (int i = 0; i < x.length; i += 1) {
+            if (inY[x[i]]) {
+                keep[n] = i;
+                n += 1;
+            } else {
+                changed[i] = true;
+            }
+        }
+        int[] result = new int[n];
+        System.arraycopy(keep, 0, result, 0, n);
+        return result;
+    }
+
+    /** Mark the lines that differ between _a[aLo..aHi-1] and
+     *  _b[bLo..bHi-1]. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j += 1) {
+                _bInserted[j] = true;
+            }
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i += 1) {
+                _aDeleted[i] = true;
+            }
+        } else {
+            int[] mid = middleSnake(aLo, aHi, bLo, bHi);
+            compare(aLo, mid[0], bLo, mid[1]);
+            compare(mid[0], aHi, mid[1], bHi);
+        }
+    }
+
+    /** Return a point {x, y} on a shortest edit path from (ALO, BLO) to
+     *  (AHI, BHI) that divides its edits as evenly as possible, given that
+     *  the first and last lines of the two ranges differ, so that the path
+     *  has at least two edits and the point is at neither end.  Diagonal k
+     *  holds the points with x - y = k relative to the search's origin;
+     *  _forward[k] is the furthest x reached on it from the start, and
+     *  _backward[k] the furthest distance reached from the end on the
+     *  diagonal k of the reversed problem. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int[] vf = _forward, vb = _backward;
+        int o = _offset;
+        vf[o + 1] = 0;
+        vb[o + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && vf[o + k - 1] < vf[o + k + 1])
+                    ? vf[o + k + 1] : vf[o + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[o + k] = x;
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1)
+                    && x + vb[o + delta - k] >= n) {
+                    return new int[] { aLo + x, bLo + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && vb[o + k - 1] < vb[o + k + 1])
+                    ? vb[o + k + 1] : vb[o + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m
+                       && _a[aHi - 1 - x] == _b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[o + k] = x;
+                if (!odd && delta - k >= -d && delta - k <= d
+                    && x + vf[o + delta - k] >= n) {
+                    return new int[] { aHi - x, bHi - y };
+                }
+            }
+            if (d >= _tooExpensive) {
+                int[] f = furthest(vf, d, n, m), b = furthest(vb, d, n, m);
+                if (b == null
+                    || (f != null && f[0] + f[1] >= b[0] + b[1])) {
+                    return new int[] { aLo + f[0], bLo + f[1] };
+                }
+                return new int[] { aHi - b[0], bHi - b[1] };
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Return the point furthest from the start, measured in x + y, of
+     *  those reached on diagonals -D..D of the search with furthest-reaching
+     *  points V within the N x M edit graph, as {x, y}. */
+    private int[] furthest(int[] v, int d, int n, int m) {
+        int[] best = null;
+        for (int k = -d; k <= d; k += 2) {
+            int x = Math.min(v[_offset + k], n), y = x - k;
+            if (y >= 0 && y <= m
+                && (best == null || x + y > best[0] + best[1])) {
+                best = new int[] { x, y };
+            }
+        }
+        return best;
+    }
+
+    /** Return the hunks found, in order. */
+    private List<Hunk> hunks() {
+        List<Hunk> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < _deleted.length || j < _inserted.length) {
+            if ((i < _deleted.length && _deleted[i])
+                || (j < _inserted.length && _inserted[j])) {
+                int i0 = i, j0 = j;
+                while (i < _deleted.length && _deleted[i]) {
+                    i += 1;
+                }
+                while (j < _inserted.length && _inserted[j]) {
+                    j += 1;
+                }
+                result.add(new Hunk(i0, i, j0, j));
+            } else {
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /** The lines of each sequence that may match a line of the other. */
+    private final int[] _a, _b;
+    /** Which of _a are deleted and which of _b inserted. */
+    private final boolean[] _aDeleted, _bInserted;
+    /** Which lines of the original first sequence are deleted, and which
+     *  of the second inserted. */
+    private final boolean[] _deleted, _inserted;
+    /** Furthest-reaching points by diagonal, forward and backward. */
+    private final int[] _forward, _backward;
+    /** Number of edits searched for a middle snake beyond which the
+     *  furthest point reached is used instead. */
+    private final int _tooExpensive;
+    /** Index in _forward and _backward of diagonal 0. */
+    private final int _offset;
+}
@@ -0,0 +1,85 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+/** Tests of line differences. */
+public class LineDiffTest {
+
+    /** Return the result of applying HUNKS, a diff of A with B, to A. */
+    private static int[] apply(int[] a, int[] b, List<LineDiff.Hunk> hunks) {
+        int[] result = new int[b.length];
+        int i = 0, j = 0;
+        for (LineDiff.Hunk h : hunks) {
+            assertTrue(h.aStart >= i && h.aStart - i == h.bStart - j);
+            while (i < h.aStart) {
+                result[j] = a[i];
+                i += 1;
+                j += 1;
+            }
+            for (int k = h.bStart; k < h.bEnd; k += 1) {
+                result[j] = b[k];
+                j += 1;
+            }
+            i = h.aEnd;
+        }
+        while (i < a.length) {
+            result[j] = a[i];
+            i += 1;
+            j += 1;
+        }
+        return result;
+    }
+
+    /** Return the length of a longest common subsequence of A and B. */
+    private static int lcs(int[] a, int[] b) {
+        int[][] len = new int[a.length + 1][b.length + 1];
+        for (int i = 1; i <= a.length; i += 1) {
+            for (int j = 1; j <= b.length; j += 1) {
+                len[i][j] = a[i - 1] == b[j - 1] ? len[i - 1][j - 1] + 1
+                    : Math.max(len[i - 1][j], len[i][j - 1]);
+            }
+        }
+        return len[a.length][b.length];
+    }
+
+    /** Return N random lines drawn from RANGE values. */
+    private static int[] random(Random rand, int n, int range) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = rand.nextInt(range);
+        }
+        return result;
+    }
+
+    @Test
+    public void simpleEdits() {
+        int[] a = { 1, 2, 3, 4, 5 };
+        assertEquals("[[1,2)->[1,1), [4,4)->[3,5)]",
+                     LineDiff.diff(a, new int[] { 1, 3, 4, 6, 7, 5 })
+                     .toString());
+        assertTrue(LineDiff.diff(a, a).isEmpty());
+        assertEquals("[[0,5)->[0,0)]",
+                     LineDiff.diff(a, new int[0]).toString());
+    }
+
+    @Test
+    public void randomDiffsAreShortest() {
+        Random rand = new Random(61);
+        for (int trial = 0; trial < 2000; trial += 1) {
+            int range = 1 + rand.nextInt(8);
+            int[] a = random(rand, rand.nextInt(30), range);
+            int[] b = random(rand, rand.nextInt(30), range);
+            List<LineDiff.Hunk> hunks = LineDiff.diff(a, b);
+            assertArrayEquals(b, apply(a, b, hunks));
+            int edits = 0;
+            for (LineDiff.Hunk h : hunks) {
+                edits += h.aEnd - h.aStart + h.bEnd - h.bStart;
+            }
+            assertEquals(a.length + b.length - 2 * lcs(a, b), edits);
+        }
+    }
+}
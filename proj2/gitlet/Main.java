@@ -1,5 +1,10 @@
 package gitlet;
 
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Set;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author TODO
  */
@@ -9,16 +14,108 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
+        int status = run(args);
+        System.out.flush();
+        System.exit(status);
+    }
+
+    /** Run the command given by ARGS, as for main, and return the status
+     *  with which the program should exit.  This is also how a Daemon runs
+     *  each command it receives, and how a batch runs each command of its
+     *  script.  A first argument beginning "--trace" requests a timing
+     *  report on the command that follows (see Trace); the commands of a
+     *  traced batch are measured as part of it. */
+    static int run(String[] args) {
+        PrintStream stdout = System.out;
+        int status = 0;
+        boolean traced = false;
+        try {
+            if (args.length > 0 && args[0].startsWith("--trace")) {
+                if (!Trace.enabled()) {
+                    Trace.begin(args[0], args.length > 1 ? args[1] : "");
+                    traced = true;
+                    System.setOut(new PrintStream(Trace.output(stdout),
+                                                  true));
+                }
+                args = Arrays.copyOfRange(args, 1, args.length);
+            }
+            if (args.length == 0) {
+                throw Utils.error("Please enter a command.");
+            }
+            status = dispatch(args);
+        } catch (GitletException excp) {
+            Utils.message(excp.getMessage());
+        } finally {
+            System.out.flush();
+            System.setOut(stdout);
+            if (traced) {
+                Trace.finish(status);
+            }
+        }
+        return status;
+    }
+
+    /** Commands that change the repository, which run holding the writer
+     *  lock (see WriterLock).  Others only read it, except that checkout
+     *  of a branch changes HEAD. */
+    private static final Set<String> WRITERS =
+        Set.of("init", "add", "commit", "rm", "branch", "rm-branch", "reset",
+               "merge", "gc");
+
+    /** Run the command given by ARGS and return its exit status. */
+    private static int dispatch(String[] args) {
         // TODO: what if args is empty?
         String firstArg = args[0];
-        switch(firstArg) {
-            case "init":
-                // TODO: handle the `init` command
-                break;
-            case "add":
-                // TODO: handle the `add [filename]` command
-                break;
-            // TODO: FILL THE REST IN
+        try {
+            if (WRITERS.contains(firstArg)
+                || (firstArg.equals("checkout") && args.length == 2)) {
+                Repository.lockForWriting();
+            }
+            switch(firstArg) {
+                case "init":
+                    // TODO: handle the `init` command
+                    break;
+                case "add":
+                    // TODO: handle the `add [filename]` command
+                    break;
+                case "global-log":
+                    Repository.globalLog();
+                    break;
+                case "find":
+                    if (args.length != 2) {
+                        throw Utils.error("Incorrect operands.");
+                    }
+                    Repository.find(args[1]);
+                    break;
+                case "gc":
+                    Repository.gc();
+                    break;
+                case "batch":
+                    if (args.length > 2) {
+                        throw Utils.error("Incorrect operands.");
+                    }
+                    if (args.length == 1 && Daemon.serving()) {
+                        throw Utils.error("The daemon cannot read commands "
+                                          + "from standard input.");
+                    }
+                    Script.run(args.length == 2 ? scriptFile(args[1])
+                               : null);
+                    break;
+                // TODO: FILL THE REST IN
+            }
+            Repository.flush();
+        } catch (GitletException excp) {
+            Repository.abort();
+            Utils.message(excp.getMessage());
         }
+        return 0;
+    }
+
+    /** Return the script file named NAME, relative to the working
+     *  directory of the command (which, under a Daemon, is the client's
+     *  rather than the process's). */
+    private static File scriptFile(String name) {
+        File file = new File(name);
+        return file.isAbsolute() ? file : Utils.join(Repository.CWD, name);
     }
 }
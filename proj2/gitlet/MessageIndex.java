@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** An index from commit messages to the ids of the commits bearing them,
+ *  kept in .gitlet/message-index so that find need not read every
+ *  commit.  Each record holds a KEY, the first 8 bytes of the SHA-1 of a
+ *  message, and the 20-byte id of a commit with that message.  The file
+ *  holds a header (MAGIC, VERSION, count) followed by records in the
+ *  order the commits were made, and is appended to as commits are made;
+ *  as for the CommitGraph, the count is updated only after the records
+ *  are on disk.  Lookups scan the mapped records, comparing keys only,
+ *  so memory use does not grow with the number of commits.  Since
+ *  different messages may share a key, callers must check the messages
+ *  of the commits returned.
+ */
+class MessageIndex {
+
+    /** Magic number beginning the index file. */
+    private static final int MAGIC = 0x474d5358;
+    /** Current version of the format. */
+    private static final int VERSION = 1;
+    /** Size of the header in bytes. */
+    private static final int HEADER = 12;
+    /** Size of a record in bytes. */
+    private static final int RECORD = 8 + PackFile.ID_BYTES;
+
+    /** The index stored in FILE, which need not exist yet. */
+    MessageIndex(File file) {
+        _file = file;
+    }
+
+    /** Return true iff the index file exists.  An index that does not
+     *  exist is not maintained, since it could not list earlier commits. */
+    boolean exists() {
+        return _file.isFile() || _created;
+    }
+
+    /** Start the index, empty, for a repository that as yet has no
+     *  commits it does not list. */
+    void create() {
+        _created = true;
+    }
+
+    /** Record that the commit with id ID has message MESSAGE.  The record
+     *  reaches the index file on the next save. */
+    void add(String id, String message) {
+        _pendingKeys.add(key(message));
+        _pendingIds.add(Utils.fromHex(id));
+    }
+
+    /** Return the ids of the commits whose messages may be MESSAGE, in the
+     *  order they were added. */
+    List<String> lookup(String message) {
+        long key = key(message);
+        List<String> result = new ArrayList<>();
+        if (_file.isFile()) {
+            try (FileChannel ch = FileChannel.open(_file.toPath(),
+                                                   StandardOpenOption.READ)) {
+                MappedByteBuffer map =
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                int n = Math.min(checkHeader(map),
+                                 (map.limit() - HEADER) / RECORD);
+                byte[] id = new byte[PackFile.ID_BYTES];
+                for (int k = 0; k < n; k += 1) {
+                    int pos = HEADER + k * RECORD;
+                    if (map.getLong(pos) == key) {
+                        map.get(pos + 8, id);
+                        result.add(Utils.toHex(id));
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        for (int i = 0; i < _pendingKeys.size(); i += 1) {
+            if (_pendingKeys.get(i) == key) {
+                result.add(Utils.toHex(_pendingIds.get(i)));
+            }
+        }
+        return result;
+    }
+
+    /** Append the records added since the last save to the index file,
+     *  creating it if needed, and then update its count. */
+    void save() {
+        if (_pendingKeys.isEmpty() && (!_created || _file.isFile())) {
+            return;
+        }
+        try (RandomAccessFile out = new RandomAccessFile(_file, "rw")) {
+            int count = 0;
+            if (out.length() < HEADER) {
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(0);
+            } else {
+                out.seek(0);
+                byte[] header = new byte[HEADER];
+                out.readFully(header);
+                count = checkHeader(ByteBuffer.wrap(header));
+            }
+            int n = _pendingKeys.size();
+            ByteBuffer records = ByteBuffer.allocate(n * RECORD);
+            for (int i = 0; i < n; i += 1) {
+                records.putLong(_pendingKeys.get(i)).put(_pendingIds.get(i));
+            }
+            out.seek(HEADER + (long) count * RECORD);
+            out.write(records.array());
+            out.getFD().sync();
+            out.seek(8);
+            out.writeInt(count + n);
+            _pendingKeys.clear();
+            _pendingIds.clear();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the key of MESSAGE. */
+    static long key(String message) {
+        return ByteBuffer.wrap(Utils.fromHex(Utils.sha1(message))).getLong();
+    }
+
+    /** Check the header at the start of BUF and return its count. */
+    private static int checkHeader(ByteBuffer buf) {
+        if (buf.limit() < HEADER || buf.getInt(0) != MAGIC
+            || buf.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("bad message index");
+        }
+        return buf.getInt(8);
+    }
+
+    /** The index file. */
+    private final File _file;
+    /** True iff the index has been created by this command. */
+    private boolean _created;
+    /** Keys of the records added since the last save. */
+    private final List<Long> _pendingKeys = new ArrayList<>();
+    /** Binary commit ids of the records added since the last save. */
+    private final List<byte[]> _pendingIds = new ArrayList<>();
+}
@@ -0,0 +1,50 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/** Tests of the commit-message index. */
+public class MessageIndexTest {
+
+    @Test
+    public void lookupBeforeAndAfterSave() throws IOException {
+        File file = Utils.join(ObjectStoreTest.tempGitletDir(),
+                               "message-index");
+        MessageIndex index = new MessageIndex(file);
+        assertFalse(index.exists());
+        index.create();
+        assertTrue(index.exists());
+        String a = Utils.sha1("a"), b = Utils.sha1("b"), c = Utils.sha1("c");
+        index.add(a, "initial commit");
+        index.add(b, "fix");
+        assertEquals(List.of(b), index.lookup("fix"));
+        index.save();
+        index.add(c, "fix");
+        assertEquals(List.of(b, c), index.lookup("fix"));
+        index.save();
+        index.save();
+
+        MessageIndex reopened = new MessageIndex(file);
+        assertTrue(reopened.exists());
+        assertEquals(List.of(a), reopened.lookup("initial commit"));
+        assertEquals(List.of(b, c), reopened.lookup("fix"));
+        assertEquals(List.of(), reopened.lookup("missing"));
+    }
+
+    @Test
+    public void emptyIndexIsSaved() throws IOException {
+        File file = Utils.join(ObjectStoreTest.tempGitletDir(),
+                               "message-index");
+        MessageIndex index = new MessageIndex(file);
+        index.save();
+        assertFalse(file.exists());
+        index.create();
+        index.save();
+        assertTrue(new MessageIndex(file).exists());
+        assertEquals(List.of(), new MessageIndex(file).lookup("x"));
+    }
+}
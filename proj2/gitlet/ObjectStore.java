@@ -0,0 +1,1029 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static gitlet.Utils.*;
+
+/** The content-addressed store of blobs and commits in a .gitlet
+ *  directory.  A newly written object is "loose": a single file named by
+ *  the SHA-1 of its contents, holding a type byte followed by the
+ *  contents, which may be compressed (see Compression).  As in Git, the
+ *  file for id ID is objects/ID[0..1]/ID[2..], so that the objects are
+ *  spread over 256 subdirectories ("shards"), none of which grows large
+ *  enough to make lookups and listings slow, and a prefix lookup lists
+ *  only the shards that can match.  The gc method moves loose objects
+ *  into a PackFile, so that a repository with many objects needs only a
+ *  few files and a lookup is a binary search in a mapped index.
+ *
+ *  Optionally, large blobs are stored instead as lists of content-defined
+ *  chunks, each itself stored once as a blob, so that versions of a large
+ *  file that differ in small regions share most of their storage.
+ */
+class ObjectStore {
+
+    /** Type byte of a blob (file contents). */
+    static final byte BLOB = 1;
+    /** Type byte of an encoded commit (see Commit.encode). */
+    static final byte COMMIT = 2;
+    /** Type byte of a blob stored as the binary id of a base blob
+     *  followed by a Delta from that base. */
+    static final byte DELTA = 3;
+    /** Type byte of a blob stored as a list of chunks (see Chunker), each
+     *  the binary id of a blob holding the chunk followed by the chunk's
+     *  length as a varint. */
+    static final byte CHUNKED = 4;
+
+    /** Name of the system property giving the size in bytes of the
+     *  smallest blob stored in chunks; if it is absent or 0, no blob is. */
+    static final String CHUNK_PROPERTY = "gitlet.chunkThreshold";
+
+    /** Size in bytes of the largest file that putFile will read into
+     *  memory to delta against an earlier version. */
+    static final long MAX_DELTA_SOURCE = 1 << 26;
+
+    /** Maximum number of deltas that must be applied to read any blob. */
+    static final int MAX_DELTA_DEPTH = 10;
+
+    /** Number of leading hexadecimal digits of an id that name the shard
+     *  holding the loose object. */
+    static final int SHARD_DIGITS = 2;
+    /** Number of shards. */
+    static final int SHARDS = 1 << (4 * SHARD_DIGITS);
+
+    /** A store whose objects live under the .gitlet directory GITLETDIR. */
+    ObjectStore(File gitletDir) {
+        _looseDir = join(gitletDir, "objects");
+        _packDir = join(gitletDir, "packs");
+    }
+
+    /** Store DATA as an object of type TYPE, unless it is already present,
+     *  and return its id. */
+    String put(byte type, byte[] data) {
+        String id = sha1(data);
+        if (!contains(id)) {
+            writeLoose(id, type, data);
+        }
+        return id;
+    }
+
+    /** Store DATA as a blob, unless it is already present, and return its
+     *  id.  If BASE is the id of a present blob, which will typically be
+     *  an earlier version of the same file, DATA may be stored as a delta
+     *  against it, provided that this saves space.  When BASE is already
+     *  at the end of a chain of MAX_DELTA_DEPTH deltas, DATA is instead
+     *  stored as a delta against the full blob at the start of that chain,
+     *  so that no read applies more than MAX_DELTA_DEPTH deltas. */
+    String putBlob(byte[] data, String base) {
+        String id = sha1(data);
+        if (contains(id)) {
+            return id;
+        }
+        if (chunked(data.length)) {
+            return putChunked(() -> id, new ByteArrayInputStream(data));
+        }
+        if (base != null && contains(base)) {
+            if (deltaDepth(base) >= MAX_DELTA_DEPTH) {
+                base = chainRoot(base);
+            }
+            byte[] payload = deltaPayload(base, get(base), data);
+            if (payload != null) {
+                writeLoose(id, DELTA, payload);
+                return id;
+            }
+        }
+        return put(BLOB, data);
+    }
+
+    /** Return the payload of a DELTA object holding DATA as a delta from
+     *  BASE, whose id is BASEID, or null if the delta would not be
+     *  worth storing. */
+    static byte[] deltaPayload(String baseId, byte[] base, byte[] data) {
+        byte[] delta = Delta.encode(base, data);
+        if (delta.length + PackFile.ID_BYTES >= data.length / 2) {
+            return null;
+        }
+        byte[] payload = new byte[PackFile.ID_BYTES + delta.length];
+        System.arraycopy(fromHex(baseId), 0, payload, 0, PackFile.ID_BYTES);
+        System.arraycopy(delta, 0, payload, PackFile.ID_BYTES, delta.length);
+        return payload;
+    }
+
+    /** Store the contents of FILE as a blob, as for putBlob, and return
+     *  its id.  FILE is read once.  A file small enough to delta against
+     *  BASE is read into memory; any other is hashed as it is copied (and
+     *  compressed) into the store, or split into chunks if it is large
+     *  enough, in constant memory, and is stored under the id of, and with
+     *  the length of, exactly the bytes read, even if FILE changes
+     *  meanwhile. */
+    String putFile(File file, String base) {
+        long size = file.length();
+        if (base != null && size <= MAX_DELTA_SOURCE && !chunked(size)) {
+            return putBlob(readContents(file), base);
+        }
+        try (DigestInputStream in =
+                 new DigestInputStream(Files.newInputStream(file.toPath()),
+                                       sha1Digest())) {
+            if (chunked(size)) {
+                return putChunked(() -> toHex(in.getMessageDigest().digest()),
+                                  in);
+            }
+            return putStream(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy the remaining contents of IN, which hashes them as they are
+     *  read, into the store as a blob, compressed at the configured level
+     *  if that makes it smaller, unless it is already present, and return
+     *  its id. */
+    private String putStream(DigestInputStream in) throws IOException {
+        long start = Trace.start();
+        int level = Compression.level();
+        File tmp = looseTemp();
+        long length;
+        boolean shrunk = false;
+        try (FileChannel out = FileChannel.open(tmp.toPath(),
+                                                StandardOpenOption.WRITE)) {
+            if (level == 0) {
+                out.write(ByteBuffer.wrap(new byte[] { BLOB }));
+                length = in.transferTo(Channels.newOutputStream(out));
+            } else {
+                byte type = Compression.typeByte(BLOB, Compression.DEFLATE);
+                out.write(ByteBuffer.wrap(new byte[] { type }));
+                length = Compression.deflate(in, out, level);
+                shrunk = out.size() - 1 < length;
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw excp;
+        }
+        if (level != 0 && !shrunk) {
+            tmp = inflated(tmp);
+        }
+        String id = toHex(in.getMessageDigest().digest());
+        if (contains(id)) {
+            tmp.delete();
+        } else if (_batch != null) {
+            WriteBatch.rename(tmp, _batch.stage(shardedFile(id)));
+        } else {
+            shardedFile(id).getParentFile().mkdirs();
+            installLoose(id, tmp);
+        }
+        Trace.end(Trace.Phase.WRITE, start, length);
+        return id;
+    }
+
+    /** Return a fresh temporary file in the objects directory. */
+    private File looseTemp() throws IOException {
+        _looseDir.mkdirs();
+        return File.createTempFile(".tmp-", "", _looseDir);
+    }
+
+    /** Return a fresh temporary file holding the uncompressed stored form
+     *  of the blob whose stored form, compressed with DEFLATE, is in TMP,
+     *  and delete TMP.  This undoes compression that did not pay, without
+     *  reading the original contents again. */
+    private File inflated(File tmp) throws IOException {
+        File result = looseTemp();
+        try (FileChannel in = FileChannel.open(tmp.toPath(),
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(result.toPath(),
+                                                StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(new byte[] { BLOB }));
+            Compression.inflate(in, 1, in.size() - 1, out);
+        } catch (IOException | IllegalArgumentException excp) {
+            result.delete();
+            throw excp;
+        } finally {
+            tmp.delete();
+        }
+        return result;
+    }
+
+    /** Return true iff blobs of SIZE bytes are stored in chunks. */
+    private static boolean chunked(long size) {
+        long threshold = Long.getLong(CHUNK_PROPERTY, 0);
+        return threshold > 0 && size >= threshold;
+    }
+
+    /** Store the remaining contents of IN as a list of chunks, storing
+     *  each chunk not already present as a blob, and return the id of the
+     *  contents, which ID supplies once IN has been read to its end.
+     *  Contents that make a single chunk are stored as a plain blob. */
+    private String putChunked(Supplier<String> id, InputStream in) {
+        ByteArrayOutputStream list = new ByteArrayOutputStream();
+        try {
+            Chunker chunker = new Chunker(in);
+            byte[] chunk = chunker.next();
+            byte[] next = chunk == null ? null : chunker.next();
+            if (next == null) {
+                return put(BLOB, chunk == null ? new byte[0] : chunk);
+            }
+            while (chunk != null) {
+                list.write(fromHex(put(BLOB, chunk)));
+                Codec.writeVarint(list, chunk.length);
+                chunk = next;
+                next = chunk == null ? null : chunker.next();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String result = id.get();
+        if (!contains(result)) {
+            writeLoose(result, CHUNKED, list.toByteArray());
+        }
+        return result;
+    }
+
+    /** Direct subsequent writes of loose objects into BATCH, or, if BATCH
+     *  is null, write each loose object immediately.  Objects written into
+     *  a batch are readable from this store before the batch commits. */
+    void setBatch(WriteBatch batch) {
+        _batch = batch;
+    }
+
+    /** Write PAYLOAD as the loose object ID of type TYPE, compressing it at
+     *  the configured level if that makes it smaller. */
+    private void writeLoose(String id, byte type, byte[] payload) {
+        long start = Trace.start();
+        File tmp = stageLoose(id);
+        writeContents(tmp, encode(type, payload));
+        installLoose(id, tmp);
+        Trace.end(Trace.Phase.WRITE, start, payload.length);
+    }
+
+    /** Return the stored form of an object of type TYPE with payload
+     *  PAYLOAD: its type byte followed by the payload, compressed if the
+     *  current compression level makes it smaller. */
+    static byte[] encode(byte type, byte[] payload) {
+        int level = Compression.level();
+        byte[] packed = level > 0 ? Compression.deflate(payload, level) : null;
+        byte[] body = payload;
+        if (packed != null && packed.length < payload.length) {
+            type = Compression.typeByte(type, Compression.DEFLATE);
+            body = packed;
+        }
+        byte[] result = new byte[1 + body.length];
+        result[0] = type;
+        System.arraycopy(body, 0, result, 1, body.length);
+        return result;
+    }
+
+    /** Return the temporary file into which to write the loose object ID:
+     *  one staged in the current batch, if any, or else a fresh file in
+     *  the objects directory. */
+    private File stageLoose(String id) {
+        File file = shardedFile(id);
+        if (_batch != null) {
+            return _batch.stage(file);
+        }
+        file.getParentFile().mkdirs();
+        try {
+            return File.createTempFile(".tmp-", "", file.getParentFile());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Make TMP, just written by stageLoose, the loose object ID.  In a
+     *  batch, that happens when the batch commits; otherwise TMP is
+     *  renamed into place at once, so that a crash never leaves a
+     *  truncated object. */
+    private void installLoose(String id, File tmp) {
+        if (_batch == null) {
+            WriteBatch.rename(tmp, shardedFile(id));
+        }
+    }
+
+    /** Return the file holding the loose object ID, which is a pending
+     *  file if ID was written in the current batch. */
+    private File looseFile(String id) {
+        File pending = _batch == null ? null : _batch.pending(shardedFile(id));
+        return pending == null ? shardedFile(id) : pending;
+    }
+
+    /** Return the file for the loose object ID in its shard. */
+    private File shardedFile(String id) {
+        return join(_looseDir, id.substring(0, SHARD_DIGITS),
+                    id.substring(SHARD_DIGITS));
+    }
+
+    /** Call ACTION on the id of each loose object whose id begins with
+     *  PREFIX, a lower-case hexadecimal numeral, possibly empty, in order
+     *  of shard.  Only the shards that can hold such ids are read, one
+     *  directory entry at a time, so that neither the time nor the memory
+     *  needed depends on the number of loose objects in other shards.
+     *  Objects written in the current batch, which are not yet in their
+     *  shards, are included first. */
+    private void forEachLoose(String prefix, Consumer<String> action) {
+        if (_batch != null) {
+            for (File dest : _batch.destinations()) {
+                File shard = dest.getParentFile();
+                String id = shard.getName() + dest.getName();
+                if (_looseDir.equals(shard.getParentFile())
+                    && id.length() == UID_LENGTH && id.startsWith(prefix)) {
+                    action.accept(id);
+                }
+            }
+        }
+        if (!_looseDir.isDirectory()) {
+            return;
+        }
+        if (prefix.length() >= SHARD_DIGITS) {
+            String shard = prefix.substring(0, SHARD_DIGITS);
+            listLoose(join(_looseDir, shard), shard, prefix, action);
+            return;
+        }
+        for (int s = 0; s < SHARDS; s += 1) {
+            String shard = String.format("%02x", s);
+            if (shard.startsWith(prefix)) {
+                listLoose(join(_looseDir, shard), shard, prefix, action);
+            }
+        }
+    }
+
+    /** Call ACTION on each id that begins with PREFIX and is SHARD followed
+     *  by the name of a file in DIR, which may not exist. */
+    private static void listLoose(File dir, String shard, String prefix,
+                                  Consumer<String> action) {
+        try (DirectoryStream<Path> names =
+                 Files.newDirectoryStream(dir.toPath())) {
+            for (Path path : names) {
+                String id = shard + path.getFileName();
+                if (id.length() == UID_LENGTH && id.startsWith(prefix)) {
+                    action.accept(id);
+                }
+            }
+        } catch (NoSuchFileException | NotDirectoryException excp) {
+            /* An empty shard, or one not yet created. */
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff an object with id ID is present. */
+    boolean contains(String id) {
+        return isLoose(id) || findPack(id) != null;
+    }
+
+    /** Return the contents of the object with id ID, or null if there is
+     *  no such object. */
+    byte[] get(String id) {
+        List<byte[]> deltas = new ArrayList<>();
+        byte[] raw;
+        while (true) {
+            raw = raw(id);
+            if (raw == null) {
+                return null;
+            } else if (raw[0] != DELTA) {
+                break;
+            }
+            deltas.add(raw);
+            id = baseOf(raw);
+        }
+        byte[] result = raw[0] == CHUNKED ? assemble(raw)
+            : Arrays.copyOfRange(raw, 1, raw.length);
+        for (int i = deltas.size() - 1; i >= 0; i -= 1) {
+            byte[] delta = deltas.get(i);
+            result = Delta.apply(result,
+                                 Arrays.copyOfRange(delta,
+                                                    1 + PackFile.ID_BYTES,
+                                                    delta.length));
+        }
+        return result;
+    }
+
+    /** Write the contents of the blob with id ID to FILE, replacing what
+     *  FILE held, and return true; or return false if there is no such
+     *  blob.  Unlike writing the result of get, this does not read the
+     *  contents into memory unless they are stored as a delta; a chunked
+     *  blob is written a chunk at a time.  An
+     *  uncompressed blob is copied by FileChannel.transferTo, which lets the
+     *  operating system move the bytes without a user-space copy; a
+     *  compressed one is inflated from a mapped view of its file a block at
+     *  a time. */
+    boolean copyTo(String id, File file) {
+        long start = Trace.start();
+        if (!contains(id)) {
+            return false;
+        }
+        boolean found;
+        try (FileChannel out =
+                 FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE,
+                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+            found = copyTo(id, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end(Trace.Phase.READ, start, file.length());
+        return found;
+    }
+
+    /** Write the contents of the object with id ID to OUT and return true,
+     *  or return false if there is no such object.  As for copyTo(String,
+     *  File), the contents are read into memory only if they are stored as
+     *  a delta. */
+    boolean copyTo(String id, WritableByteChannel out) {
+        try {
+            if (isLoose(id)) {
+                try (FileChannel in =
+                         FileChannel.open(looseFile(id).toPath(),
+                                          StandardOpenOption.READ)) {
+                    copyStored(id, in, 0, 1, in.size() - 1, out);
+                    return true;
+                } catch (NoSuchFileException excp) {
+                    /* Moved into a pack by a concurrent gc. */
+                }
+            }
+            PackFile pack = findPack(id);
+            if (pack == null) {
+                return false;
+            }
+            int k = pack.lookup(id);
+            copyStored(id, pack.channel(), pack.offset(k),
+                       pack.payloadOffset(k), pack.payloadLength(k), out);
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Call ACTION on the stored form of the object with id ID, exactly as
+     *  in its loose file or pack entry, and return true, or return false
+     *  if there is no such object.  ACTION is given the stored type byte
+     *  and a channel holding the payload, so that the stored form need
+     *  not be read into memory. */
+    boolean withStored(String id, StoredAction action) throws IOException {
+        if (isLoose(id)) {
+            try (FileChannel in = FileChannel.open(looseFile(id).toPath(),
+                                                   StandardOpenOption.READ)) {
+                ByteBuffer type = ByteBuffer.allocate(1);
+                if (in.read(type, 0) != 1) {
+                    throw new IllegalArgumentException("truncated object "
+                                                       + id);
+                }
+                action.accept(type.get(0), in, 1, in.size() - 1);
+                return true;
+            } catch (NoSuchFileException excp) {
+                /* Moved into a pack by a concurrent gc. */
+            }
+        }
+        PackFile pack = findPack(id);
+        if (pack == null) {
+            return false;
+        }
+        int k = pack.lookup(id);
+        action.accept(pack.type(k), pack.channel(), pack.payloadOffset(k),
+                      pack.payloadLength(k));
+        return true;
+    }
+
+    /** An action on the stored form of an object. */
+    interface StoredAction {
+        /** Act on a stored form whose type byte is TYPE and whose payload
+         *  is the LEN bytes at position POS of IN. */
+        void accept(byte type, FileChannel in, long pos, long len)
+            throws IOException;
+    }
+
+    /** Write the contents of the object ID to OUT, given that IN holds its
+     *  stored type byte at TYPEPOS and its LEN-byte payload at PAYLOADPOS. */
+    private void copyStored(String id, FileChannel in, long typePos,
+                            long payloadPos, long len,
+                            WritableByteChannel out)
+        throws IOException {
+        ByteBuffer type = ByteBuffer.allocate(1);
+        if (in.read(type, typePos) != 1) {
+            throw new IllegalArgumentException("truncated object " + id);
+        }
+        int method = Compression.method(type.get(0));
+        if (Compression.type(type.get(0)) == DELTA) {
+            writeFully(out, get(id));
+        } else if (Compression.type(type.get(0)) == CHUNKED) {
+            forEachChunk(raw(id), chunk -> {
+                byte[] data = get(chunk);
+                if (data == null) {
+                    throw new IllegalArgumentException("missing chunk "
+                                                       + chunk);
+                }
+                writeFully(out, data);
+            });
+        } else if (method == Compression.NONE) {
+            for (long n = 0; n < len; ) {
+                long k = in.transferTo(payloadPos + n, len - n, out);
+                if (k <= 0) {
+                    throw new IllegalArgumentException("truncated object "
+                                                       + id);
+                }
+                n += k;
+            }
+        } else if (method == Compression.DEFLATE) {
+            Compression.inflate(in, payloadPos, len, out);
+        } else {
+            throw new IllegalArgumentException("unknown compression method");
+        }
+    }
+
+    /** Write all of DATA to OUT. */
+    private static void writeFully(WritableByteChannel out, byte[] data)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /** Return the contents of the blob whose uncompressed stored form,
+     *  of type CHUNKED, is RAW. */
+    private byte[] assemble(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            forEachChunk(raw, chunk -> out.write(get(chunk)));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /** Call ACTION on the id of each chunk, in order, of the blob whose
+     *  uncompressed stored form, of type CHUNKED, is RAW. */
+    private static void forEachChunk(byte[] raw, ChunkAction action)
+        throws IOException {
+        int[] pos = { 1 };
+        while (pos[0] < raw.length) {
+            String chunk = toHex(Arrays.copyOfRange(raw, pos[0],
+                                                    pos[0]
+                                                    + PackFile.ID_BYTES));
+            pos[0] += PackFile.ID_BYTES;
+            Codec.readVarint(raw, pos);
+            action.accept(chunk);
+        }
+    }
+
+    /** An action on the id of a chunk that may throw IOException. */
+    private interface ChunkAction {
+        /** Act on the chunk with id ID. */
+        void accept(String id) throws IOException;
+    }
+
+    /** Return the type byte of the object with id ID, or 0 if there is no
+     *  such object.  Blobs stored as deltas or chunks have type BLOB. */
+    byte typeOf(String id) {
+        return logicalType(storedType(id));
+    }
+
+    /** Return the type byte with which the object with id ID is stored,
+     *  without any compression method (BLOB, COMMIT, DELTA or CHUNKED), or
+     *  0 if there is no such object. */
+    byte storedType(String id) {
+        byte type = isLoose(id) ? looseType(id) : 0;
+        if (type != 0) {
+            return Compression.type(type);
+        }
+        PackFile pack = findPack(id);
+        return pack == null ? 0
+            : Compression.type(pack.type(pack.lookup(id)));
+    }
+
+    /** Return the type of object denoted by the stored type byte TYPE. */
+    static byte logicalType(byte type) {
+        type = Compression.type(type);
+        return type == DELTA || type == CHUNKED ? BLOB : type;
+    }
+
+    /** Return the ids, in lexicographic order, of up to LIMIT objects of
+     *  type TYPE whose ids begin with the hexadecimal numeral PREFIX.  In
+     *  packs, the candidates are found by binary search in the index; loose
+     *  objects are found by listing the shards that can hold them without
+     *  statting. */
+    List<String> findByPrefix(String prefix, byte type, int limit) {
+        TreeSet<String> result = new TreeSet<>();
+        if (prefix.isEmpty() || prefix.length() > UID_LENGTH
+            || !prefix.chars().allMatch(c -> Character.digit(c, 16) >= 0
+                                        && !Character.isUpperCase(c))) {
+            return new ArrayList<>();
+        }
+        byte[] low = fromHex(prefix.length() % 2 == 0 ? prefix
+                             : prefix + "0");
+        for (PackFile pack : packs()) {
+            int found = 0;
+            for (int k = pack.lowerBound(low);
+                 k < pack.size() && found < limit; k += 1) {
+                String id = pack.id(k);
+                if (!id.startsWith(prefix)) {
+                    break;
+                }
+                if (logicalType(pack.type(k)) == type) {
+                    result.add(id);
+                    found += 1;
+                }
+            }
+        }
+        forEachLoose(prefix, id -> {
+            if (typeOf(id) == type) {
+                result.add(id);
+            }
+        });
+        List<String> ids = new ArrayList<>(result);
+        return ids.size() > limit ? ids.subList(0, limit) : ids;
+    }
+
+    /** Call ACTION on the id of each object of type TYPE, once each, in
+     *  pack-index order and then shard by shard for loose objects.  The
+     *  ids are produced as they are found rather than collected first, so
+     *  that visiting every commit in a large repository takes memory
+     *  independent of their number. */
+    void forEachId(byte type, Consumer<String> action) {
+        forEachObject((id, stored, size, packed) -> {
+            if (logicalType(stored) == type) {
+                action.accept(id);
+            }
+        });
+    }
+
+    /** An action on a stored object. */
+    interface ObjectAction {
+        /** Act on the object ID, whose stored type byte is TYPE, whose
+         *  stored form (type byte and payload) is SIZE bytes long, and
+         *  which is in a pack iff PACKED. */
+        void accept(String id, byte type, long size, boolean packed);
+    }
+
+    /** Call ACTION on each object, once each, in the order and with the
+     *  memory use of forEachId. */
+    void forEachObject(ObjectAction action) {
+        List<PackFile> packs = packs();
+        for (int p = 0; p < packs.size(); p += 1) {
+            PackFile pack = packs.get(p);
+            for (int k = 0; k < pack.size(); k += 1) {
+                String id = pack.id(k);
+                if (!inPacks(packs.subList(0, p), id)) {
+                    action.accept(id, pack.type(k),
+                                  1 + pack.payloadLength(k), true);
+                }
+            }
+        }
+        forEachLoose("", id -> {
+            if (inPacks(packs, id)) {
+                return;
+            }
+            try (FileChannel in = FileChannel.open(looseFile(id).toPath(),
+                                                   StandardOpenOption.READ)) {
+                ByteBuffer type = ByteBuffer.allocate(1);
+                if (in.read(type, 0) == 1) {
+                    action.accept(id, type.get(0), in.size(), false);
+                }
+            } catch (NoSuchFileException excp) {
+                PackFile pack = findPack(id);
+                if (pack != null) {
+                    int k = pack.lookup(id);
+                    action.accept(id, pack.type(k),
+                                  1 + pack.payloadLength(k), true);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        });
+    }
+
+    /** Call ACTION on the id of each object on which the stored form of
+     *  the object ID depends: the base of a delta, or each chunk of a
+     *  chunked blob.  Reads the whole stored form of ID, so is meant for
+     *  objects known to be deltas or chunked. */
+    void forEachDependency(String id, Consumer<String> action) {
+        byte[] raw = raw(id);
+        if (raw == null) {
+            return;
+        }
+        if (raw[0] == DELTA) {
+            action.accept(baseOf(raw));
+        } else if (raw[0] == CHUNKED) {
+            try {
+                forEachChunk(raw, action::accept);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Return true iff one of PACKS contains the object ID. */
+    private static boolean inPacks(List<PackFile> packs, String id) {
+        for (PackFile pack : packs) {
+            if (pack.lookup(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the number of deltas that must be applied to read the object
+     *  with id ID. */
+    int deltaDepth(String id) {
+        int depth = 0;
+        for (byte[] raw = raw(id); raw != null && raw[0] == DELTA;
+             raw = raw(baseOf(raw))) {
+            depth += 1;
+        }
+        return depth;
+    }
+
+    /** Return the id of the full object from which the object with id ID
+     *  is reached by a chain of deltas. */
+    private String chainRoot(String id) {
+        for (byte[] raw = raw(id); raw[0] == DELTA; raw = raw(id)) {
+            id = baseOf(raw);
+        }
+        return id;
+    }
+
+    /** Return the id of the base of the stored delta RAW. */
+    private static String baseOf(byte[] raw) {
+        return toHex(Arrays.copyOfRange(raw, 1, 1 + PackFile.ID_BYTES));
+    }
+
+    /** Return the uncompressed stored form of the object with id ID, a
+     *  type byte followed by its payload, or null if there is no such
+     *  object. */
+    private byte[] raw(String id) {
+        long start = Trace.start();
+        byte[] stored = stored(id);
+        if (stored == null) {
+            return null;
+        }
+        int method = Compression.method(stored[0]);
+        if (method == Compression.NONE) {
+            Trace.end(Trace.Phase.READ, start, stored.length);
+            return stored;
+        }
+        byte[] payload =
+            Compression.inflate(Arrays.copyOfRange(stored, 1, stored.length),
+                                method);
+        byte[] result = new byte[1 + payload.length];
+        result[0] = Compression.type(stored[0]);
+        System.arraycopy(payload, 0, result, 1, payload.length);
+        Trace.end(Trace.Phase.READ, start, stored.length);
+        return result;
+    }
+
+    /** Return the stored form of the object with id ID, exactly as in its
+     *  loose file or pack entry: a type byte, which may record compression,
+     *  followed by the payload.  Returns null if there is no such
+     *  object. */
+    byte[] stored(String id) {
+        if (isLoose(id)) {
+            try {
+                return Files.readAllBytes(looseFile(id).toPath());
+            } catch (NoSuchFileException excp) {
+                /* Moved into a pack by a concurrent gc. */
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        PackFile pack = findPack(id);
+        return pack == null ? null : pack.raw(pack.lookup(id));
+    }
+
+    /** Return a writer for a new pack in this store's packs directory,
+     *  to be added by addPack once finished. */
+    PackFile.Writer newPack() {
+        return new PackFile.Writer(_packDir);
+    }
+
+    /** Add PACK, just written into the packs directory, to the packs
+     *  searched by this store. */
+    void addPack(PackFile pack) {
+        packs().add(pack);
+    }
+
+    /** Stop searching PACK, added by addPack, and remove its files. */
+    void removePack(PackFile pack) {
+        packs().remove(pack);
+        pack.close();
+        pack.indexFile().delete();
+        pack.dataFile().delete();
+    }
+
+    /** Move all loose objects and all existing packs into a single new
+     *  pack, removing what it replaces.  Each object's stored form is
+     *  copied between files without being read into memory, so objects of
+     *  any size can be packed.  Returns the number of objects in the new
+     *  pack, or 0 if there was nothing to do. */
+    int gc() {
+        List<String> loose = new ArrayList<>();
+        forEachLoose("", id -> {
+            if (_batch == null || _batch.pending(shardedFile(id)) == null) {
+                loose.add(id);
+            }
+        });
+        List<PackFile> old = packs();
+        if (loose.isEmpty() && old.size() <= 1) {
+            return 0;
+        }
+        PackFile.Writer writer = new PackFile.Writer(_packDir);
+        PackFile packed;
+        try {
+            for (PackFile pack : old) {
+                for (int k = 0; k < pack.size(); k += 1) {
+                    writer.add(pack.id(k), pack.type(k), pack.channel(),
+                               pack.payloadOffset(k), pack.payloadLength(k));
+                }
+            }
+            for (String id : loose) {
+                addLoose(writer, id);
+            }
+            packed = writer.finish();
+        } catch (IllegalArgumentException excp) {
+            writer.abort();
+            throw excp;
+        }
+        /* The new pack is durable, so what it replaces can go. */
+        for (PackFile pack : old) {
+            pack.close();
+            if (!pack.indexFile().equals(packed.indexFile())) {
+                pack.indexFile().delete();
+                pack.dataFile().delete();
+            }
+        }
+        for (String id : loose) {
+            shardedFile(id).delete();
+        }
+        _packs = new ArrayList<>();
+        _packs.add(packed);
+        return packed.size();
+    }
+
+    /** Append the loose object ID to WRITER, copying its stored form
+     *  from its file. */
+    private void addLoose(PackFile.Writer writer, String id) {
+        try (FileChannel in = FileChannel.open(shardedFile(id).toPath(),
+                                               StandardOpenOption.READ)) {
+            ByteBuffer type = ByteBuffer.allocate(1);
+            if (in.read(type, 0) != 1) {
+                throw new IllegalArgumentException("truncated object " + id);
+            }
+            writer.add(id, type.get(0), in, 1, in.size() - 1);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the type byte of the loose object ID, reading only that
+     *  byte, or 0 if it has just been moved into a pack by a concurrent
+     *  gc. */
+    private byte looseType(String id) {
+        try (InputStream in =
+                 Files.newInputStream(looseFile(id).toPath())) {
+            return (byte) in.read();
+        } catch (NoSuchFileException excp) {
+            return 0;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff ID names a loose object. */
+    private boolean isLoose(String id) {
+        return id.length() == UID_LENGTH && looseFile(id).isFile();
+    }
+
+    /** Return the pack containing the object with id ID, or null. */
+    private PackFile findPack(String id) {
+        if (id.length() != UID_LENGTH) {
+            return null;
+        }
+        byte[] bin;
+        try {
+            bin = fromHex(id);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+        do {
+            for (PackFile pack : packs()) {
+                if (pack.lookup(bin) >= 0) {
+                    return pack;
+                }
+            }
+        } while (!_exclusive && refreshPacks());
+        return null;
+    }
+
+    /** Note whether this store's user holds the writer lock (see
+     *  WriterLock), in which case EXCLUSIVE is true, and no other command
+     *  can be packing objects concurrently. */
+    void setExclusive(boolean exclusive) {
+        _exclusive = exclusive;
+    }
+
+    /** Bring the list of packs up to date with the packs directory, as
+     *  after a concurrent gc has packed loose objects, and return true iff
+     *  it changed.  Packs that have been removed are closed only by close,
+     *  since callers may still be reading them. */
+    private boolean refreshPacks() {
+        List<String> names = packIndexNames();
+        List<PackFile> current = new ArrayList<>();
+        for (PackFile pack : packs()) {
+            if (names.remove(pack.indexFile().getName())) {
+                current.add(pack);
+            } else {
+                _retired.add(pack);
+            }
+        }
+        if (names.isEmpty() && current.size() == _packs.size()) {
+            return false;
+        }
+        current.addAll(openPacks(names));
+        _packs = current;
+        return true;
+    }
+
+    /** Release the files held open by this store's packs. */
+    void close() {
+        if (_packs != null) {
+            for (PackFile pack : _packs) {
+                pack.close();
+            }
+            _packs = null;
+        }
+        for (PackFile pack : _retired) {
+            pack.close();
+        }
+        _retired.clear();
+    }
+
+    /** Return the packs in this store, opening their indices on first
+     *  use. */
+    List<PackFile> packs() {
+        if (_packs == null) {
+            _packs = openPacks(packIndexNames());
+        }
+        return _packs;
+    }
+
+    /** Return the names of the pack index files in the packs directory. */
+    private List<String> packIndexNames() {
+        List<String> result = new ArrayList<>();
+        List<String> names = plainFilenamesIn(_packDir);
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith("pack-")
+                    && name.endsWith(PackFile.INDEX_SUFFIX)) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the packs whose index files are NAMES in the packs
+     *  directory, omitting any that a concurrent gc has just removed. */
+    private List<PackFile> openPacks(List<String> names) {
+        List<PackFile> result = new ArrayList<>();
+        for (String name : names) {
+            File index = join(_packDir, name);
+            try {
+                result.add(new PackFile(index));
+            } catch (IllegalArgumentException excp) {
+                if (index.exists()) {
+                    throw excp;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Directory of loose objects. */
+    private final File _looseDir;
+    /** Directory of packs. */
+    private final File _packDir;
+    /** Open packs, or null if not yet opened. */
+    private List<PackFile> _packs;
+    /** Packs removed by a concurrent gc since they were opened. */
+    private final List<PackFile> _retired = new ArrayList<>();
+    /** True iff no other command can be changing this store. */
+    private boolean _exclusive;
+    /** Batch receiving loose objects, or null to write them at once. */
+    private WriteBatch _batch;
+}
@@ -0,0 +1,400 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Tests of loose and packed object storage. */
+public class ObjectStoreTest {
+
+    /** Return a fresh, empty directory to stand in for .gitlet. */
+    static File tempGitletDir() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-test").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Return the ids of the loose objects under the .gitlet directory DIR,
+     *  in order. */
+    static List<String> looseIds(File dir) throws IOException {
+        List<String> result = new ArrayList<>();
+        File objects = Utils.join(dir, "objects");
+        if (objects.isDirectory()) {
+            try (Stream<Path> paths = Files.walk(objects.toPath(), 2)) {
+                paths.filter(Files::isRegularFile).forEach(path -> {
+                    String shard = path.getParent().getFileName().toString();
+                    result.add(shard + path.getFileName());
+                });
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    @Test
+    public void looseRoundTrip() throws IOException {
+        ObjectStore store = new ObjectStore(tempGitletDir());
+        byte[] data = "hello".getBytes(StandardCharsets.UTF_8);
+        String id = store.put(ObjectStore.BLOB, data);
+        assertEquals(Utils.sha1(data), id);
+        assertTrue(store.contains(id));
+        assertArrayEquals(data, store.get(id));
+        assertEquals(ObjectStore.BLOB, store.typeOf(id));
+        assertNull(store.get(Utils.sha1("missing")));
+    }
+
+    @Test
+    public void streamedFiles() throws IOException {
+        File dir = tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] data = new byte[300000];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i * 31 + i / 1000);
+        }
+        File file = Utils.join(dir, "work.bin");
+        Utils.writeContents(file, data);
+        assertEquals(Utils.sha1(data), Utils.sha1(file));
+        for (int level : new int[] { 0, 1 }) {
+            System.setProperty(Compression.LEVEL_PROPERTY,
+                               Integer.toString(level));
+            try {
+                data[0] = (byte) level;
+                Utils.writeContents(file, data);
+                String id = store.putFile(file, null);
+                assertEquals(Utils.sha1(data), id);
+                assertArrayEquals(data, store.get(id));
+                assertEquals(id, store.putFile(file, null));
+                assertArrayEquals(data, new ObjectStore(dir).get(id));
+
+                data[0] = (byte) (level + 2);
+                Utils.writeContents(file, data);
+                WriteBatch batch = new WriteBatch();
+                store.setBatch(batch);
+                id = store.putFile(file, null);
+                assertArrayEquals(data, store.get(id));
+                assertFalse(new ObjectStore(dir).contains(id));
+                batch.commit();
+                store.setBatch(null);
+                assertArrayEquals(data, new ObjectStore(dir).get(id));
+            } finally {
+                System.clearProperty(Compression.LEVEL_PROPERTY);
+            }
+        }
+        assertEquals(4, looseIds(dir).size());
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709",
+                     Utils.sha1(new byte[0]));
+
+        new Random(3).nextBytes(data);
+        Utils.writeContents(file, data);
+        String noise = store.putFile(file, null);
+        assertEquals(data.length + 1,
+                     Utils.join(dir, "objects", noise.substring(0, 2),
+                                noise.substring(2)).length());
+        assertArrayEquals(data, store.get(noise));
+        assertEquals(5, looseIds(dir).size());
+    }
+
+    @Test
+    public void packsAreWrittenOnce() throws IOException {
+        File dir = tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] data = "an object packed twice".getBytes();
+        String id = store.put(ObjectStore.BLOB, data);
+        byte[] stored = store.stored(id);
+        assertEquals(1, store.gc());
+        PackFile pack = store.packs().get(0);
+        assertEquals(8 + PackFile.ENTRY_HEADER + stored.length - 1,
+                     pack.dataFile().length());
+        byte[] packed = Utils.readContents(pack.dataFile());
+
+        PackFile.Writer writer = store.newPack();
+        writer.add(id, ObjectStore.BLOB, "other contents".getBytes());
+        PackFile again = writer.finish();
+        assertEquals(pack.indexFile(), again.indexFile());
+        assertArrayEquals(packed, Utils.readContents(pack.dataFile()));
+        assertEquals(2, Utils.plainFilenamesIn(pack.indexFile()
+                                               .getParentFile()).size());
+        assertArrayEquals(stored, again.raw(again.lookup(id)));
+        again.close();
+        store.close();
+
+        ByteBuffer old = ByteBuffer.allocate(8 + 5 + stored.length - 1);
+        old.putInt(PackFile.PACK_MAGIC).putInt(1);
+        old.put(stored[0]).putInt(stored.length - 1);
+        old.put(stored, 1, stored.length - 1);
+        Utils.writeContents(pack.dataFile(), old.array());
+        try {
+            new ObjectStore(dir).get(id);
+            fail();
+        } catch (IllegalArgumentException excp) {
+            assertEquals("bad pack: " + pack.dataFile(), excp.getMessage());
+        }
+    }
+
+    @Test
+    public void gcPacksLooseObjects() throws IOException {
+        File dir = tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i += 1) {
+            ids.add(store.put(i % 2 == 0 ? ObjectStore.BLOB
+                              : ObjectStore.COMMIT,
+                              ("object " + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        assertEquals(500, store.gc());
+        assertTrue(looseIds(dir).isEmpty());
+        String extra = store.put(ObjectStore.BLOB, new byte[0]);
+        assertEquals(501, store.gc());
+
+        ObjectStore reopened = new ObjectStore(dir);
+        assertEquals(1, reopened.packs().size());
+        for (int i = 0; i < ids.size(); i += 1) {
+            assertEquals("object " + i,
+                         new String(reopened.get(ids.get(i)),
+                                    StandardCharsets.UTF_8));
+            assertEquals(i % 2 == 0 ? ObjectStore.BLOB : ObjectStore.COMMIT,
+                         reopened.typeOf(ids.get(i)));
+        }
+        assertArrayEquals(new byte[0], reopened.get(extra));
+        assertFalse(reopened.contains(Utils.sha1("missing")));
+    }
+
+    @Test
+    public void looseObjectsAreSharded() throws IOException {
+        File dir = tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 300; i += 1) {
+            ids.add(store.put(ObjectStore.COMMIT, ("c" + i).getBytes()));
+        }
+        File objects = Utils.join(dir, "objects");
+        for (String id : ids) {
+            assertTrue(Utils.join(objects, id.substring(0, 2),
+                                  id.substring(2)).isFile());
+        }
+        assertTrue(Utils.plainFilenamesIn(objects).isEmpty());
+        assertEquals(List.of(ids.get(0)),
+                     store.findByPrefix(ids.get(0), ObjectStore.COMMIT, 2));
+        List<String> all = new ArrayList<>();
+        store.forEachId(ObjectStore.COMMIT, all::add);
+        all.sort(null);
+        ids.sort(null);
+        assertEquals(ids, all);
+
+        assertEquals(300, store.gc());
+        assertTrue(looseIds(dir).isEmpty());
+    }
+
+    @Test
+    public void prefixResolution() throws IOException {
+        ObjectStore store = new ObjectStore(tempGitletDir());
+        List<String> commits = new ArrayList<>();
+        for (int i = 0; i < 3000; i += 1) {
+            byte type = i % 3 == 0 ? ObjectStore.COMMIT : ObjectStore.BLOB;
+            String id = store.put(type, ("obj" + i).getBytes());
+            if (type == ObjectStore.COMMIT) {
+                commits.add(id);
+            }
+            if (i == 1500) {
+                store.gc();
+            }
+        }
+        for (String id : commits) {
+            assertEquals(List.of(id),
+                         store.findByPrefix(id.substring(0, 12),
+                                            ObjectStore.COMMIT, 2));
+            assertEquals(List.of(id),
+                         store.findByPrefix(id.substring(0, 11),
+                                            ObjectStore.COMMIT, 2));
+        }
+        assertEquals(2, store.findByPrefix("a", ObjectStore.COMMIT, 2).size());
+        assertTrue(store.findByPrefix("xyz", ObjectStore.COMMIT, 2).isEmpty());
+    }
+
+    @Test
+    public void compressedAndUncompressedCoexist() throws IOException {
+        File dir = tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] text = new byte[10000];
+        Arrays.fill(text, (byte) 'x');
+        String previous = System.getProperty(Compression.LEVEL_PROPERTY);
+        String plain, packed;
+        try {
+            System.setProperty(Compression.LEVEL_PROPERTY, "0");
+            plain = store.put(ObjectStore.BLOB, text);
+            System.setProperty(Compression.LEVEL_PROPERTY, "9");
+            text[0] = 'y';
+            packed = store.put(ObjectStore.BLOB, text);
+        } finally {
+            if (previous == null) {
+                System.clearProperty(Compression.LEVEL_PROPERTY);
+            } else {
+                System.setProperty(Compression.LEVEL_PROPERTY, previous);
+            }
+        }
+        File objects = Utils.join(dir, "objects");
+        assertEquals(10001, Utils.join(objects, plain.substring(0, 2),
+                                       plain.substring(2)).length());
+        assertTrue(Utils.join(objects, packed.substring(0, 2),
+                              packed.substring(2)).length() < 1000);
+        for (int pass = 0; pass < 2; pass += 1) {
+            assertEquals('y', store.get(packed)[0]);
+            assertEquals('x', store.get(plain)[0]);
+            assertEquals(ObjectStore.BLOB, store.typeOf(packed));
+            store.gc();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void corruptCompressedPayloadsAreRejected() throws IOException {
+        File file = Utils.join(tempGitletDir(), "payload");
+        byte[] whole = Compression.deflate("some text to compress"
+                                           .getBytes(StandardCharsets.UTF_8),
+                                           6);
+        byte[][] payloads = {
+            Arrays.copyOf(whole, whole.length / 2),
+            { 10, 0x78, (byte) 0xbb, 0, 0, 0, 1, 1, 2, 3 },
+        };
+        for (byte[] payload : payloads) {
+            try {
+                Compression.inflate(payload, Compression.DEFLATE);
+                fail();
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+            Utils.writeContents(file, payload);
+            try (FileChannel in = FileChannel.open(file.toPath())) {
+                Compression.inflate(in, 0, payload.length,
+                                    Channels.newChannel(
+                                        new ByteArrayOutputStream()));
+                fail();
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void batchedWritesAppearOnCommit() throws IOException {
+        File dir = tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        WriteBatch batch = new WriteBatch();
+        store.setBatch(batch);
+        byte[] data = "batched".getBytes(StandardCharsets.UTF_8);
+        String id = store.put(ObjectStore.BLOB, data);
+        File ref = Utils.join(dir, "branches", "master");
+        batch.writeLast(ref, id);
+        assertArrayEquals(data, store.get(id));
+        assertFalse(ref.exists());
+        assertEquals(id, Utils.readContentsAsString(batch.pending(ref)));
+        assertFalse(new ObjectStore(dir).contains(id));
+
+        batch.commit();
+        store.setBatch(null);
+        assertEquals(id, Utils.readContentsAsString(ref));
+        assertArrayEquals(data, new ObjectStore(dir).get(id));
+        assertEquals(List.of(id), looseIds(dir));
+
+        batch = new WriteBatch();
+        store.setBatch(batch);
+        String other = store.put(ObjectStore.BLOB, new byte[] { 1 });
+        batch.writeLast(ref, other);
+        batch.abort();
+        store.setBatch(null);
+        assertEquals(id, Utils.readContentsAsString(ref));
+        assertFalse(store.contains(other));
+        assertEquals(List.of(id), looseIds(dir));
+    }
+
+    @Test
+    public void copyToStreamsEveryForm() throws IOException {
+        File dir = tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] text = Benchmarks.randomText(new Random(61), 200000);
+        byte[] noise = new byte[5000];
+        new Random(62).nextBytes(noise);
+        byte[] edited = text.clone();
+        edited[1000] = '!';
+        List<byte[]> contents = List.of(text, noise, edited, new byte[0]);
+        List<String> ids = new ArrayList<>();
+        for (int level : new int[] { 0, 1 }) {
+            System.setProperty(Compression.LEVEL_PROPERTY,
+                               Integer.toString(level));
+            try {
+                ids.clear();
+                ids.add(store.putBlob(text, null));
+                ids.add(store.putBlob(noise, null));
+                ids.add(store.putBlob(edited, ids.get(0)));
+                ids.add(store.putBlob(new byte[0], null));
+            } finally {
+                System.clearProperty(Compression.LEVEL_PROPERTY);
+            }
+            for (int pass = 0; pass < 2; pass += 1) {
+                for (int i = 0; i < ids.size(); i += 1) {
+                    File out = Utils.join(dir, "out" + i);
+                    Utils.writeContents(out, "previous contents, longer");
+                    assertTrue(store.copyTo(ids.get(i), out));
+                    assertArrayEquals(contents.get(i),
+                                      Utils.readContents(out));
+                }
+                store.gc();
+            }
+            for (PackFile pack : store.packs()) {
+                pack.close();
+            }
+            Benchmarks.removeAll(dir);
+            store = new ObjectStore(dir);
+        }
+        assertFalse(store.copyTo(Utils.sha1("missing"),
+                                 Utils.join(dir, "none")));
+    }
+
+    @Test
+    public void chunkedBlobsShareChunks() throws IOException {
+        File dir = tempGitletDir();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] data = new byte[1 << 20];
+        new Random(61).nextBytes(data);
+        byte[] edited = new byte[data.length + 3];
+        System.arraycopy(data, 0, edited, 0, 500000);
+        System.arraycopy(data, 500000, edited, 500003, data.length - 500000);
+        File file = Utils.join(dir, "image.bin");
+        Utils.writeContents(file, edited);
+        System.setProperty(ObjectStore.CHUNK_PROPERTY, "100000");
+        String id1, id2;
+        int before;
+        try {
+            id1 = store.putBlob(data, null);
+            before = looseIds(dir).size();
+            id2 = store.putFile(file, id1);
+        } finally {
+            System.clearProperty(ObjectStore.CHUNK_PROPERTY);
+        }
+        assertEquals(Utils.sha1(edited), id2);
+        int added = looseIds(dir).size()
+            - before;
+        assertTrue(before > 64 && added <= 3);
+        assertEquals(ObjectStore.BLOB, store.typeOf(id2));
+        for (int pass = 0; pass < 2; pass += 1) {
+            assertArrayEquals(data, store.get(id1));
+            File out = Utils.join(dir, "out");
+            assertTrue(store.copyTo(id2, out));
+            assertArrayEquals(edited, Utils.readContents(out));
+            store.gc();
+        }
+    }
+}
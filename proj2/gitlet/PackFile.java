@@ -0,0 +1,508 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** A read-only collection of objects stored as one append-only data file
+ *  (NAME.pack) plus a sorted index of their SHA-1 ids (NAME.idx).  The
+ *  index is memory mapped, so that finding an object is a binary search
+ *  over the mapped table rather than a file-system lookup.
+ *
+ *  The index holds a header (MAGIC, VERSION, count), a 256-entry fan-out
+ *  table whose Kth entry is the number of ids whose first byte is at most
+ *  K, the sorted 20-byte ids, and one 8-byte data-file offset per id.
+ *  The data file holds a header (MAGIC, VERSION) followed by entries of
+ *  the form TYPE (1 byte), LENGTH (8 bytes), PAYLOAD (LENGTH bytes), so
+ *  that a pack can hold objects of any size.
+ */
+class PackFile {
+
+    /** Magic number beginning every index file. */
+    static final int INDEX_MAGIC = 0x47504958;
+    /** Magic number beginning every data file. */
+    static final int PACK_MAGIC = 0x4750414b;
+    /** Current version of the index format. */
+    static final int INDEX_VERSION = 1;
+    /** Current version of the data-file format. */
+    static final int PACK_VERSION = 2;
+
+    /** Suffix of index files. */
+    static final String INDEX_SUFFIX = ".idx";
+    /** Suffix of data files. */
+    static final String PACK_SUFFIX = ".pack";
+
+    /** Number of bytes in a binary SHA-1 id. */
+    static final int ID_BYTES = UID_LENGTH / 2;
+    /** Number of entries in the fan-out table. */
+    private static final int FANOUT = 256;
+    /** Size of the index header in bytes. */
+    private static final int INDEX_HEADER = 12;
+    /** Size of the per-entry header (type and length) in bytes. */
+    static final int ENTRY_HEADER = 9;
+
+    /** A pack whose index is the file INDEX and whose data file is its
+     *  sibling with the same base name. */
+    PackFile(File index) {
+        _index = index;
+        String name = index.getName();
+        _data = new File(index.getParentFile(),
+                         name.substring(0, name.length()
+                                        - INDEX_SUFFIX.length())
+                         + PACK_SUFFIX);
+        try (FileChannel idx = FileChannel.open(index.toPath(),
+                                                StandardOpenOption.READ)) {
+            _map = idx.map(FileChannel.MapMode.READ_ONLY, 0, idx.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_map.getInt(0) != INDEX_MAGIC
+            || _map.getInt(4) != INDEX_VERSION) {
+            throw new IllegalArgumentException("bad pack index: " + index);
+        }
+        _count = _map.getInt(8);
+        _idBase = INDEX_HEADER + 4 * FANOUT;
+        _offsetBase = _idBase + _count * ID_BYTES;
+    }
+
+    /** Return the number of objects in this pack. */
+    int size() {
+        return _count;
+    }
+
+    /** Return the index file of this pack. */
+    File indexFile() {
+        return _index;
+    }
+
+    /** Return the data file of this pack. */
+    File dataFile() {
+        return _data;
+    }
+
+    /** Return the position in the index of the object whose hexadecimal id
+     *  is ID, or -1 if this pack does not contain it. */
+    int lookup(String id) {
+        if (id.length() != UID_LENGTH) {
+            return -1;
+        }
+        return lookup(fromHex(id));
+    }
+
+    /** Return the position in the index of the object whose binary id is
+     *  ID, or -1 if this pack does not contain it. */
+    int lookup(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareId(mid, id);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the position in the index of the first id that is not less
+     *  than the binary string ID, which may be shorter than a full id.
+     *  Returns size() if there is no such id. */
+    int lowerBound(byte[] id) {
+        int lo = (id[0] & 0xff) == 0 ? 0 : fanout((id[0] & 0xff) - 1);
+        int hi = fanout(id[0] & 0xff);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareId(mid, id) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the hexadecimal id of the Kth object in index order. */
+    String id(int k) {
+        byte[] id = new byte[ID_BYTES];
+        _map.get(_idBase + k * ID_BYTES, id);
+        return toHex(id);
+    }
+
+    /** Return the offset in the data file of the Kth object's entry. */
+    long offset(int k) {
+        return _map.getLong(_offsetBase + k * 8);
+    }
+
+    /** Return the type byte of the Kth object. */
+    byte type(int k) {
+        return readAt(offset(k), 1)[0];
+    }
+
+    /** Return the payload of the Kth object. */
+    byte[] payload(int k) {
+        long off = offset(k);
+        return readAt(off + ENTRY_HEADER, arrayLength(length(off)));
+    }
+
+    /** Return the offset in the data file of the Kth object's payload. */
+    long payloadOffset(int k) {
+        return offset(k) + ENTRY_HEADER;
+    }
+
+    /** Return the length in bytes of the Kth object's payload. */
+    long payloadLength(int k) {
+        return length(offset(k));
+    }
+
+    /** Return the type byte of the Kth object followed by its payload, in
+     *  the same form as a loose object file. */
+    byte[] raw(int k) {
+        long off = offset(k);
+        byte[] result = new byte[1 + arrayLength(length(off))];
+        result[0] = readAt(off, 1)[0];
+        readAt(off + ENTRY_HEADER, result, 1, result.length - 1);
+        return result;
+    }
+
+    /** Return a channel reading the data file, opening it and checking its
+     *  header on first use.  It remains open until close. */
+    FileChannel channel() {
+        if (_channel == null) {
+            try {
+                FileChannel channel =
+                    FileChannel.open(_data.toPath(), StandardOpenOption.READ);
+                _channel = channel;
+                try {
+                    ByteBuffer header = ByteBuffer.wrap(readAt(0, 8));
+                    if (header.getInt(0) != PACK_MAGIC
+                        || header.getInt(4) != PACK_VERSION) {
+                        throw new IllegalArgumentException("bad pack: "
+                                                           + _data);
+                    }
+                } catch (IllegalArgumentException excp) {
+                    _channel = null;
+                    channel.close();
+                    throw excp;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _channel;
+    }
+
+    /** Release the data-file channel held by this pack. */
+    void close() {
+        try {
+            if (_channel != null) {
+                _channel.close();
+                _channel = null;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the Kth entry of the fan-out table. */
+    private int fanout(int k) {
+        return _map.getInt(INDEX_HEADER + 4 * k);
+    }
+
+    /** Compare the Kth id in the index with ID as unsigned byte strings,
+     *  considering only the first ID.length bytes of the former. */
+    private int compareId(int k, byte[] id) {
+        int base = _idBase + k * ID_BYTES;
+        for (int i = 0; i < id.length; i += 1) {
+            int c = (_map.get(base + i) & 0xff) - (id[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the payload length recorded in the entry at OFF. */
+    private long length(long off) {
+        return ByteBuffer.wrap(readAt(off + 1, 8)).getLong();
+    }
+
+    /** Return LENGTH, the length of a payload to be read into memory, as
+     *  an int.  Throws IllegalArgumentException if it is too large for an
+     *  array; such payloads can only be copied from channel(). */
+    private static int arrayLength(long length) {
+        if (length < 0 || length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("object too large");
+        }
+        return (int) length;
+    }
+
+    /** Return LEN bytes of the data file starting at offset OFF. */
+    private byte[] readAt(long off, int len) {
+        byte[] result = new byte[len];
+        readAt(off, result, 0, len);
+        return result;
+    }
+
+    /** Read LEN bytes of the data file starting at offset OFF into DST,
+     *  starting at DSTOFF. */
+    private void readAt(long off, byte[] dst, int dstOff, int len) {
+        try {
+            FileChannel channel = channel();
+            ByteBuffer buf = ByteBuffer.wrap(dst, dstOff, len);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, off + buf.position() - dstOff) < 0) {
+                    throw new IllegalArgumentException("truncated pack: "
+                                                       + _data);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Accumulates objects into a new pack in directory DIR.  Entries are
+     *  appended to the data file as they are added; the sorted index is
+     *  written by finish, and only then does the pack become visible. */
+    static class Writer {
+
+        /** A writer creating a new pack in DIR. */
+        Writer(File dir) {
+            _dir = dir;
+            _dir.mkdirs();
+            try {
+                _tmp = File.createTempFile("tmp-", PACK_SUFFIX, dir);
+                _out = new RandomAccessFile(_tmp, "rw");
+                _out.writeInt(PACK_MAGIC);
+                _out.writeInt(PACK_VERSION);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Append the object with hexadecimal id ID, type byte TYPE, and
+         *  payload DATA, unless an object with that id was already added.
+         *  Returns true iff the object was appended. */
+        boolean add(String id, byte type, byte[] data) {
+            if (!_ids.add(id)) {
+                return false;
+            }
+            try {
+                _entries.add(new Entry(fromHex(id), _out.getFilePointer()));
+                _out.writeByte(type);
+                _out.writeLong(data.length);
+                _out.write(data);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return true;
+        }
+
+        /** Append the object with hexadecimal id ID and type byte TYPE,
+         *  whose payload is the LENGTH bytes of IN starting at POS, unless
+         *  an object with that id was already added.  The payload is
+         *  copied between the channels without being read into memory, so
+         *  it may be of any size.  Returns true iff the object was
+         *  appended. */
+        boolean add(String id, byte type, FileChannel in, long pos,
+                    long length) {
+            if (!_ids.add(id)) {
+                return false;
+            }
+            try {
+                _entries.add(new Entry(fromHex(id), _out.getFilePointer()));
+                _out.writeByte(type);
+                _out.writeLong(length);
+                FileChannel out = _out.getChannel();
+                for (long n = 0; n < length; ) {
+                    long k = in.transferTo(pos + n, length - n, out);
+                    if (k <= 0) {
+                        throw new IllegalArgumentException("truncated object "
+                                                           + id);
+                    }
+                    n += k;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return true;
+        }
+
+        /** Append the object with hexadecimal id ID and type byte TYPE,
+         *  whose payload is the next LENGTH bytes of IN, copied a block at
+         *  a time, unless an object with that id was already added, in
+         *  which case the payload is skipped.  Returns true iff the object
+         *  was appended.  Throws IllegalArgumentException if IN ends
+         *  first. */
+        boolean add(String id, byte type, InputStream in, long length) {
+            try {
+                if (!_ids.add(id)) {
+                    in.skipNBytes(length);
+                    return false;
+                }
+                _entries.add(new Entry(fromHex(id), _out.getFilePointer()));
+                _out.writeByte(type);
+                _out.writeLong(length);
+                byte[] buf = new byte[1 << 16];
+                for (long n = 0; n < length; ) {
+                    int k = in.read(buf, 0,
+                                    (int) Math.min(buf.length, length - n));
+                    if (k < 0) {
+                        throw new IllegalArgumentException("truncated object "
+                                                           + id);
+                    }
+                    _out.write(buf, 0, k);
+                    n += k;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return true;
+        }
+
+        /** Return the number of objects added so far. */
+        int size() {
+            return _entries.size();
+        }
+
+        /** Write the index, move both files into place, and return the
+         *  resulting pack.  The pack is named by the SHA-1 of its sorted
+         *  ids.  Both files, and their entries in the directory, are forced
+         *  to disk before this returns, so that the caller may then delete
+         *  the objects the pack replaces.  If a pack of that name already
+         *  has an index, and so is complete, it holds the same objects and
+         *  is left as it is, and the files written here are discarded. */
+        PackFile finish() {
+            _entries.sort((a, b) -> compareIds(a.id, b.id));
+            List<Object> ids = new ArrayList<>();
+            for (Entry e : _entries) {
+                ids.add(e.id);
+            }
+            String name = "pack-" + sha1(ids);
+            File data = join(_dir, name + PACK_SUFFIX);
+            File index = join(_dir, name + INDEX_SUFFIX);
+            try {
+                _out.getFD().sync();
+                _out.close();
+                if (index.isFile()) {
+                    Files.delete(_tmp.toPath());
+                    return new PackFile(index);
+                }
+                Files.move(_tmp.toPath(), data.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+                File tmpIndex = File.createTempFile("tmp-", INDEX_SUFFIX,
+                                                    _dir);
+                ByteBuffer buf =
+                    ByteBuffer.allocate(INDEX_HEADER + 4 * FANOUT
+                                        + _entries.size()
+                                          * (ID_BYTES + 8));
+                buf.putInt(INDEX_MAGIC).putInt(INDEX_VERSION)
+                    .putInt(_entries.size());
+                int[] counts = new int[FANOUT];
+                for (Entry e : _entries) {
+                    counts[e.id[0] & 0xff] += 1;
+                }
+                int total = 0;
+                for (int k = 0; k < FANOUT; k += 1) {
+                    total += counts[k];
+                    buf.putInt(total);
+                }
+                for (Entry e : _entries) {
+                    buf.put(e.id);
+                }
+                for (Entry e : _entries) {
+                    buf.putLong(e.offset);
+                }
+                try (FileOutputStream out = new FileOutputStream(tmpIndex)) {
+                    out.write(buf.array());
+                    out.getFD().sync();
+                }
+                Files.move(tmpIndex.toPath(), index.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+                WriteBatch.force(_dir, true);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return new PackFile(index);
+        }
+
+        /** Discard the objects added so far, creating no pack. */
+        void abort() {
+            try {
+                _out.close();
+            } catch (IOException excp) {
+                /* The file is deleted anyway. */
+            }
+            _tmp.delete();
+        }
+
+        /** Directory receiving the pack. */
+        private final File _dir;
+        /** Temporary data file being appended to. */
+        private File _tmp;
+        /** Open handle on _tmp. */
+        private RandomAccessFile _out;
+        /** Ids added so far, for suppressing duplicates. */
+        private final Set<String> _ids = new HashSet<>();
+        /** Index entries for the objects added so far. */
+        private final List<Entry> _entries = new ArrayList<>();
+    }
+
+    /** An index entry: a binary id and the offset of its data entry. */
+    private static class Entry {
+        /** An entry for ID at data-file offset OFFSET. */
+        Entry(byte[] id, long offset) {
+            this.id = id;
+            this.offset = offset;
+        }
+
+        /** The binary SHA-1 id. */
+        final byte[] id;
+        /** Offset of the entry in the data file. */
+        final long offset;
+    }
+
+    /** Compare binary ids A and B as unsigned byte strings. */
+    static int compareIds(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length && i < b.length; i += 1) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /** The index file. */
+    private final File _index;
+    /** The data file. */
+    private final File _data;
+    /** The memory-mapped contents of _index. */
+    private final MappedByteBuffer _map;
+    /** Number of objects in this pack. */
+    private final int _count;
+    /** Offset in _map of the first id. */
+    private final int _idBase;
+    /** Offset in _map of the first data-file offset. */
+    private final int _offsetBase;
+    /** Channel on _data, opened on first read. */
+    private FileChannel _channel;
+}
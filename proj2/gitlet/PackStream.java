@@ -0,0 +1,494 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+
+import static gitlet.Utils.*;
+
+/** The stream in which fetch and push (see Remote) send objects from one
+ *  repository to another.  It consists of a header,
+ *      MAGIC, VERSION, COUNT                   (4-byte integers)
+ *  then COUNT entries, each
+ *      TYPE (1 byte), ID (20 bytes), LENGTH (8 bytes), PAYLOAD
+ *  holding an object in its stored form (see ObjectStore.withStored), so
+ *  that compressed objects are sent as they are, and last the SHA-1 of
+ *  all that precedes it.  Objects sent as they are stored are copied from
+ *  the sender's files and into the receiver's pack a block at a time, so
+ *  that objects of any size can be transferred.  A sender that fails
+ *  reports why with ERROR in place of MAGIC or of an entry's TYPE.  An
+ *  object comes after those its stored form depends on.  A delta is sent
+ *  as a delta only if its base comes earlier in the stream or is known to
+ *  be in the receiving repository.  Otherwise, as with a blob stored
+ *  whole, the sender tries a new delta against the receiver's version of
+ *  a file of the same name, and only failing that sends the whole blob,
+ *  so that a file changed in a few places costs a few bytes to transfer.
+ *
+ *  The receiver appends the objects it lacks to one new PackFile as they
+ *  arrive, so a transfer of many objects writes two files rather than a
+ *  loose file per object.  A delta against one of its own objects may
+ *  make a chain longer than MAX_DELTA_DEPTH, in which case it stores the
+ *  whole blob instead.  Only after the whole stream has arrived, and every
+ *  object it added hashes to its id and every commit has its parents and
+ *  blobs, does the pack stay in the store.
+ */
+class PackStream {
+
+    /** Magic number beginning a stream. */
+    static final int MAGIC = 0x67737472;
+    /** Current version of the format. */
+    static final int VERSION = 2;
+    /** Marks an error report, as a 4-byte integer where a reader expects
+     *  MAGIC (or, in Remote, a count), or as a byte where it expects an
+     *  entry's TYPE.  The message follows, as by DataOutput.writeUTF. */
+    static final int ERROR = -1;
+
+    /** The objects to be sent in a stream. */
+    static class Selection {
+        /** The ids of the objects to send, in order. */
+        final List<String> ids = new ArrayList<>();
+        /** The ids of objects the receiver is known to have. */
+        final Set<String> known = new HashSet<>();
+        /** Maps some blobs to send to blobs of the same file name that the
+         *  receiver is known to have, against which to try a delta. */
+        final Map<String, String> hints = new HashMap<>();
+    }
+
+    /** Return the objects a repository needs in order to have the commits
+     *  WANTS, given that it has the commits HAVES and all they refer to.
+     *  The commits and objects are those of STORE, whose commit graph is
+     *  GRAPH and whose commits are read by READER.
+     *
+     *  Commits are visited in decreasing order of generation, as in
+     *  CommitGraph.mergeBase, marking those reachable from HAVES
+     *  "uninteresting", until no commit still to be visited is
+     *  interesting.  The uninteresting commits reached by then are the
+     *  boundary of the receiver's history; their blobs (and chunks) are
+     *  taken as present there, and of the blobs of the interesting commits,
+     *  only the others are sent, each with the blob of the same name in the
+     *  boundary, if any, as a hint. */
+    static Selection select(ObjectStore store, CommitGraph graph,
+                            Function<String, Commit> reader,
+                            Collection<String> wants,
+                            Collection<String> haves) {
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (a, b) -> Integer.compare(graph.generation(b),
+                                      graph.generation(a)));
+        BitSet queued = new BitSet();
+        BitSet uninteresting = new BitSet();
+        int interesting = 0;
+        for (String id : wants) {
+            int k = position(graph, reader, id);
+            if (!queued.get(k)) {
+                queued.set(k);
+                queue.add(k);
+                interesting += 1;
+            }
+        }
+        for (String id : haves) {
+            int k = position(graph, reader, id);
+            if (queued.get(k) && !uninteresting.get(k)) {
+                interesting -= 1;
+            } else if (!queued.get(k)) {
+                queued.set(k);
+                queue.add(k);
+            }
+            uninteresting.set(k);
+        }
+
+        List<Integer> commits = new ArrayList<>();
+        List<Integer> boundary = new ArrayList<>();
+        while (interesting > 0) {
+            int k = queue.poll();
+            boolean mark = uninteresting.get(k);
+            if (mark) {
+                boundary.add(k);
+            } else {
+                commits.add(k);
+                interesting -= 1;
+            }
+            for (int p : new int[] { graph.firstParent(k),
+                                     graph.secondParent(k) }) {
+                if (p == CommitGraph.NONE) {
+                    continue;
+                }
+                if (!queued.get(p)) {
+                    queued.set(p);
+                    queue.add(p);
+                    if (!mark) {
+                        interesting += 1;
+                    }
+                } else if (mark && !uninteresting.get(p)) {
+                    interesting -= 1;
+                }
+                if (mark) {
+                    uninteresting.set(p);
+                }
+            }
+        }
+
+        for (int k : queue) {
+            if (uninteresting.get(k)) {
+                boundary.add(k);
+            }
+        }
+
+        Selection result = new Selection();
+        Set<String> known = result.known;
+        Map<String, String> knownByName = new HashMap<>();
+        for (int k : boundary) {
+            for (Map.Entry<String, String> e
+                     : reader.apply(graph.id(k)).getBlobs().entrySet()) {
+                String blob = e.getValue();
+                knownByName.putIfAbsent(e.getKey(), blob);
+                if (known.add(blob)
+                    && store.storedType(blob) == ObjectStore.CHUNKED) {
+                    store.forEachDependency(blob, known::add);
+                }
+            }
+        }
+        Set<String> needed = new LinkedHashSet<>();
+        for (int i = commits.size() - 1; i >= 0; i -= 1) {
+            for (Map.Entry<String, String> e
+                     : reader.apply(graph.id(commits.get(i))).getBlobs()
+                         .entrySet()) {
+                String blob = e.getValue();
+                if (!known.contains(blob) && needed.add(blob)
+                    && knownByName.containsKey(e.getKey())) {
+                    result.hints.put(blob, knownByName.get(e.getKey()));
+                }
+            }
+        }
+        Set<String> order = new LinkedHashSet<>();
+        for (String blob : needed) {
+            addWithDependencies(store, blob, known, needed, order);
+        }
+        for (int i = commits.size() - 1; i >= 0; i -= 1) {
+            order.add(graph.id(commits.get(i)));
+        }
+        result.ids.addAll(order);
+        return result;
+    }
+
+    /** Return the position in GRAPH of the commit ID, adding it, and any
+     *  missing ancestors read by READER, if necessary. */
+    private static int position(CommitGraph graph,
+                                Function<String, Commit> reader, String id) {
+        int k = graph.position(id);
+        return k != CommitGraph.NONE ? k
+            : graph.add(id, reader.apply(id), reader);
+    }
+
+    /** Add the blob ID of STORE to ORDER, unless already there, after any
+     *  objects its stored form depends on that must be sent with it: the
+     *  chunks of a chunked blob that are not KNOWN to the receiver, and the
+     *  base of a delta if that is NEEDED anyway. */
+    private static void addWithDependencies(ObjectStore store, String id,
+                                            Set<String> known,
+                                            Set<String> needed,
+                                            Set<String> order) {
+        if (order.contains(id)) {
+            return;
+        }
+        byte type = store.storedType(id);
+        if (type == ObjectStore.DELTA || type == ObjectStore.CHUNKED) {
+            store.forEachDependency(id, dep -> {
+                if (type == ObjectStore.CHUNKED ? !known.contains(dep)
+                    : needed.contains(dep)) {
+                    addWithDependencies(store, dep, known, needed, order);
+                }
+            });
+        }
+        order.add(id);
+    }
+
+    /** Write the objects of STORE in SELECTION to OUT as a stream, and
+     *  return the number of bytes written.  OUT is flushed but not
+     *  closed.  If an object cannot be sent, the stream ends with an error
+     *  report, and the exception is rethrown. */
+    static long send(ObjectStore store, Selection selection,
+                     OutputStream out) throws IOException {
+        List<String> ids = selection.ids;
+        MessageDigest digest = sha1Digest();
+        BufferedOutputStream buffered = new BufferedOutputStream(out, 1 << 16);
+        DataOutputStream data =
+            new DataOutputStream(new DigestOutputStream(buffered, digest));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(ids.size());
+        long[] bytes = { 12 };
+        Set<String> sent = new HashSet<>();
+        try {
+            for (String id : ids) {
+                boolean found = store.withStored(id, (type, in, pos, len) -> {
+                    byte[] stored =
+                        reencode(store, selection, sent, id, type, in, pos,
+                                 len);
+                    long length = stored == null ? len : stored.length - 1;
+                    data.writeByte(stored == null ? type : stored[0]);
+                    data.write(fromHex(id));
+                    data.writeLong(length);
+                    if (stored == null) {
+                        copy(in, pos, len, data);
+                    } else {
+                        data.write(stored, 1, stored.length - 1);
+                    }
+                    bytes[0] += 1 + PackFile.ID_BYTES + 8 + length;
+                });
+                if (!found) {
+                    throw new IllegalArgumentException("missing object "
+                                                       + id);
+                }
+                sent.add(id);
+            }
+        } catch (RuntimeException excp) {
+            data.writeByte(ERROR);
+            data.writeUTF(message(excp));
+            data.flush();
+            throw excp;
+        }
+        data.flush();
+        buffered.write(digest.digest());
+        buffered.flush();
+        return bytes[0] + PackFile.ID_BYTES;
+    }
+
+    /** Return the stored form in which to send the object ID of STORE,
+     *  whose stored type byte is TYPE and whose payload is the LEN bytes
+     *  at POS of IN, or null to send that stored form as it is.  A delta
+     *  whose base is neither among SENT nor known to the receiver (see
+     *  SELECTION), and a whole blob with a hint, are sent as a delta
+     *  against the hint if that pays; otherwise such a delta is sent as a
+     *  whole blob.  Blobs too large to delta are always sent as stored. */
+    private static byte[] reencode(ObjectStore store, Selection selection,
+                                   Set<String> sent, String id, byte type,
+                                   FileChannel in, long pos, long len)
+        throws IOException {
+        boolean whole = false;
+        if (Compression.type(type) == ObjectStore.DELTA) {
+            String[] base = new String[1];
+            store.forEachDependency(id, dep -> base[0] = dep);
+            whole = !sent.contains(base[0])
+                && !selection.known.contains(base[0]);
+        }
+        String hint = selection.hints.get(id);
+        if (hint != null
+            && (whole || Compression.type(type) == ObjectStore.BLOB
+                && Compression.length(in, pos, len, Compression.method(type))
+                   <= ObjectStore.MAX_DELTA_SOURCE)) {
+            byte[] delta = ObjectStore.deltaPayload(hint, store.get(hint),
+                                                    store.get(id));
+            if (delta != null) {
+                return ObjectStore.encode(ObjectStore.DELTA, delta);
+            }
+        }
+        return whole ? ObjectStore.encode(ObjectStore.BLOB, store.get(id))
+            : null;
+    }
+
+    /** Write the LEN bytes at POS of IN to OUT a block at a time. */
+    private static void copy(FileChannel in, long pos, long len,
+                             OutputStream out) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        for (long n = 0; n < len; ) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), len - n));
+            int k = in.read(buf, pos + n);
+            if (k < 0) {
+                throw new IllegalArgumentException("truncated object");
+            }
+            out.write(buf.array(), 0, k);
+            n += k;
+        }
+    }
+
+    /** Return the message with which to report EXCP to the other end. */
+    static String message(RuntimeException excp) {
+        return excp.getMessage() != null ? excp.getMessage()
+            : excp.toString();
+    }
+
+    /** Return the error reported by the other end, whose message IN
+     *  holds, following ERROR. */
+    static GitletException readError(DataInputStream in) throws IOException {
+        return new GitletException(in.readUTF());
+    }
+
+    /** Read a stream from IN, which should be buffered, and add the
+     *  objects in it that STORE lacks to STORE as a new pack.  Returns the
+     *  ids of the objects added.  Throws IllegalArgumentException, leaving
+     *  STORE as it was, if the stream is malformed or incomplete, or a
+     *  GitletException with the sender's message if it reports an
+     *  error. */
+    static List<String> receive(ObjectStore store, InputStream in)
+        throws IOException {
+        MessageDigest digest = sha1Digest();
+        DataInputStream data =
+            new DataInputStream(new DigestInputStream(in, digest));
+        int magic = data.readInt();
+        if (magic == ERROR) {
+            throw readError(data);
+        } else if (magic != MAGIC || data.readInt() != VERSION) {
+            throw new IllegalArgumentException("not a pack stream");
+        }
+        int count = data.readInt();
+        List<String> added = new ArrayList<>();
+        Set<String> received = new HashSet<>();
+        Map<String, byte[]> thin = new HashMap<>();
+        Map<String, Integer> depths = new HashMap<>();
+        PackFile.Writer writer = null;
+        PackFile pack = null;
+        try {
+            byte[] id = new byte[PackFile.ID_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                byte type = data.readByte();
+                if (type == ERROR) {
+                    throw readError(data);
+                }
+                data.readFully(id);
+                long length = data.readLong();
+                if (length < 0) {
+                    throw new IllegalArgumentException("corrupt pack stream");
+                }
+                String hex = toHex(id);
+                if (store.contains(hex) || !received.add(hex)) {
+                    data.skipNBytes(length);
+                    continue;
+                }
+                writer = writer == null ? store.newPack() : writer;
+                if (Compression.type(type) != ObjectStore.DELTA) {
+                    writer.add(hex, type, data, length);
+                    added.add(hex);
+                    continue;
+                }
+                byte[] payload = readPayload(data, length);
+                byte[] raw = Compression.method(type) == Compression.NONE
+                    ? payload
+                    : Compression.inflate(payload, Compression.method(type));
+                String base = toHex(Arrays.copyOf(raw, PackFile.ID_BYTES));
+                if (thin.containsKey(base) || !received.contains(base)) {
+                    if (!thin.containsKey(base) && !store.contains(base)) {
+                        throw new IllegalArgumentException(
+                            "incomplete pack stream: " + hex + " needs "
+                            + base);
+                    }
+                    int depth = 1 + (thin.containsKey(base)
+                                     ? depths.get(base)
+                                     : store.deltaDepth(base));
+                    thin.put(hex, raw);
+                    if (depth > ObjectStore.MAX_DELTA_DEPTH) {
+                        byte[] whole =
+                            ObjectStore.encode(ObjectStore.BLOB,
+                                               contents(store, thin, hex));
+                        type = whole[0];
+                        payload = Arrays.copyOfRange(whole, 1, whole.length);
+                        depth = 0;
+                    }
+                    depths.put(hex, depth);
+                }
+                writer.add(hex, type, payload);
+                added.add(hex);
+            }
+            byte[] expected = digest.digest();
+            byte[] trailer = new byte[PackFile.ID_BYTES];
+            data.readFully(trailer);
+            if (!Arrays.equals(expected, trailer)) {
+                throw new IllegalArgumentException("corrupt pack stream");
+            }
+            if (writer == null) {
+                return added;
+            }
+            pack = writer.finish();
+            writer = null;
+            store.addPack(pack);
+            verify(store, added);
+            return added;
+        } catch (IOException | RuntimeException excp) {
+            if (writer != null) {
+                writer.abort();
+            }
+            if (pack != null) {
+                store.removePack(pack);
+            }
+            throw excp;
+        }
+    }
+
+    /** Return the LENGTH-byte payload of a delta entry read from IN.
+     *  Memory is allocated only as the payload arrives, so a corrupt or
+     *  hostile length fails at the end of the stream rather than by
+     *  exhausting memory. */
+    private static byte[] readPayload(DataInputStream in, long length)
+        throws IOException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("object too large");
+        }
+        byte[] payload = in.readNBytes((int) length);
+        if (payload.length != length) {
+            throw new IllegalArgumentException("truncated pack stream");
+        }
+        return payload;
+    }
+
+    /** Return the contents of the blob ID, which is either in STORE or
+     *  in THIN, the uncompressed stored forms of the deltas received
+     *  against objects of STORE, directly or through other such deltas. */
+    private static byte[] contents(ObjectStore store, Map<String, byte[]> thin,
+                                   String id) {
+        byte[] raw = thin.get(id);
+        if (raw == null) {
+            return store.get(id);
+        }
+        String base = toHex(Arrays.copyOf(raw, PackFile.ID_BYTES));
+        return Delta.apply(contents(store, thin, base),
+                           Arrays.copyOfRange(raw, PackFile.ID_BYTES,
+                                              raw.length));
+    }
+
+    /** Check that each of the objects of STORE with ids IDS hashes to its
+     *  id, and that each commit among them has its parents and blobs in
+     *  STORE. */
+    private static void verify(ObjectStore store, List<String> ids) {
+        for (String id : ids) {
+            HashingChannel hash = new HashingChannel();
+            store.copyTo(id, hash);
+            if (!hash.id().equals(id)) {
+                throw new IllegalArgumentException("corrupt object " + id
+                                                   + " received");
+            }
+            if (store.typeOf(id) != ObjectStore.COMMIT) {
+                continue;
+            }
+            Commit commit = Commit.decode(store.get(id));
+            List<String> refs = new ArrayList<>(commit.getParents());
+            refs.addAll(commit.getBlobs().values());
+            for (String ref : refs) {
+                if (!store.contains(ref)) {
+                    throw new IllegalArgumentException(
+                        "incomplete pack stream: commit " + id + " needs "
+                        + ref);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** A snapshot of the mutable state of a repository: the name of the
+ *  current branch, the head commit of each branch, and the staging area.
+ *  All of it is kept in one file, .gitlet/refs, which is never modified
+ *  in place: a writer encodes a whole new snapshot into a temporary file
+ *  and renames it over the old one (see WriteBatch), after the objects it
+ *  refers to are durable.  A reader therefore reads the snapshot once and
+ *  sees a consistent state, either entirely before or entirely after any
+ *  concurrent writer's command, without taking any lock, and every commit
+ *  it reaches from the snapshot is complete, since objects are immutable
+ *  once written.  Writers exclude one another with a WriterLock.
+ *
+ *  Each snapshot has a generation number, one more than that of the
+ *  snapshot it replaced, by which a writer can tell whether the snapshot
+ *  it read has since been replaced.  Its encoding (see Codec) is the
+ *  generation, the current branch, the number of branches, each branch's
+ *  name and head id, and the encoded staging area.
+ */
+class Refs {
+
+    /** Magic number beginning an encoded snapshot ("GR"). */
+    static final int MAGIC = 0x4752;
+    /** Current version of the encoding. */
+    static final int VERSION = 1;
+
+    /** An empty snapshot, of generation 0, with no current branch. */
+    Refs() {
+        _staging = new StagingArea().encode();
+    }
+
+    /** Return the snapshot stored in FILE, or null if there is none. */
+    static Refs read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        byte[] data = Utils.readContents(file);
+        Codec.Reader in = new Codec.Reader(data, MAGIC);
+        if (in.version() != VERSION) {
+            throw new IllegalArgumentException("unknown refs version");
+        }
+        Refs result = new Refs();
+        result._generation = in.varint();
+        result._head = in.string();
+        for (int n = in.count(); n > 0; n -= 1) {
+            String name = in.string();
+            result._branches.put(name, in.id());
+        }
+        result._staging = in.bytes();
+        in.end();
+        return result;
+    }
+
+    /** Return a copy of this snapshot, of the same generation. */
+    Refs copy() {
+        Refs result = new Refs();
+        result._generation = _generation;
+        result._head = _head;
+        result._branches.putAll(_branches);
+        result._staging = _staging;
+        return result;
+    }
+
+    /** Return the snapshot that would replace this one, encoded.  Its
+     *  generation is one more than this one's. */
+    byte[] encode() {
+        Codec.Writer out = new Codec.Writer(MAGIC, VERSION);
+        out.varint(_generation + 1).string(_head == null ? "" : _head);
+        out.varint(_branches.size());
+        for (String name : _branches.keySet()) {
+            out.string(name).id(_branches.get(name));
+        }
+        out.bytes(_staging);
+        return out.toByteArray();
+    }
+
+    /** Return the generation of this snapshot. */
+    long generation() {
+        return _generation;
+    }
+
+    /** Return the name of the current branch, or null if none. */
+    String head() {
+        return _head == null || _head.isEmpty() ? null : _head;
+    }
+
+    /** Make NAME the current branch. */
+    void setHead(String name) {
+        _head = name;
+    }
+
+    /** Return the id of the head commit of branch NAME, or null if there
+     *  is no such branch. */
+    String branch(String name) {
+        return _branches.get(name);
+    }
+
+    /** Make ID the head of branch NAME, or delete the branch if ID is
+     *  null. */
+    void setBranch(String name, String id) {
+        if (id == null) {
+            _branches.remove(name);
+        } else {
+            _branches.put(name, id);
+        }
+    }
+
+    /** Return the branches, mapped to their heads, in order of name. */
+    SortedMap<String, String> branches() {
+        return Collections.unmodifiableSortedMap(_branches);
+    }
+
+    /** Return the encoded staging area (see StagingArea). */
+    byte[] staging() {
+        return _staging;
+    }
+
+    /** Make ENCODED the encoded staging area. */
+    void setStaging(byte[] encoded) {
+        _staging = encoded;
+    }
+
+    /** Generation number of this snapshot. */
+    private long _generation;
+    /** Name of the current branch, or null or empty if none. */
+    private String _head;
+    /** Heads of branches by name. */
+    private final TreeMap<String, String> _branches = new TreeMap<>();
+    /** The encoded staging area. */
+    private byte[] _staging;
+}
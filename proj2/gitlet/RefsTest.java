@@ -0,0 +1,230 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Tests of reference snapshots and the reader/writer protocol. */
+public class RefsTest {
+
+    @Test
+    public void snapshotRoundTrip() throws IOException {
+        File file = Utils.join(ObjectStoreTest.tempGitletDir(), "refs");
+        assertNull(Refs.read(file));
+        Refs refs = new Refs();
+        assertNull(refs.head());
+        refs.setHead("master");
+        refs.setBranch("master", Utils.sha1("a"));
+        refs.setBranch("dev", Utils.sha1("b"));
+        StagingArea stage = new StagingArea();
+        stage.add("f", Utils.sha1("c"));
+        refs.setStaging(stage.encode());
+        Utils.writeContents(file, refs.encode());
+        Refs copy = Refs.read(file);
+        assertEquals(1, copy.generation());
+        assertEquals("master", copy.head());
+        assertEquals(refs.branches(), copy.branches());
+        assertEquals(stage.getAdditions(),
+                     StagingArea.decode(copy.staging()).getAdditions());
+        copy.setBranch("dev", null);
+        Utils.writeContents(file, copy.encode());
+        assertEquals(2, Refs.read(file).generation());
+        assertNull(Refs.read(file).branch("dev"));
+    }
+
+    @Test
+    public void writersExcludeEachOther() throws Exception {
+        File lockFile = Utils.join(ObjectStoreTest.tempGitletDir(), "lock");
+        WriterLock lock = WriterLock.acquire(lockFile);
+        WriterLock[] other = new WriterLock[1];
+        Thread t = new Thread(() -> other[0] = WriterLock.tryAcquire(lockFile));
+        t.start();
+        t.join();
+        assertNull(other[0]);
+        lock.release();
+        t = new Thread(() -> {
+            other[0] = WriterLock.tryAcquire(lockFile);
+            other[0].release();
+        });
+        t.start();
+        t.join();
+        assertNotNull(other[0]);
+    }
+
+    /** Try to take the writer lock in the file ARGS[0], exiting with
+     *  status 0 if it was free and 1 if not: the other process in
+     *  nestedAcquisitionKeepsTheLock. */
+    public static void main(String... args) {
+        WriterLock lock = WriterLock.tryAcquire(new File(args[0]));
+        System.exit(lock == null ? 1 : 0);
+    }
+
+    /** Return the exit status of a separate process trying to take the
+     *  writer lock in LOCKFILE. */
+    private static int tryLockInChild(File lockFile) throws Exception {
+        String java = Utils.join(new File(System.getProperty("java.home")),
+                                 "bin", "java").getPath();
+        Process child =
+            new ProcessBuilder(java, "-cp",
+                               System.getProperty("java.class.path"),
+                               RefsTest.class.getName(), lockFile.getPath())
+            .inheritIO().start();
+        return child.waitFor();
+    }
+
+    /** A command that holds the writer lock, as in a batch, and runs find
+     *  (which takes the lock to build the message index) must still hold
+     *  it afterwards. */
+    @Test
+    public void nestedAcquisitionKeepsTheLock() throws Exception {
+        File dir = ObjectStoreTest.tempGitletDir();
+        File gitlet = Utils.join(dir, ".gitlet");
+        gitlet.mkdir();
+        ObjectStore store = new ObjectStore(gitlet);
+        store.put(ObjectStore.COMMIT,
+                  new Commit("locked", new Date(0), List.of(), Map.of())
+                  .encode());
+        store.close();
+        File lockFile = Utils.join(gitlet, "lock");
+        PrintStream stdout = System.out;
+        Repository.open(dir);
+        try {
+            Repository.lockForWriting();
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            Repository.find("locked");
+            System.setOut(stdout);
+            assertTrue(Utils.join(gitlet, "message-index").exists());
+            assertEquals(1, tryLockInChild(lockFile));
+            WriterLock nested = WriterLock.acquire(lockFile);
+            nested.release();
+            assertEquals(1, tryLockInChild(lockFile));
+            Repository.flush();
+            assertEquals(0, tryLockInChild(lockFile));
+        } finally {
+            System.setOut(stdout);
+            Repository.open(new File(System.getProperty("user.dir")));
+        }
+    }
+
+    /** Number of commits made by the writer in the stress test. */
+    private static final int COMMITS = 200;
+    /** Number of concurrent readers in the stress test. */
+    private static final int READERS = 8;
+
+    /** Many readers, each with its own ObjectStore, repeatedly read the
+     *  snapshot and walk the whole history it names while one writer makes
+     *  commits under the writer lock and periodically packs the store.
+     *  Every reader must see a complete history whose length matches the
+     *  snapshot's generation, with generations never going backwards. */
+    @Test
+    public void concurrentReadersSeeCompleteCommits() throws Exception {
+        File dir = ObjectStoreTest.tempGitletDir();
+        File refsFile = Utils.join(dir, "refs");
+        File lockFile = Utils.join(dir, "lock");
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong reads = new AtomicLong();
+
+        Thread writer = new Thread(() -> {
+            try {
+                ObjectStore store = new ObjectStore(dir);
+                for (int i = 1; i <= COMMITS; i += 1) {
+                    WriterLock lock = WriterLock.acquire(lockFile);
+                    try {
+                        store.setExclusive(true);
+                        Refs refs = Refs.read(refsFile);
+                        refs = refs == null ? new Refs() : refs;
+                        String parent = refs.branch("master");
+                        WriteBatch batch = new WriteBatch();
+                        store.setBatch(batch);
+                        String blob = store.putBlob(contents(i), null);
+                        Commit commit = new Commit(
+                            "commit " + i, new Date(i),
+                            parent == null ? List.of() : List.of(parent),
+                            Map.of("f", blob));
+                        String id = store.put(ObjectStore.COMMIT,
+                                              commit.encode());
+                        refs.setHead("master");
+                        refs.setBranch("master", id);
+                        batch.writeLast(refsFile, refs.encode());
+                        batch.commit();
+                        store.setBatch(null);
+                        if (i % 50 == 0) {
+                            store.gc();
+                        }
+                    } finally {
+                        store.setExclusive(false);
+                        lock.release();
+                    }
+                }
+                store.close();
+            } catch (Throwable excp) {
+                errors.add(excp);
+            } finally {
+                done.set(true);
+            }
+        });
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r += 1) {
+            readers.add(new Thread(() -> {
+                try {
+                    ObjectStore store = new ObjectStore(dir);
+                    long last = 0;
+                    while (!done.get()) {
+                        Refs refs = Refs.read(refsFile);
+                        if (refs == null) {
+                            continue;
+                        }
+                        assertTrue(refs.generation() >= last);
+                        last = refs.generation();
+                        String id = refs.branch(refs.head());
+                        for (long k = last; k > 0; k -= 1) {
+                            Commit c = Commit.decode(store.get(id));
+                            assertEquals("commit " + k, c.getMessage());
+                            assertArrayEquals(contents((int) k),
+                                              store.get(c.getBlobs()
+                                                        .get("f")));
+                            id = k == 1 ? null : c.getParents().get(0);
+                        }
+                        assertNull(id);
+                        reads.incrementAndGet();
+                    }
+                    store.close();
+                } catch (Throwable excp) {
+                    errors.add(excp);
+                }
+            }));
+        }
+        for (Thread t : readers) {
+            t.start();
+        }
+        writer.start();
+        writer.join();
+        for (Thread t : readers) {
+            t.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new AssertionError(errors.peek());
+        }
+        assertEquals(COMMITS, Refs.read(refsFile).generation());
+        assertTrue(reads.get() >= READERS);
+    }
+
+    /** Return the contents of file f in the Ith commit. */
+    private static byte[] contents(int i) {
+        return ("version " + i + "\n").repeat(1 + i % 7).getBytes();
+    }
+}
@@ -0,0 +1,674 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import static gitlet.Utils.*;
+
+/** The transfer of commits between repositories by fetch and push.  The
+ *  command's repository (the client) connects to the remote repository
+ *  (the server), named by a location that is either the path of its
+ *  .gitlet directory, which a thread of this process serves over an
+ *  in-memory pipe, or tcp://HOST:PORT/PATH, naming the directory PATH
+ *  served by a process started with
+ *      java gitlet.Remote PORT DIR...
+ *  which listens on the loopback interface and serves only the .gitlet
+ *  directories DIR.  Over either connection, the exchange is the same:
+ *
+ *  1. The client sends MAGIC, VERSION, the path of the remote .gitlet
+ *     directory, and the service, "fetch" or "push".  The server replies
+ *     with an error message, empty if none, and advertises its branches:
+ *     their number, and then each one's name and head.
+ *  2. For a fetch, the client sends the heads it wants, none if it already
+ *     has the branch's head.  Then, in rounds, it sends some of its own
+ *     commits ("haves"), newest first, and the server replies with those
+ *     it also has.  Those and their ancestors are common to both, and the
+ *     client offers only commits not yet known to be common, doubling the
+ *     round each time, until it has offered all its history or MAX_HAVES
+ *     commits and sends an empty round.  The server then sends a
+ *     PackStream of the objects reachable from the wanted heads but not
+ *     from the common commits, so an incremental fetch costs a few round
+ *     trips and the new objects, whatever the size of the history.
+ *  3. For a push, the advertised heads the client has are the common
+ *     commits.  The client sends the branch, its head as advertised (or
+ *     none), the new head, and a PackStream of the objects reachable from
+ *     the new head but not from the common commits.  The server, under its
+ *     writer lock, stores the objects, moves the branch if it is still at
+ *     the advertised head and the new head descends from it, and replies
+ *     with an error message, empty if none.
+ *
+ *  A server that fails in the middle of a fetch sends PackStream.ERROR and
+ *  a message in place of the count or stream the client expects, and the
+ *  client reports the message as a GitletException.
+ *
+ *  Strings are sent as by DataOutput.writeUTF and ids as 20 bytes.
+ */
+class Remote {
+
+    /** Magic number beginning a request. */
+    static final int MAGIC = 0x67726d74;
+    /** Current version of the protocol. */
+    static final int VERSION = 1;
+    /** Port of a tcp location that gives none. */
+    static final int DEFAULT_PORT = 9419;
+    /** Number of commits offered in the first round of negotiation. */
+    static final int FIRST_ROUND = 16;
+    /** Largest number of commits offered in one round. */
+    static final int MAX_ROUND = 256;
+    /** Number of commits offered before the client stops negotiating. */
+    static final int MAX_HAVES = 1024;
+    /** Size of the buffers of a pipe to a server thread. */
+    private static final int PIPE_SIZE = 1 << 16;
+
+    /** The parts of a repository that take part in a transfer. */
+    static class Endpoint {
+        /** An endpoint whose objects are in STORE, whose commit graph is
+         *  GRAPH, and whose commits are read by READER. */
+        Endpoint(ObjectStore store, CommitGraph graph,
+                 Function<String, Commit> reader) {
+            this.store = store;
+            this.graph = graph;
+            this.reader = reader;
+        }
+
+        /** Return true iff ID is the id of a commit in this repository. */
+        boolean hasCommit(String id) {
+            return store.contains(id)
+                && store.typeOf(id) == ObjectStore.COMMIT;
+        }
+
+        /** Return the position of the commit ID in the graph, adding it if
+         *  necessary. */
+        int position(String id) {
+            int k = graph.position(id);
+            return k != CommitGraph.NONE ? k
+                : graph.add(id, reader.apply(id), reader);
+        }
+
+        /** Return true iff the commit ANCESTOR is the commit ID or one of
+         *  its ancestors. */
+        boolean isAncestor(String ancestor, String id) {
+            int a = position(ancestor);
+            return graph.mergeBase(a, position(id)) == a;
+        }
+
+        /** Return the objects to send so that a repository that has the
+         *  commits HAVES has the commits WANTS. */
+        PackStream.Selection select(Collection<String> wants,
+                                    Collection<String> haves) {
+            return PackStream.select(store, graph, reader, wants, haves);
+        }
+
+        /** The objects. */
+        final ObjectStore store;
+        /** The commit graph. */
+        final CommitGraph graph;
+        /** Reads commits. */
+        final Function<String, Commit> reader;
+    }
+
+    /** The outcome of a transfer. */
+    static class Result {
+        /** A transfer leaving the remote branch at TIP after sending
+         *  OBJECTS objects, with BYTES bytes crossing the connection. */
+        Result(String tip, int objects, long bytes) {
+            this.tip = tip;
+            this.objects = objects;
+            this.bytes = bytes;
+        }
+
+        /** The head of the branch transferred. */
+        final String tip;
+        /** Number of objects stored by the receiver. */
+        final int objects;
+        /** Number of bytes sent and received over the connection. */
+        final long bytes;
+    }
+
+    /** Fetch branch BRANCH of the repository at LOCATION, resolved against
+     *  directory CWD if relative, into LOCAL, whose branch heads are HEADS,
+     *  and return the result, whose tip is the head of BRANCH. */
+    static Result fetch(Endpoint local, Collection<String> heads,
+                        String location, String branch, File cwd) {
+        try (Connection conn = Connection.open(location, "fetch", cwd)) {
+            String tip = conn.branches.get(branch);
+            if (tip == null) {
+                throw error("That remote does not have that branch.");
+            }
+            if (local.hasCommit(tip)) {
+                conn.out.writeInt(0);
+                conn.out.flush();
+                return new Result(tip, 0, conn.bytes());
+            }
+            conn.out.writeInt(1);
+            writeId(conn.out, tip);
+            negotiate(local, heads, conn);
+            int objects = PackStream.receive(local.store, conn.in).size();
+            return new Result(tip, objects, conn.bytes());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Offer the commits of LOCAL reachable from HEADS over CONN, as
+     *  described above, until the server has enough to know what to
+     *  send. */
+    private static void negotiate(Endpoint local, Collection<String> heads,
+                                  Connection conn) throws IOException {
+        CommitGraph graph = local.graph;
+        PriorityQueue<Integer> queue =
+            new PriorityQueue<>((a, b) -> Integer.compare(graph.generation(b),
+                                                          graph.generation(a)));
+        BitSet queued = new BitSet();
+        BitSet common = new BitSet();
+        for (String head : heads) {
+            if (local.hasCommit(head)) {
+                int k = local.position(head);
+                if (!queued.get(k)) {
+                    queued.set(k);
+                    queue.add(k);
+                }
+            }
+        }
+        int round = FIRST_ROUND;
+        for (int offered = 0; offered < MAX_HAVES; offered += round,
+                 round = Math.min(2 * round, MAX_ROUND)) {
+            List<String> haves = new ArrayList<>();
+            while (haves.size() < round && !queue.isEmpty()) {
+                int k = queue.poll();
+                if (common.get(k)) {
+                    continue;
+                }
+                haves.add(graph.id(k));
+                for (int p : new int[] { graph.firstParent(k),
+                                         graph.secondParent(k) }) {
+                    if (p != CommitGraph.NONE && !queued.get(p)) {
+                        queued.set(p);
+                        queue.add(p);
+                    }
+                }
+            }
+            if (haves.isEmpty()) {
+                break;
+            }
+            conn.out.writeInt(haves.size());
+            for (String id : haves) {
+                writeId(conn.out, id);
+            }
+            conn.out.flush();
+            int n = conn.in.readInt();
+            if (n == PackStream.ERROR) {
+                throw PackStream.readError(conn.in);
+            }
+            for (; n > 0; n -= 1) {
+                markCommon(graph, graph.position(readId(conn.in)), common);
+            }
+        }
+        conn.out.writeInt(0);
+        conn.out.flush();
+    }
+
+    /** Mark the commit at position K of GRAPH and its ancestors in
+     *  COMMON. */
+    private static void markCommon(CommitGraph graph, int k, BitSet common) {
+        List<Integer> pending = new ArrayList<>(List.of(k));
+        while (!pending.isEmpty()) {
+            int next = pending.remove(pending.size() - 1);
+            if (next == CommitGraph.NONE || common.get(next)) {
+                continue;
+            }
+            common.set(next);
+            pending.add(graph.firstParent(next));
+            pending.add(graph.secondParent(next));
+        }
+    }
+
+    /** Push HEAD, a commit of LOCAL, to branch BRANCH of the repository at
+     *  LOCATION, resolved against directory CWD if relative, and return
+     *  the result. */
+    static Result push(Endpoint local, String head, String location,
+                       String branch, File cwd) {
+        try (Connection conn = Connection.open(location, "push", cwd)) {
+            String expected = conn.branches.get(branch);
+            if (expected != null
+                && (!local.hasCommit(expected)
+                    || !local.isAncestor(expected, head))) {
+                throw error("Please pull down remote changes before"
+                            + " pushing.");
+            }
+            List<String> haves = new ArrayList<>();
+            for (String id : conn.branches.values()) {
+                if (local.hasCommit(id)) {
+                    haves.add(id);
+                }
+            }
+            PackStream.Selection selection =
+                local.select(List.of(head), haves);
+            conn.out.writeUTF(branch);
+            conn.out.writeBoolean(expected != null);
+            if (expected != null) {
+                writeId(conn.out, expected);
+            }
+            writeId(conn.out, head);
+            PackStream.send(local.store, selection, conn.out);
+            String reply = conn.in.readUTF();
+            if (!reply.isEmpty()) {
+                throw error(reply);
+            }
+            return new Result(head, selection.ids.size(), conn.bytes());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A client's connection to a server, after the server has
+     *  replied. */
+    private static class Connection implements Closeable {
+
+        /** Return a connection to the repository at LOCATION, relative to
+         *  CWD, for SERVICE, having read the server's branches.  Throws a
+         *  GitletException if there is no repository there. */
+        static Connection open(String location, String service, File cwd)
+            throws IOException {
+            Connection conn;
+            String path;
+            if (location.startsWith("tcp:")) {
+                URI uri;
+                try {
+                    uri = new URI(location);
+                } catch (URISyntaxException excp) {
+                    throw error("Remote directory not found.");
+                }
+                Socket socket =
+                    new Socket(uri.getHost(),
+                               uri.getPort() < 0 ? DEFAULT_PORT
+                               : uri.getPort());
+                socket.setTcpNoDelay(true);
+                conn = new Connection(socket.getInputStream(),
+                                      socket.getOutputStream(), socket, null);
+                path = uri.getPath();
+            } else {
+                PipedInputStream fromServer = new PipedInputStream(PIPE_SIZE);
+                PipedInputStream toServer = new PipedInputStream(PIPE_SIZE);
+                PipedOutputStream serverOut =
+                    new PipedOutputStream(fromServer);
+                PipedOutputStream clientOut = new PipedOutputStream(toServer);
+                File dir = new File(location);
+                path = (dir.isAbsolute() ? dir : join(cwd, location))
+                    .getPath();
+                List<File> roots = List.of(new File(path));
+                Thread server =
+                    new Thread(() -> serve(toServer, serverOut, roots),
+                               "gitlet-remote");
+                server.setDaemon(true);
+                server.start();
+                conn = new Connection(fromServer, clientOut, null, server);
+            }
+            try {
+                conn.out.writeInt(MAGIC);
+                conn.out.writeInt(VERSION);
+                conn.out.writeUTF(path);
+                conn.out.writeUTF(service);
+                conn.out.flush();
+                String status = conn.in.readUTF();
+                if (!status.isEmpty()) {
+                    throw error(status);
+                }
+                for (int n = conn.in.readInt(); n > 0; n -= 1) {
+                    String name = conn.in.readUTF();
+                    conn.branches.put(name, readId(conn.in));
+                }
+                return conn;
+            } catch (IOException | RuntimeException excp) {
+                conn.close();
+                throw excp;
+            }
+        }
+
+        /** A connection reading from IN and writing to OUT, which closes
+         *  RESOURCE, if any, and waits for the local SERVER thread, if
+         *  any, when closed. */
+        private Connection(InputStream in, OutputStream out,
+                           Closeable resource, Thread server) {
+            this.in = new DataInputStream(new BufferedInputStream(
+                new FilterInputStream(in) {
+                    @Override
+                    public int read() throws IOException {
+                        int c = super.read();
+                        _received += c < 0 ? 0 : 1;
+                        return c;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len)
+                        throws IOException {
+                        int n = super.read(b, off, len);
+                        _received += Math.max(n, 0);
+                        return n;
+                    }
+                }, PIPE_SIZE));
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len)
+                        throws IOException {
+                        out.write(b, off, len);
+                        _sent += len;
+                    }
+                }, PIPE_SIZE));
+            _resource = resource;
+            _server = server;
+        }
+
+        /** Return the number of bytes sent and received so far. */
+        long bytes() {
+            return _sent + _received;
+        }
+
+        @Override
+        public void close() {
+            for (Closeable c : new Closeable[] { out, in, _resource }) {
+                try {
+                    if (c != null) {
+                        c.close();
+                    }
+                } catch (IOException excp) {
+                    /* The server has gone already. */
+                }
+            }
+            try {
+                if (_server != null) {
+                    _server.join();
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** Input from the server. */
+        final DataInputStream in;
+        /** Output to the server. */
+        final DataOutputStream out;
+        /** The server's branches and their heads. */
+        final Map<String, String> branches = new TreeMap<>();
+        /** Closed with this connection. */
+        private final Closeable _resource;
+        /** The thread serving this connection, or null. */
+        private final Thread _server;
+        /** Numbers of bytes sent and received. */
+        private long _sent, _received;
+    }
+
+    /** Serve one request read from IN, writing replies to OUT, and close
+     *  both.  Only the .gitlet directories ROOTS may be named by the
+     *  request; any other is reported as not found.  Errors that the client
+     *  cannot be told of, such as its disconnecting, end the request
+     *  silently. */
+    static void serve(InputStream in, OutputStream out, List<File> roots) {
+        try (DataInputStream input =
+                 new DataInputStream(new BufferedInputStream(in, PIPE_SIZE));
+             DataOutputStream output =
+                 new DataOutputStream(new BufferedOutputStream(out,
+                                                               PIPE_SIZE))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return;
+            }
+            File dir = new File(input.readUTF()).getCanonicalFile();
+            String service = input.readUTF();
+            if (!isServed(dir, roots)
+                || !join(dir, "objects").isDirectory()
+                && !join(dir, "packs").isDirectory()
+                && !join(dir, "refs").isFile()) {
+                output.writeUTF("Remote directory not found.");
+                return;
+            }
+            new Server(dir, input, output).serve(service);
+        } catch (IOException | RuntimeException excp) {
+            /* The client sees the connection close. */
+        }
+    }
+
+    /** Return true iff DIR, a canonical path, is one of the directories
+     *  ROOTS. */
+    private static boolean isServed(File dir, List<File> roots)
+        throws IOException {
+        for (File root : roots) {
+            if (root.getCanonicalFile().equals(dir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The server side of one request, for the .gitlet directory DIR. */
+    private static class Server {
+
+        /** A server for DIR, reading IN and writing OUT. */
+        Server(File dir, DataInputStream in, DataOutputStream out) {
+            _dir = dir;
+            _in = in;
+            _out = out;
+            _store = new ObjectStore(dir);
+            _end = new Endpoint(_store,
+                                new CommitGraph(join(dir, "commit-graph")),
+                                this::readCommit);
+        }
+
+        /** Serve SERVICE, having accepted the request. */
+        void serve(String service) throws IOException {
+            try {
+                Refs refs;
+                try {
+                    refs = readRefs();
+                } catch (RuntimeException excp) {
+                    _out.writeUTF(PackStream.message(excp));
+                    return;
+                }
+                _out.writeUTF("");
+                _out.writeInt(refs.branches().size());
+                for (Map.Entry<String, String> e
+                         : refs.branches().entrySet()) {
+                    _out.writeUTF(e.getKey());
+                    writeId(_out, e.getValue());
+                }
+                _out.flush();
+                if (service.equals("fetch")) {
+                    serveFetch();
+                } else if (service.equals("push")) {
+                    servePush();
+                }
+            } finally {
+                _store.close();
+            }
+        }
+
+        /** Answer the negotiation of a fetch and send its objects. */
+        private void serveFetch() throws IOException {
+            List<String> wants = new ArrayList<>();
+            for (int n = _in.readInt(); n > 0; n -= 1) {
+                wants.add(readId(_in));
+            }
+            if (wants.isEmpty()) {
+                return;
+            }
+            PackStream.Selection selection;
+            try {
+                List<String> common = new ArrayList<>();
+                for (int n = _in.readInt(); n > 0; n = _in.readInt()) {
+                    List<String> acks = new ArrayList<>();
+                    for (; n > 0; n -= 1) {
+                        String id = readId(_in);
+                        if (_end.hasCommit(id)) {
+                            acks.add(id);
+                        }
+                    }
+                    _out.writeInt(acks.size());
+                    for (String id : acks) {
+                        writeId(_out, id);
+                    }
+                    _out.flush();
+                    common.addAll(acks);
+                }
+                selection = _end.select(wants, common);
+            } catch (RuntimeException excp) {
+                _out.writeInt(PackStream.ERROR);
+                _out.writeUTF(PackStream.message(excp));
+                _out.flush();
+                return;
+            }
+            PackStream.send(_store, selection, _out);
+            WriterLock lock = WriterLock.tryAcquire(join(_dir, "lock"));
+            if (lock != null) {
+                try {
+                    _end.graph.save();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+
+        /** Receive a push and reply whether it was accepted. */
+        private void servePush() throws IOException {
+            String branch = _in.readUTF();
+            String expected = _in.readBoolean() ? readId(_in) : null;
+            String head = readId(_in);
+            WriterLock lock = WriterLock.acquire(join(_dir, "lock"));
+            String status;
+            try {
+                _store.setExclusive(true);
+                PackStream.receive(_store, _in);
+                Refs refs = readRefs();
+                if (!Objects.equals(refs.branch(branch), expected)
+                    || !_end.hasCommit(head)
+                    || (expected != null
+                        && !_end.isAncestor(expected, head))) {
+                    status = "Please pull down remote changes before"
+                        + " pushing.";
+                } else {
+                    refs.setBranch(branch, head);
+                    if (refs.head() == null) {
+                        refs.setHead(branch);
+                    }
+                    WriteBatch batch = new WriteBatch();
+                    batch.writeLast(join(_dir, "refs"), refs.encode());
+                    batch.commit();
+                    _end.graph.save();
+                    status = "";
+                }
+            } catch (RuntimeException excp) {
+                status = PackStream.message(excp);
+            } finally {
+                _store.setExclusive(false);
+                lock.release();
+            }
+            _out.writeUTF(status);
+            _out.flush();
+        }
+
+        /** Return the server repository's references. */
+        private Refs readRefs() {
+            Refs refs = Refs.read(join(_dir, "refs"));
+            return refs != null ? refs : new Refs();
+        }
+
+        /** Return the commit ID of the server repository. */
+        private Commit readCommit(String id) {
+            byte[] data = _store.get(id);
+            if (data == null) {
+                throw new IllegalArgumentException("missing commit " + id);
+            }
+            return Commit.decode(data);
+        }
+
+        /** The .gitlet directory served. */
+        private final File _dir;
+        /** Input from the client. */
+        private final DataInputStream _in;
+        /** Output to the client. */
+        private final DataOutputStream _out;
+        /** The served repository's objects. */
+        private final ObjectStore _store;
+        /** The served repository. */
+        private final Endpoint _end;
+    }
+
+    /** Write the id ID to OUT. */
+    private static void writeId(DataOutputStream out, String id)
+        throws IOException {
+        out.write(fromHex(id));
+    }
+
+    /** Return the id read from IN. */
+    private static String readId(DataInputStream in) throws IOException {
+        byte[] id = new byte[PackFile.ID_BYTES];
+        in.readFully(id);
+        return toHex(id);
+    }
+
+    /** Accept connections on SERVER until it is closed, serving each in
+     *  its own thread, for the .gitlet directories ROOTS. */
+    static void serve(ServerSocket server, List<File> roots) {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException excp) {
+                continue;
+            }
+            Thread t = new Thread(() -> {
+                try (socket) {
+                    serve(socket.getInputStream(), socket.getOutputStream(),
+                          roots);
+                } catch (IOException excp) {
+                    /* The client sees the connection close. */
+                }
+            }, "gitlet-remote");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /** Serve the .gitlet directories ARGS[1..] on the loopback interface
+     *  at port ARGS[0] until killed. */
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java gitlet.Remote PORT DIR...");
+            System.exit(1);
+        }
+        int port = Integer.parseInt(args[0]);
+        List<File> roots = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            roots.add(new File(args[i]));
+        }
+        try (ServerSocket server =
+                 new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            serve(server, roots);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/** Tests of fetch and push between repositories. */
+public class RemoteTest {
+
+    /** Return the contents of file f in the Ith commit: a long text
+     *  changed in one place per commit, so that versions are deltas. */
+    private static byte[] contents(int i) {
+        byte[] text = Benchmarks.randomText(new Random(7), 20000);
+        text[i * 37 % text.length] = '!';
+        return text;
+    }
+
+    /** Make commit I, with parent PARENT, in STORE and return its id. */
+    private static String commit(ObjectStore store, String parent, int i) {
+        String previous = parent == null ? null
+            : Commit.decode(store.get(parent)).getBlobs().get("f");
+        Map<String, String> blobs =
+            Map.of("f", store.putBlob(contents(i), previous),
+                   "g", store.put(ObjectStore.BLOB, "same".getBytes()));
+        return store.put(ObjectStore.COMMIT,
+                         new Commit("commit " + i, new Date(i),
+                                    parent == null ? List.of()
+                                    : List.of(parent), blobs).encode());
+    }
+
+    /** Make BRANCH the branch of the repository at DIR whose head is ID. */
+    private static void setBranch(File dir, String branch, String id) {
+        File file = Utils.join(dir, "refs");
+        Refs refs = Refs.read(file);
+        refs = refs == null ? new Refs() : refs;
+        refs.setHead(branch);
+        refs.setBranch(branch, id);
+        Utils.writeContents(file, refs.encode());
+    }
+
+    /** Return the repository at DIR as the local end of a transfer. */
+    private static Remote.Endpoint endpoint(File dir, ObjectStore store) {
+        return new Remote.Endpoint(store,
+                                   new CommitGraph(Utils.join(dir,
+                                                              "commit-graph")),
+                                   id -> Commit.decode(store.get(id)));
+    }
+
+    /** Assert that the history ending at TIP in FROM is all in TO. */
+    private static void assertCopied(ObjectStore from, ObjectStore to,
+                                     String tip) {
+        for (String id = tip; id != null; ) {
+            assertArrayEquals(from.get(id), to.get(id));
+            Commit c = Commit.decode(to.get(id));
+            for (String blob : c.getBlobs().values()) {
+                assertArrayEquals(from.get(blob), to.get(blob));
+            }
+            id = c.getParents().isEmpty() ? null : c.getParents().get(0);
+        }
+    }
+
+    @Test
+    public void fetchIsIncrementalAndPushIsChecked() throws IOException {
+        File src = ObjectStoreTest.tempGitletDir();
+        File dst = ObjectStoreTest.tempGitletDir();
+        ObjectStore remote = new ObjectStore(src);
+        String tip = null;
+        for (int i = 0; i < 30; i += 1) {
+            tip = commit(remote, tip, i);
+            if (i == 20) {
+                remote.gc();
+            }
+        }
+        setBranch(src, "master", tip);
+
+        ObjectStore local = new ObjectStore(dst);
+        Remote.Result full = Remote.fetch(endpoint(dst, local), List.of(),
+                                          src.getPath(), "master", null);
+        assertEquals(tip, full.tip);
+        assertEquals(30 + 30 + 1, full.objects);
+        assertCopied(remote, local, tip);
+        assertEquals(1, local.packs().size());
+
+        String old = tip;
+        for (int i = 30; i < 33; i += 1) {
+            tip = commit(remote, tip, i);
+        }
+        setBranch(src, "master", tip);
+        Remote.Result more = Remote.fetch(endpoint(dst, local), List.of(old),
+                                          src.getPath(), "master", null);
+        assertEquals(6, more.objects);
+        assertTrue(more.bytes < full.bytes / 10);
+        assertCopied(remote, local, tip);
+        assertEquals(0, Remote.fetch(endpoint(dst, local), List.of(tip),
+                                     src.getPath(), "master", null).objects);
+
+        try {
+            Remote.fetch(endpoint(dst, local), List.of(tip), src.getPath(),
+                         "none", null);
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("That remote does not have that branch.",
+                         excp.getMessage());
+        }
+        try {
+            Remote.fetch(endpoint(dst, local), List.of(tip),
+                         Utils.join(src, "nowhere").getPath(), "master",
+                         null);
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("Remote directory not found.", excp.getMessage());
+        }
+
+        String mine = commit(local, tip, 40);
+        Remote.Result pushed = Remote.push(endpoint(dst, local), mine,
+                                           src.getPath(), "master", null);
+        assertEquals(2, pushed.objects);
+        assertEquals(mine, Refs.read(Utils.join(src, "refs"))
+                     .branch("master"));
+        assertCopied(local, new ObjectStore(src), mine);
+
+        String stale = commit(local, tip, 41);
+        try {
+            Remote.push(endpoint(dst, local), stale, src.getPath(), "master",
+                        null);
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("Please pull down remote changes before pushing.",
+                         excp.getMessage());
+        }
+        assertEquals(mine, Refs.read(Utils.join(src, "refs"))
+                     .branch("master"));
+    }
+
+    @Test
+    public void corruptStreamsAreRejected() throws IOException {
+        ObjectStore store = new ObjectStore(ObjectStoreTest.tempGitletDir());
+        for (long length : new long[] { -1, Long.MAX_VALUE }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(PackStream.MAGIC);
+            out.writeInt(PackStream.VERSION);
+            out.writeInt(1);
+            out.writeByte(ObjectStore.BLOB);
+            out.write(Utils.fromHex(Utils.sha1("x")));
+            out.writeLong(length);
+            out.write("x".getBytes());
+            try {
+                PackStream.receive(store, new ByteArrayInputStream(
+                    bytes.toByteArray()));
+                fail();
+            } catch (IllegalArgumentException excp) {
+                assertTrue(store.packs().isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void serverErrorsReachTheClient() throws IOException {
+        File src = ObjectStoreTest.tempGitletDir();
+        ObjectStore remote = new ObjectStore(src);
+        String tip = commit(remote, null, 0);
+        setBranch(src, "master", tip);
+        String blob = Commit.decode(remote.get(tip)).getBlobs().get("g");
+        assertTrue(Utils.join(src, "objects", blob.substring(0, 2),
+                              blob.substring(2)).delete());
+        File dst = ObjectStoreTest.tempGitletDir();
+        ObjectStore local = new ObjectStore(dst);
+        try {
+            Remote.fetch(endpoint(dst, local), List.of(), src.getPath(),
+                         "master", null);
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("missing object " + blob, excp.getMessage());
+        }
+        assertTrue(local.packs().isEmpty());
+        assertFalse(local.contains(tip));
+    }
+
+    @Test
+    public void thinDeltasKeepChainsShort() throws IOException {
+        File src = ObjectStoreTest.tempGitletDir();
+        File dst = ObjectStoreTest.tempGitletDir();
+        ObjectStore remote = new ObjectStore(src);
+        ObjectStore local = new ObjectStore(dst);
+        String blob = null;
+        for (int i = 0; i <= ObjectStore.MAX_DELTA_DEPTH; i += 1) {
+            blob = local.putBlob(contents(i), blob);
+        }
+        assertEquals(ObjectStore.MAX_DELTA_DEPTH, local.deltaDepth(blob));
+        assertEquals(blob, remote.put(ObjectStore.BLOB,
+                                      contents(ObjectStore.MAX_DELTA_DEPTH)));
+        byte[] base = new Commit("base", new Date(0), List.of(),
+                                 Map.of("f", blob)).encode();
+        String old = local.put(ObjectStore.COMMIT, base);
+        assertEquals(old, remote.put(ObjectStore.COMMIT, base));
+        String next = remote.putBlob(contents(99), blob);
+        assertEquals(1, remote.deltaDepth(next));
+        String tip = remote.put(ObjectStore.COMMIT,
+                                new Commit("next", new Date(1), List.of(old),
+                                           Map.of("f", next)).encode());
+        setBranch(src, "master", tip);
+
+        Remote.Result result = Remote.fetch(endpoint(dst, local),
+                                            List.of(old), src.getPath(),
+                                            "master", null);
+        assertEquals(2, result.objects);
+        assertTrue(result.bytes < 1000);
+        assertEquals(0, local.deltaDepth(next));
+        assertArrayEquals(contents(99), local.get(next));
+    }
+
+    @Test
+    public void fetchOverLoopback() throws IOException {
+        File src = ObjectStoreTest.tempGitletDir();
+        ObjectStore remote = new ObjectStore(src);
+        String tip = null;
+        for (int i = 0; i < 5; i += 1) {
+            tip = commit(remote, tip, i);
+        }
+        setBranch(src, "master", tip);
+        File dst = ObjectStoreTest.tempGitletDir();
+        ObjectStore local = new ObjectStore(dst);
+        try (ServerSocket server =
+                 new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread t = new Thread(() -> Remote.serve(server, List.of(src)));
+            t.setDaemon(true);
+            t.start();
+            String location = "tcp://127.0.0.1:" + server.getLocalPort()
+                + src.getAbsolutePath();
+            Remote.Result result =
+                Remote.fetch(endpoint(dst, local), List.of(), location,
+                             "master", null);
+            assertEquals(11, result.objects);
+            assertCopied(remote, local, tip);
+            try {
+                Remote.fetch(endpoint(src, remote), List.of(),
+                             "tcp://127.0.0.1:" + server.getLocalPort()
+                             + dst.getAbsolutePath(), "master", null);
+                fail();
+            } catch (GitletException excp) {
+                assertEquals("Remote directory not found.",
+                             excp.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/** Finds files that were renamed or copied between two trees, so that
+ *  status and merge can follow a file that moved rather than treating it
+ *  as one file deleted and an unrelated one added.  Given the files only
+ *  in the old tree (the sources) and those only in the new tree (the
+ *  targets), each mapped to its blob id, it pairs each target with the
+ *  most similar source, if that is at least THRESHOLD percent similar.
+ *  The first target paired with a source is a rename of it; any other is
+ *  a copy.
+ *
+ *  Targets with the same blob id as some source are paired first, by
+ *  hashing.  For the rest, the contents are split, as in Git, into spans
+ *  ending at a newline or 64 bytes long, and each file is summarized by a
+ *  MinHash signature of its set of span hashes.  So that a signature
+ *  costs one hash per span rather than SIGNATURE, it is made by
+ *  one-permutation hashing: the top bits of each span's hash choose one
+ *  of SIGNATURE bins, and each bin keeps the least hash that falls in it;
+ *  an empty bin then takes a value derived from the next nonempty one
+ *  ("densification").  The fraction of positions at
+ *  which two signatures agree estimates the Jaccard similarity of the two
+ *  files' sets of spans.  Rather than comparing every source with every
+ *  target, the signatures are cut into BANDS bands of ROWS positions, and
+ *  only files sharing an entire band are compared (locality-sensitive
+ *  hashing).  Files 50% similar share some band with probability 0.87,
+ *  and files 80% similar with probability better than 0.9999, while
+ *  dissimilar files rarely meet at all, so the work grows with the
+ *  number of files rather than its square.
+ */
+class RenameDetector {
+
+    /** Default minimum similarity, in percent, of a rename or copy. */
+    static final int DEFAULT_THRESHOLD = 50;
+    /** Log base 2 of the number of hashes in a signature. */
+    static final int SIGNATURE_BITS = 7;
+    /** Number of hashes in a signature. */
+    static final int SIGNATURE = 1 << SIGNATURE_BITS;
+    /** Number of positions in a band. */
+    static final int ROWS = 4;
+    /** Number of bands in a signature. */
+    static final int BANDS = SIGNATURE / ROWS;
+    /** Maximum length of a span. */
+    static final int SPAN = 64;
+    /** Mask selecting the file index from a band key, whose other bits are
+     *  the band's hash.  Allows up to 2**24 files. */
+    private static final long INDEX_MASK = (1L << 24) - 1;
+
+    /** A rename or copy of SOURCE to TARGET. */
+    static class Match {
+
+        /** A match of SOURCE to TARGET with similarity SCORE percent, which
+         *  is a COPY if true and otherwise a rename. */
+        Match(String source, String target, int score, boolean copy) {
+            this.source = source;
+            this.target = target;
+            this.score = score;
+            this.copy = copy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s -> %s (%d%%)",
+                                 copy ? "copy" : "rename",
+                                 source, target, score);
+        }
+
+        /** The name of the file in the old tree. */
+        final String source;
+        /** The name of the file in the new tree. */
+        final String target;
+        /** Estimated similarity, in percent. */
+        final int score;
+        /** True iff the source was already renamed to another target. */
+        final boolean copy;
+    }
+
+    /** A detector that reads blob contents with CONTENTS, and reports
+     *  matches at least THRESHOLD percent similar. */
+    RenameDetector(Function<String, byte[]> contents, int threshold) {
+        _contents = contents;
+        _threshold = threshold;
+    }
+
+    /** A detector that reads blob contents with CONTENTS and uses the
+     *  default threshold. */
+    RenameDetector(Function<String, byte[]> contents) {
+        this(contents, DEFAULT_THRESHOLD);
+    }
+
+    /** Return the renames and copies from SOURCES, the files only in the
+     *  old tree, to TARGETS, the files only in the new, each a map from
+     *  names to blob ids.  The matches are in order of target name. */
+    List<Match> detect(Map<String, String> sources,
+                       Map<String, String> targets) {
+        List<Match> result = new ArrayList<>();
+        Set<String> used = new HashSet<>();
+        List<String> srcNames = new ArrayList<>(sources.keySet());
+        List<String> tgtNames = new ArrayList<>();
+
+        HashMap<String, String> byId = new HashMap<>();
+        for (Map.Entry<String, String> e : sources.entrySet()) {
+            byId.putIfAbsent(e.getValue(), e.getKey());
+        }
+        for (Map.Entry<String, String> e : targets.entrySet()) {
+            String src = byId.get(e.getValue());
+            if (src == null) {
+                tgtNames.add(e.getKey());
+            } else {
+                result.add(new Match(src, e.getKey(), 100, !used.add(src)));
+            }
+        }
+        if (srcNames.isEmpty() || tgtNames.isEmpty()) {
+            result.sort(Comparator.comparing(m -> m.target));
+            return result;
+        }
+
+        HashMap<String, long[]> signatures = new HashMap<>();
+        long[][] srcSigs = new long[srcNames.size()][];
+        for (int i = 0; i < srcSigs.length; i += 1) {
+            srcSigs[i] = signatures.computeIfAbsent(
+                sources.get(srcNames.get(i)), this::signature);
+        }
+        long[][] tgtSigs = new long[tgtNames.size()][];
+        for (int j = 0; j < tgtSigs.length; j += 1) {
+            tgtSigs[j] = signatures.computeIfAbsent(
+                targets.get(tgtNames.get(j)), this::signature);
+        }
+
+        List<long[]> candidates = new ArrayList<>();
+        long[] keys = new long[srcSigs.length];
+        for (int b = 0; b < BANDS; b += 1) {
+            int n = 0;
+            for (int i = 0; i < srcSigs.length; i += 1) {
+                if (srcSigs[i] != null) {
+                    keys[n] = bandHash(srcSigs[i], b) & ~INDEX_MASK | i;
+                    n += 1;
+                }
+            }
+            Arrays.sort(keys, 0, n);
+            for (int j = 0; j < tgtSigs.length; j += 1) {
+                if (tgtSigs[j] == null) {
+                    continue;
+                }
+                long h = bandHash(tgtSigs[j], b) & ~INDEX_MASK;
+                for (int k = lowerBound(keys, n, h);
+                     k < n && (keys[k] & ~INDEX_MASK) == h; k += 1) {
+                    int i = (int) (keys[k] & INDEX_MASK);
+                    if (firstSharedBand(srcSigs[i], tgtSigs[j]) != b) {
+                        continue;
+                    }
+                    int score = similarity(srcSigs[i], tgtSigs[j]);
+                    if (score >= _threshold) {
+                        candidates.add(new long[] { score, i, j });
+                    }
+                }
+            }
+        }
+
+        candidates.sort((x, y) -> x[0] != y[0] ? Long.compare(y[0], x[0])
+                        : x[2] != y[2] ? Long.compare(x[2], y[2])
+                        : Long.compare(x[1], y[1]));
+        boolean[] matched = new boolean[tgtNames.size()];
+        for (long[] c : candidates) {
+            int i = (int) c[1], j = (int) c[2];
+            if (!matched[j]) {
+                matched[j] = true;
+                String src = srcNames.get(i);
+                result.add(new Match(src, tgtNames.get(j), (int) c[0],
+                                     !used.add(src)));
+            }
+        }
+        result.sort(Comparator.comparing(m -> m.target));
+        return result;
+    }
+
+    /** Return the MinHash signature of the blob with id ID, or null if it
+     *  is empty. */
+    private long[] signature(String id) {
+        byte[] data = _contents.apply(id);
+        if (data.length == 0) {
+            return null;
+        }
+        long[] sig = new long[SIGNATURE];
+        Arrays.fill(sig, Long.MAX_VALUE);
+        for (int start = 0, i = 0; start < data.length; start = i) {
+            int end = Math.min(start + SPAN, data.length);
+            long h = 0;
+            while (i < end) {
+                byte c = data[i];
+                i += 1;
+                h = h * 31 + (c & 0xff);
+                if (c == '\n') {
+                    break;
+                }
+            }
+            long v = mix(h ^ (long) (i - start) << 56);
+            int bin = (int) (v >>> (64 - SIGNATURE_BITS));
+            v &= -1L >>> SIGNATURE_BITS;
+            if (v < sig[bin]) {
+                sig[bin] = v;
+            }
+        }
+        for (int k = 0; k < SIGNATURE; k += 1) {
+            if (sig[k] == Long.MAX_VALUE) {
+                int t = 1;
+                while (sig[(k + t) % SIGNATURE] == Long.MAX_VALUE
+                       || sig[(k + t) % SIGNATURE] < 0) {
+                    t += 1;
+                }
+                sig[k] = mix(sig[(k + t) % SIGNATURE] + t) | Long.MIN_VALUE;
+            }
+        }
+        return sig;
+    }
+
+    /** Return the percentage of positions at which signatures A and B
+     *  agree. */
+    private static int similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int k = 0; k < SIGNATURE; k += 1) {
+            if (a[k] == b[k]) {
+                same += 1;
+            }
+        }
+        return same * 100 / SIGNATURE;
+    }
+
+    /** Return the index of the first of the first N elements of the sorted
+     *  array KEYS that is at least KEY, or N if there is none. */
+    private static int lowerBound(long[] keys, int n, long key) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the first band that signatures A and B share entirely, or
+     *  BANDS if none.  Each pair of files is compared only in that band,
+     *  and not again in later ones. */
+    private static int firstSharedBand(long[] a, long[] b) {
+        for (int band = 0; band < BANDS; band += 1) {
+            int k = band * ROWS;
+            while (k < (band + 1) * ROWS && a[k] == b[k]) {
+                k += 1;
+            }
+            if (k == (band + 1) * ROWS) {
+                return band;
+            }
+        }
+        return BANDS;
+    }
+
+    /** Return a hash of band B of signature SIG. */
+    private static long bandHash(long[] sig, int b) {
+        long h = b;
+        for (int k = b * ROWS; k < (b + 1) * ROWS; k += 1) {
+            h = mix(h ^ sig[k]);
+        }
+        return h;
+    }
+
+    /** Return a well-mixed function of X (the SplitMix64 finalizer). */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Reads the contents of blobs by id. */
+    private final Function<String, byte[]> _contents;
+    /** Minimum similarity, in percent, of a match. */
+    private final int _threshold;
+}
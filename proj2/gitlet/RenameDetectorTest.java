@@ -0,0 +1,89 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/** Tests of rename and copy detection. */
+public class RenameDetectorTest {
+
+    /** Blob contents by id. */
+    private final HashMap<String, byte[]> _blobs = new HashMap<>();
+
+    /** Return the id of a blob holding TEXT, recording it. */
+    private String blob(String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        String id = Utils.sha1(data);
+        _blobs.put(id, data);
+        return id;
+    }
+
+    /** Return N lines of random text from RAND. */
+    private static String lines(Random rand, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append(rand.nextLong()).append(' ')
+                .append(rand.nextInt()).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the matches from SOURCES to TARGETS. */
+    private List<RenameDetector.Match> detect(Map<String, String> sources,
+                                              Map<String, String> targets) {
+        return new RenameDetector(_blobs::get).detect(sources, targets);
+    }
+
+    @Test
+    public void exactAndEditedRenames() {
+        Random rand = new Random(61);
+        String a = lines(rand, 100), b = lines(rand, 100);
+        String c = lines(rand, 100), d = lines(rand, 100);
+        Map<String, String> sources = new TreeMap<>(Map.of(
+            "a.txt", blob(a), "b.txt", blob(b), "c.txt", blob(c)));
+        Map<String, String> targets = new TreeMap<>(Map.of(
+            "dir/a.txt", blob(a),
+            "b2.txt", blob(b.substring(0, b.length() / 2) + "new line\n"
+                           + b.substring(b.length() / 2)),
+            "d.txt", blob(d)));
+        List<RenameDetector.Match> matches = detect(sources, targets);
+        assertEquals(2, matches.size());
+        assertEquals("b.txt", matches.get(0).source);
+        assertEquals("b2.txt", matches.get(0).target);
+        assertTrue(matches.get(0).score >= 80);
+        assertFalse(matches.get(0).copy);
+        assertEquals("a.txt", matches.get(1).source);
+        assertEquals("dir/a.txt", matches.get(1).target);
+        assertEquals(100, matches.get(1).score);
+    }
+
+    @Test
+    public void copies() {
+        Random rand = new Random(62);
+        String a = lines(rand, 50);
+        Map<String, String> sources = Map.of("a", blob(a));
+        Map<String, String> targets = new TreeMap<>(Map.of(
+            "x", blob(a), "y", blob(a + "one more line\n")));
+        List<RenameDetector.Match> matches = detect(sources, targets);
+        assertEquals(2, matches.size());
+        assertFalse(matches.get(0).copy);
+        assertTrue(matches.get(1).copy);
+        assertEquals("a", matches.get(1).source);
+    }
+
+    @Test
+    public void dissimilarFilesAreNotPaired() {
+        Random rand = new Random(63);
+        Map<String, String> sources = Map.of("a", blob(lines(rand, 40)),
+                                             "e", blob(""));
+        Map<String, String> targets = Map.of("b", blob(lines(rand, 40)),
+                                             "f", blob("x"));
+        assertTrue(detect(sources, targets).isEmpty());
+    }
+}
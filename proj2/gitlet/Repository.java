@@ -1,6 +1,13 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
 import static gitlet.Utils.*;
 
 // TODO: any imports you need here
@@ -20,10 +27,686 @@ public class Repository {
      * variable is used. We've provided two examples for you.
      */
 
-    /** The current working directory. */
-    public static final File CWD = new File(System.getProperty("user.dir"));
+    /** The current working directory.  It and the locations below are
+     *  fixed for a command; a Daemon running many commands changes them
+     *  with open. */
+    public static File CWD;
     /** The .gitlet directory. */
-    public static final File GITLET_DIR = join(CWD, ".gitlet");
+    public static File GITLET_DIR;
+    /** The blobs and commits of this repository, loose or packed. */
+    static ObjectStore OBJECTS;
+    /** The file holding the snapshot of references and staging area. */
+    static File REFS_FILE;
+    /** The file locked by commands that change the repository. */
+    static File LOCK_FILE;
+    /** The file holding the commit graph. */
+    static File GRAPH_FILE;
+    /** The file recording the attributes and blob ids of working files. */
+    static File INDEX_FILE;
+    /** The file indexing commits by message. */
+    static File MESSAGE_INDEX_FILE;
+
+    static {
+        open(new File(System.getProperty("user.dir")));
+    }
+
+    /** Name of the system property that, when true, makes commands report
+     *  cache statistics on the standard error. */
+    static final String DEBUG_PROPERTY = "gitlet.debug";
+
+    /** Cached attributes of working files, loaded on first use. */
+    private static StatCache statCache;
+    /** The commit graph, loaded on first use. */
+    private static CommitGraph commitGraph;
+    /** The message index, opened on first use. */
+    private static MessageIndex messageIndex;
+    /** Commits read or written by this command, or by earlier commands
+     *  run by the same Daemon.  Since a commit's id is the hash of its
+     *  contents, these remain valid in any repository. */
+    private static final CommitCache COMMITS = new CommitCache();
+    /** Writes made by this command, made durable together by flush, or
+     *  null if there have been none. */
+    private static WriteBatch batch;
+    /** The snapshot of references read by this command, or null if it has
+     *  not been read. */
+    private static Refs refs;
+    /** True iff this command has changed the references. */
+    private static boolean refsChanged;
+    /** The writer lock, if this command holds it, or null. */
+    private static WriterLock writerLock;
+    /** True iff flush only marks the end of a command, leaving its changes
+     *  in memory until the next checkpoint (see Script). */
+    private static boolean deferred;
+    /** When deferred, the references and staging area as the last command
+     *  to finish left them, restored when a command fails, or null if they
+     *  are to be read from REFS_FILE. */
+    private static Refs committedRefs;
+    /** When deferred, the value of refsChanged after the last command to
+     *  finish. */
+    private static boolean committedRefsChanged;
 
     /* TODO: fill in the rest of this class. */
+
+    /** Make DIR the working directory for the next command, discarding any
+     *  state loaded from, or not yet flushed to, the previous one, except
+     *  for cached commits. */
+    static void open(File dir) {
+        abort();
+        CWD = dir;
+        GITLET_DIR = join(CWD, ".gitlet");
+        if (OBJECTS != null) {
+            OBJECTS.close();
+        }
+        OBJECTS = new ObjectStore(GITLET_DIR);
+        REFS_FILE = join(GITLET_DIR, "refs");
+        LOCK_FILE = join(GITLET_DIR, "lock");
+        GRAPH_FILE = join(GITLET_DIR, "commit-graph");
+        INDEX_FILE = join(GITLET_DIR, "index");
+        MESSAGE_INDEX_FILE = join(GITLET_DIR, "message-index");
+        statCache = null;
+        commitGraph = null;
+        messageIndex = null;
+        refs = null;
+    }
+
+    /** Make flush keep each command's changes in memory, for the next
+     *  command to build on, if DEFER, so that a Script writes to disk only
+     *  at checkpoints; otherwise, checkpoint and have each command write
+     *  its changes when it finishes, as usual. */
+    static void setDeferred(boolean defer) {
+        if (!defer) {
+            checkpoint();
+        }
+        deferred = defer;
+    }
+
+    /** Write to disk all changes made by the commands that have finished
+     *  since the last checkpoint, as flush does for a single command, and
+     *  release the writer lock. */
+    static void checkpoint() {
+        boolean defer = deferred;
+        deferred = false;
+        try {
+            flush();
+        } finally {
+            deferred = defer;
+            committedRefs = null;
+            committedRefsChanged = false;
+        }
+    }
+
+    /** Store CONTENTS as a blob and return its id. */
+    static String writeBlob(byte[] contents) {
+        batch();
+        return OBJECTS.put(ObjectStore.BLOB, contents);
+    }
+
+    /** Store CONTENTS as a blob and return its id, storing it as a delta
+     *  against the blob PREVIOUS (a prior version of the same file, or
+     *  null) when that saves space. */
+    static String writeBlob(byte[] contents, String previous) {
+        batch();
+        return OBJECTS.putBlob(contents, previous);
+    }
+
+    /** Store COMMIT and return its id. */
+    static String writeCommit(Commit commit) {
+        batch();
+        long start = Trace.start();
+        byte[] encoded = commit.encode();
+        Trace.end(Trace.Phase.SERIALIZE, start, encoded.length);
+        String id = OBJECTS.put(ObjectStore.COMMIT, encoded);
+        COMMITS.put(id, commit);
+        commitGraph().add(id, commit, Repository::readCommit);
+        if (messageIndex().exists()) {
+            messageIndex().add(id, commit.getMessage());
+        }
+        return id;
+    }
+
+    /** Return the id of the split point of the commits with ids A and B: a
+     *  latest common ancestor, found from the commit graph without reading
+     *  any commits.  Returns null if they have no common ancestor. */
+    static String splitPoint(String a, String b) {
+        CommitGraph graph = commitGraph();
+        int base = graph.mergeBase(graphPosition(a), graphPosition(b));
+        return base == CommitGraph.NONE ? null : graph.id(base);
+    }
+
+    /** Return the ids of the commit with id ID and of its first-parent
+     *  ancestors, newest first, in the order that log displays them. */
+    static List<String> history(String id) {
+        return commitGraph().firstParentChain(graphPosition(id));
+    }
+
+    /** Return the position of the commit with id ID in the commit graph,
+     *  adding it (and any missing ancestors) if it is absent. */
+    private static int graphPosition(String id) {
+        CommitGraph graph = commitGraph();
+        int k = graph.position(id);
+        if (k == CommitGraph.NONE) {
+            k = graph.add(id, readCommit(id), Repository::readCommit);
+        }
+        return k;
+    }
+
+    /** Return the commit graph, loading it on first use. */
+    private static CommitGraph commitGraph() {
+        if (commitGraph == null) {
+            commitGraph = new CommitGraph(GRAPH_FILE);
+        }
+        return commitGraph;
+    }
+
+    /** Return the message index, opening it on first use. */
+    private static MessageIndex messageIndex() {
+        if (messageIndex == null) {
+            messageIndex = new MessageIndex(MESSAGE_INDEX_FILE);
+        }
+        return messageIndex;
+    }
+
+    /** Print every commit ever made, in no particular order (the
+     *  global-log command).  Commits are visited straight from the object
+     *  store, and each is decoded, printed and dropped in turn, bypassing
+     *  the commit cache, so that memory use does not grow with the size of
+     *  the history; output is buffered in large blocks. */
+    public static void globalLog() {
+        checkInitialized();
+        PrintStream out = bufferedOutput();
+        OBJECTS.forEachId(ObjectStore.COMMIT,
+                          id -> printCommit(out, id, loadCommit(id)));
+        out.flush();
+    }
+
+    /** Print the ids of all commits with message MESSAGE, one per line
+     *  (the find command).  The candidates come from the message index,
+     *  and only they are read.  If there is no index yet, every commit is
+     *  read, as for global-log, and the index is built on the way unless
+     *  another command holds the writer lock. */
+    public static void find(String message) {
+        checkInitialized();
+        PrintStream out = bufferedOutput();
+        int[] found = { 0 };
+        if (messageIndex().exists()) {
+            for (String id : messageIndex().lookup(message)) {
+                if (readCommit(id).getMessage().equals(message)) {
+                    out.println(id);
+                    found[0] += 1;
+                }
+            }
+        } else {
+            BiConsumer<String, Commit> visitor = (id, commit) -> {
+                if (commit.getMessage().equals(message)) {
+                    out.println(id);
+                    found[0] += 1;
+                }
+            };
+            WriterLock lock = writerLock != null ? null
+                : WriterLock.tryAcquire(LOCK_FILE);
+            if (writerLock == null && lock == null) {
+                OBJECTS.forEachId(ObjectStore.COMMIT,
+                                  id -> visitor.accept(id, loadCommit(id)));
+            } else {
+                try {
+                    buildMessageIndex(visitor);
+                } finally {
+                    if (lock != null) {
+                        lock.release();
+                    }
+                }
+            }
+        }
+        out.flush();
+        if (found[0] == 0) {
+            throw error("Found no commit with that message.");
+        }
+    }
+
+    /** Number of commits added to a message index being built between
+     *  writes to its file. */
+    private static final int INDEX_CHUNK = 1 << 14;
+
+    /** Build the message index from every commit in the repository,
+     *  passing each commit and its id to VISITOR as it is read.  The index
+     *  is written in chunks to a temporary file, which replaces the index
+     *  only when complete. */
+    private static void buildMessageIndex(BiConsumer<String, Commit> visitor) {
+        File tmp = join(GITLET_DIR, "message-index.tmp");
+        tmp.delete();
+        MessageIndex index = new MessageIndex(tmp);
+        index.create();
+        int[] n = { 0 };
+        OBJECTS.forEachId(ObjectStore.COMMIT, id -> {
+            Commit commit = loadCommit(id);
+            index.add(id, commit.getMessage());
+            visitor.accept(id, commit);
+            n[0] += 1;
+            if (n[0] % INDEX_CHUNK == 0) {
+                index.save();
+            }
+        });
+        index.save();
+        WriteBatch.rename(tmp, MESSAGE_INDEX_FILE);
+        messageIndex = null;
+    }
+
+    /** Print the commit COMMIT, whose id is ID, on OUT as log does. */
+    static void printCommit(PrintStream out, String id, Commit commit) {
+        out.println("===");
+        out.println("commit " + id);
+        List<String> parents = commit.getParents();
+        if (parents.size() > 1) {
+            out.printf("Merge: %.7s %.7s%n", parents.get(0), parents.get(1));
+        }
+        out.printf("Date: %1$ta %1$tb %1$te %1$tT %1$tY %1$tz%n",
+                   commit.getTimestamp());
+        out.println(commit.getMessage());
+        out.println();
+    }
+
+    /** Return a stream writing to the standard output through a large
+     *  buffer, which the caller must flush. */
+    private static PrintStream bufferedOutput() {
+        return new PrintStream(new BufferedOutputStream(System.out, 1 << 16),
+                               false);
+    }
+
+    /** Return the commit with id ID.  Commits are cached, so repeatedly
+     *  reading the same commit during a command costs one disk read. */
+    static Commit readCommit(String id) {
+        return COMMITS.get(id, Repository::loadCommit);
+    }
+
+    /** Return the full id of the commit whose id is, or begins with,
+     *  PREFIX, as accepted by checkout and reset.  Exits with an error if
+     *  there is no such commit or if PREFIX is ambiguous. */
+    static String resolveCommitId(String prefix) {
+        List<String> ids = OBJECTS.findByPrefix(prefix.toLowerCase(),
+                                                ObjectStore.COMMIT, 2);
+        if (ids.isEmpty()) {
+            throw error("No commit with that id exists.");
+        } else if (ids.size() > 1) {
+            throw error("Commit id %s is ambiguous.", prefix);
+        }
+        return ids.get(0);
+    }
+
+    /** Return the commit with id ID, read from the object store. */
+    private static Commit loadCommit(String id) {
+        byte[] data = OBJECTS.get(id);
+        if (data == null || OBJECTS.typeOf(id) != ObjectStore.COMMIT) {
+            throw error("No commit with that id exists.");
+        }
+        long start = Trace.start();
+        Commit commit = Commit.decode(data);
+        Trace.end(Trace.Phase.SERIALIZE, start, data.length);
+        return commit;
+    }
+
+    /** Return the staging area, which is empty if none has been saved. */
+    static StagingArea readStagingArea() {
+        byte[] data = refs().staging();
+        long start = Trace.start();
+        StagingArea stage = StagingArea.decode(data);
+        Trace.end(Trace.Phase.SERIALIZE, start, data.length);
+        return stage;
+    }
+
+    /** Save STAGE as the staging area.  Like a reference, it is updated
+     *  only once the objects written by this command are durable. */
+    static void writeStagingArea(StagingArea stage) {
+        long start = Trace.start();
+        byte[] encoded = stage.encode();
+        Trace.end(Trace.Phase.SERIALIZE, start, encoded.length);
+        changeRefs().setStaging(encoded);
+    }
+
+    /** Return the id of the head commit of branch NAME, or null if there is
+     *  no such branch. */
+    static String readBranch(String name) {
+        return refs().branch(name);
+    }
+
+    /** Make ID the head commit of branch NAME.  The change becomes visible
+     *  when this command flushes, after the objects it refers to are safely
+     *  on disk. */
+    static void writeBranch(String name, String id) {
+        changeRefs().setBranch(name, id);
+    }
+
+    /** Return the name of the current branch. */
+    static String currentBranch() {
+        return refs().head();
+    }
+
+    /** Make NAME the current branch when this command flushes. */
+    static void setCurrentBranch(String name) {
+        changeRefs().setHead(name);
+    }
+
+    /** Return the snapshot of the references and staging area (see Refs)
+     *  as this command sees them, reading it on first use.  A repository
+     *  with no snapshot yet has an empty one. */
+    private static Refs refs() {
+        if (refs == null) {
+            refs = Refs.read(REFS_FILE);
+        }
+        if (refs == null) {
+            refs = new Refs();
+        }
+        return refs;
+    }
+
+    /** Return the snapshot of references, to be changed by the caller and
+     *  written when this command flushes.  Takes the writer lock first. */
+    private static Refs changeRefs() {
+        batch();
+        refsChanged = true;
+        return refs();
+    }
+
+    /** Take the writer lock (see WriterLock), if this command does not
+     *  hold it already, waiting for any other writer to finish.  Commands
+     *  that change the repository call this before reading anything they
+     *  will base their changes on; Main does so for every such command.
+     *  Throws a GitletException if the references read earlier in this
+     *  command have since been replaced by another writer.  Does nothing
+     *  if there is no repository yet. */
+    static void lockForWriting() {
+        if (writerLock != null || !GITLET_DIR.isDirectory()) {
+            return;
+        }
+        writerLock = WriterLock.acquire(LOCK_FILE);
+        OBJECTS.setExclusive(true);
+        if (refs != null) {
+            Refs latest = Refs.read(REFS_FILE);
+            if (latest != null
+                && latest.generation() != refs.generation()) {
+                throw error("The repository was changed by another command;"
+                            + " try again.");
+            }
+        }
+    }
+
+    /** Release the writer lock if this command holds it. */
+    private static void unlock() {
+        if (writerLock != null) {
+            writerLock.release();
+            writerLock = null;
+            OBJECTS.setExclusive(false);
+        }
+    }
+
+    /** Return the batch collecting this command's writes, starting it, and
+     *  taking the writer lock, if necessary. */
+    private static WriteBatch batch() {
+        if (batch == null) {
+            lockForWriting();
+            batch = new WriteBatch();
+            OBJECTS.setBatch(batch);
+        }
+        return batch;
+    }
+
+    /** Discard all writes made by this command that have not yet been
+     *  flushed, as after an error, and release the writer lock.  When
+     *  deferred, only this command's changes to the references and staging
+     *  area are undone, and those of earlier commands remain pending; any
+     *  objects it wrote remain too, unreferenced, so that the commit graph
+     *  and message index, which it may have extended, stay consistent with
+     *  the store. */
+    static void abort() {
+        if (deferred) {
+            refs = committedRefs == null ? null : committedRefs.copy();
+            refsChanged = committedRefsChanged;
+            return;
+        }
+        if (batch != null) {
+            batch.abort();
+            OBJECTS.setBatch(null);
+            batch = null;
+        }
+        refsChanged = false;
+        unlock();
+    }
+
+    /** Store the contents of FILE as a blob, possibly as a delta against
+     *  the blob PREVIOUS, and return its id.  Unlike writeBlob, this does
+     *  not read FILE into memory unless it must be delta-compressed.  This
+     *  is the storage step of the add command. */
+    static String writeBlob(File file, String previous) {
+        batch();
+        return OBJECTS.putFile(file, previous);
+    }
+
+    /** Return the id the working file named NAME would have as a blob, or
+     *  null if there is no such file.  The id is taken from the index when
+     *  the file's size, modification time and inode are unchanged since it
+     *  was last hashed, and otherwise is computed in constant memory.  This
+     *  is how add, status and commit detect changed files. */
+    static String blobId(String name) {
+        return statCache().blobId(name, join(CWD, name));
+    }
+
+    /** Return a map from the name of each plain file in the CWD to its blob
+     *  id, in order of name.  Files are statted and, where necessary,
+     *  hashed in parallel (see TreeScanner).  This is the working-tree
+     *  scan for add and status.  Records in the stat cache of files that
+     *  are no longer in the CWD are dropped, so that the index does not
+     *  grow with every file ever hashed. */
+    static TreeMap<String, String> workingFiles() {
+        long start = Trace.start();
+        TreeMap<String, String> files = new TreeScanner().scan(CWD,
+                                                               statCache());
+        statCache().retain(files::containsKey);
+        Trace.end(Trace.Phase.SCAN, start, 0);
+        return files;
+    }
+
+    /** Return the stat cache, loading it on first use. */
+    private static StatCache statCache() {
+        if (statCache == null) {
+            statCache = new StatCache(INDEX_FILE);
+        }
+        return statCache;
+    }
+
+    /** Write any state held in memory by this command back to .gitlet:
+     *  first the objects it wrote, all forced to disk together, then the
+     *  new snapshot of references and staging area, and last the derived
+     *  commit graph, message index and stat cache; then release the writer
+     *  lock.  A command that does not hold the lock saves the commit graph
+     *  and message index only if it can take the lock without waiting.
+     *  When deferred, only notes that the command has finished. */
+    static void flush() {
+        if (deferred) {
+            committedRefs = refs == null ? null : refs.copy();
+            committedRefsChanged = refsChanged;
+            return;
+        }
+        long start = Trace.start();
+        if (refsChanged) {
+            batch.writeLast(REFS_FILE, refs.encode());
+            refsChanged = false;
+            refs = null;
+        }
+        if (batch != null) {
+            batch.commit();
+            OBJECTS.setBatch(null);
+            batch = null;
+        }
+        if (commitGraph != null || messageIndex != null) {
+            WriterLock lock = writerLock != null || !GITLET_DIR.isDirectory()
+                ? null : WriterLock.tryAcquire(LOCK_FILE);
+            if (writerLock != null || lock != null) {
+                if (commitGraph != null) {
+                    commitGraph.save();
+                }
+                if (messageIndex != null) {
+                    messageIndex.save();
+                }
+            }
+            if (lock != null) {
+                lock.release();
+            }
+        }
+        if (statCache != null && GITLET_DIR.isDirectory()) {
+            statCache.save();
+        }
+        unlock();
+        Trace.end(Trace.Phase.FLUSH, start, 0);
+        if (Boolean.getBoolean(DEBUG_PROPERTY)) {
+            System.err.println(COMMITS.stats());
+        }
+    }
+
+    /** Return the number of commit lookups answered from the cache, over
+     *  the life of this process. */
+    static long commitCacheHits() {
+        return COMMITS.hits();
+    }
+
+    /** Return the number of commit lookups that read the commit, over the
+     *  life of this process. */
+    static long commitCacheMisses() {
+        return COMMITS.misses();
+    }
+
+    /** Return the number of working files this command found unchanged in
+     *  the stat cache. */
+    static int statCacheHits() {
+        return statCache == null ? 0 : statCache.hits();
+    }
+
+    /** Return the number of working files this command had to hash. */
+    static int statCacheMisses() {
+        return statCache == null ? 0 : statCache.misses();
+    }
+
+    /** Return the contents of the blob with id ID. */
+    static byte[] readBlob(String id) {
+        byte[] contents = OBJECTS.get(id);
+        if (contents == null) {
+            throw error("No blob with that id exists.");
+        }
+        return contents;
+    }
+
+    /** Replace the contents of FILE with those of the blob with id ID,
+     *  as for checkout and reset.  The contents are streamed from the
+     *  object store rather than read into memory. */
+    static void checkoutBlob(String id, File file) {
+        if (!OBJECTS.copyTo(id, file)) {
+            throw error("No blob with that id exists.");
+        }
+    }
+
+    /** Change the working files tracked by the commit SOURCE into those
+     *  tracked by the commit TARGET: the working-tree step of checkout of
+     *  a branch and of reset.  Only files that differ between the two
+     *  commits are touched: those only in TARGET or with different
+     *  contents are written, those only in SOURCE are deleted, and all
+     *  others, with their modification times, are left alone, so that
+     *  tools that watch mtimes see only real changes.  A file that already
+     *  holds its contents in TARGET is not rewritten either.  Nothing is
+     *  touched if an untracked working file would be overwritten. */
+    static void switchTree(String source, String target) {
+        Commit from = readCommit(source), to = readCommit(target);
+        TreeDiff diff = new TreeDiff(from.getBlobs(), to.getBlobs());
+        for (String name : diff.added()) {
+            if (join(CWD, name).isFile()
+                && !to.getBlobs().get(name).equals(blobId(name))) {
+                throw error("There is an untracked file in the way; "
+                            + "delete it, or add and commit it first.");
+            }
+        }
+        for (List<String> names : List.of(diff.added(), diff.changed())) {
+            for (String name : names) {
+                String id = to.getBlobs().get(name);
+                if (!id.equals(blobId(name))) {
+                    checkoutBlob(id, join(CWD, name));
+                    statCache().forget(name);
+                }
+            }
+        }
+        for (String name : diff.removed()) {
+            join(CWD, name).delete();
+            statCache().forget(name);
+        }
+    }
+
+    /** Return the renames and copies of files from the commit SOURCE to
+     *  the commit TARGET, found among the files that are only in one of
+     *  them by content similarity (see RenameDetector), for status and
+     *  merge. */
+    static List<RenameDetector.Match> renames(String source, String target) {
+        SortedMap<String, String> from = readCommit(source).getBlobs();
+        SortedMap<String, String> to = readCommit(target).getBlobs();
+        TreeDiff diff = new TreeDiff(from, to);
+        TreeMap<String, String> removed = new TreeMap<>();
+        for (String name : diff.removed()) {
+            removed.put(name, from.get(name));
+        }
+        TreeMap<String, String> added = new TreeMap<>();
+        for (String name : diff.added()) {
+            added.put(name, to.get(name));
+        }
+        return new RenameDetector(Repository::readBlob).detect(removed, added);
+    }
+
+    /** Return the three-way merge of the blobs OURS and THEIRS against
+     *  BASE, their version at the split point, for merge.  A null id
+     *  stands for a file absent from its commit, merged as if empty. */
+    static ThreeWayMerge mergeBlobs(String base, String ours, String theirs) {
+        byte[] empty = new byte[0];
+        return new ThreeWayMerge(base == null ? empty : readBlob(base),
+                                 ours == null ? empty : readBlob(ours),
+                                 theirs == null ? empty : readBlob(theirs));
+    }
+
+    /** Pack all loose objects of this repository (the gc command). */
+    public static void gc() {
+        checkInitialized();
+        if (deferred) {
+            checkpoint();
+        }
+        lockForWriting();
+        OBJECTS.gc();
+    }
+
+    /** Copy into this repository the commits of branch BRANCH of the
+     *  repository at LOCATION (see Remote) that it lacks, and make NAME a
+     *  branch whose head is that branch's head: the transfer done by fetch,
+     *  with NAME being REMOTE/BRANCH.  The objects are durable when this
+     *  returns; the branch, when this command flushes. */
+    static void fetch(String location, String branch, String name) {
+        checkInitialized();
+        lockForWriting();
+        Remote.Result result =
+            Remote.fetch(endpoint(), refs().branches().values(), location,
+                         branch, CWD);
+        writeBranch(name, result.tip);
+    }
+
+    /** Append the commits of the current branch that the repository at
+     *  LOCATION lacks to its branch BRANCH (the transfer done by push). */
+    static void push(String location, String branch) {
+        checkInitialized();
+        Remote.push(endpoint(), readBranch(currentBranch()), location, branch,
+                    CWD);
+    }
+
+    /** Return this repository as an end of a transfer. */
+    private static Remote.Endpoint endpoint() {
+        return new Remote.Endpoint(OBJECTS, commitGraph(),
+                                   Repository::readCommit);
+    }
+
+    /** Exit with an error unless the CWD holds a .gitlet directory. */
+    static void checkInitialized() {
+        if (!GITLET_DIR.isDirectory()) {
+            throw error("Not in an initialized Gitlet directory.");
+        }
+    }
 }
@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A sequence of Gitlet commands run in one process by the batch command,
+ *      java gitlet.Main batch [FILE]
+ *  which reads them from FILE, or else from the standard input, one per
+ *  line, so that a long script pays for starting the JVM and loading the
+ *  repository once.  The words of a line are separated by whitespace;
+ *  quotes group words containing whitespace, as in
+ *      commit "a two-word message"
+ *  and a backslash quotes the next character.  Blank lines and lines
+ *  beginning with # are ignored, and a line "checkpoint" writes to disk
+ *  all changes made so far.
+ *
+ *  Each command runs through Main.run, as if invoked separately, but with
+ *  flushing deferred (see Repository.setDeferred): the references, staging
+ *  area, commit graph, message index and stat cache stay in memory, and
+ *  all objects written go into one WriteBatch, from which later commands
+ *  read them, until a checkpoint or the end of the script.  Meanwhile, the
+ *  script holds the writer lock from its first change, so other readers
+ *  see the repository as of the last checkpoint.  Each command prints
+ *  what it would print if run separately; in particular, one that fails
+ *  reports its error and leaves the references and staging area as it
+ *  found them.  The standard output is flushed after every command, so
+ *  that a program feeding commands one at a time can read each result.
+ */
+class Script {
+
+    /** The line that makes all changes so far durable. */
+    static final String CHECKPOINT = "checkpoint";
+
+    /** Run the commands in FILE, or on the standard input if FILE is
+     *  null. */
+    static void run(File file) {
+        try (BufferedReader in = file == null
+                 ? new BufferedReader(new InputStreamReader(System.in,
+                                                            StandardCharsets
+                                                            .UTF_8))
+                 : Files.newBufferedReader(file.toPath())) {
+            run(in);
+        } catch (NoSuchFileException excp) {
+            throw Utils.error("File does not exist.");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Run the commands read from IN, checkpointing at the end. */
+    static void run(BufferedReader in) throws IOException {
+        Repository.setDeferred(true);
+        try {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                List<String> words = words(line);
+                if (words.isEmpty() || line.trim().startsWith("#")) {
+                    continue;
+                } else if (words.equals(List.of(CHECKPOINT))) {
+                    Repository.checkpoint();
+                } else if (words.get(0).equals("batch")) {
+                    Utils.message("Incorrect operands.");
+                } else {
+                    runCommand(words.toArray(new String[0]));
+                }
+                System.out.flush();
+            }
+        } finally {
+            Repository.setDeferred(false);
+        }
+    }
+
+    /** Run the command ARGS as Main.run does, except that an unexpected
+     *  exception, which would end a separate invocation, is reported on
+     *  the standard error and undoes only this command's changes. */
+    private static void runCommand(String[] args) {
+        try {
+            Main.run(args);
+        } catch (RuntimeException excp) {
+            Repository.abort();
+            excp.printStackTrace();
+        }
+    }
+
+    /** Return the words of LINE, as described above. */
+    static List<String> words(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                word = word == null ? new StringBuilder() : word;
+                i += 1;
+                word.append(line.charAt(i));
+            } else if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    result.add(word.toString());
+                    word = null;
+                }
+            } else {
+                word = word == null ? new StringBuilder() : word;
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (word != null) {
+            result.add(word.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,149 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/** Tests of batch scripts and deferred flushing. */
+public class ScriptTest {
+
+    @Test
+    public void wordsAreSplitAndQuoted() {
+        assertEquals(List.of("commit", "two words", "a \"b\"", "x y", ""),
+                     Script.words("  commit \"two words\"\t'a \"b\"' "
+                                  + "x\\ y \"\""));
+        assertTrue(Script.words("   ").isEmpty());
+    }
+
+    @Test
+    public void changesStayInMemoryUntilCheckpoint() throws IOException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        File gitlet = Utils.join(dir, ".gitlet");
+        gitlet.mkdir();
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Repository.open(dir);
+        try {
+            Repository.setDeferred(true);
+            Repository.lockForWriting();
+            String id = Repository.writeCommit(
+                new Commit("first", new Date(0), List.of(), Map.of()));
+            Repository.writeBranch("master", id);
+            Repository.setCurrentBranch("master");
+            Repository.flush();
+            assertFalse(Utils.join(gitlet, "refs").exists());
+            assertFalse(new ObjectStore(gitlet).contains(id));
+
+            Repository.writeBranch("master", Utils.sha1("failed"));
+            Repository.abort();
+            assertEquals(id, Repository.readBranch("master"));
+
+            System.setOut(new PrintStream(out, true));
+            Script.run(new BufferedReader(new StringReader(
+                "global-log\n# comment\n\nfind first\ncheckpoint\n"
+                + "find \"no such message\"\n")));
+            String printed = out.toString();
+            assertTrue(printed, printed.startsWith("===\ncommit " + id));
+            assertTrue(printed, printed.contains("\n" + id + "\n"));
+            assertTrue(printed,
+                       printed.endsWith("Found no commit with that message."
+                                        + System.lineSeparator()));
+            Refs refs = Refs.read(Utils.join(gitlet, "refs"));
+            assertEquals("master", refs.head());
+            assertEquals(id, refs.branch("master"));
+            assertTrue(new ObjectStore(gitlet).contains(id));
+        } finally {
+            System.setOut(stdout);
+            Repository.setDeferred(false);
+            Repository.open(new File(System.getProperty("user.dir")));
+        }
+    }
+
+    /** Send the request consisting of the working directory DIR and
+     *  command ARGS to a Daemon over a fresh socket under DIR, and return
+     *  what the command printed on its standard output. */
+    private static String viaDaemon(File dir, String... args)
+        throws IOException {
+        Path socket = Utils.join(dir, "daemon.sock").toPath();
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            try (SocketChannel client = SocketChannel.open(address)) {
+                DataOutputStream out =
+                    new DataOutputStream(Channels.newOutputStream(client));
+                String[] request = new String[args.length + 1];
+                request[0] = dir.getPath();
+                System.arraycopy(args, 0, request, 1, args.length);
+                out.writeInt(request.length);
+                for (String arg : request) {
+                    byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                try (SocketChannel served = server.accept()) {
+                    Daemon.serve(served);
+                }
+                DataInputStream in =
+                    new DataInputStream(Channels.newInputStream(client));
+                ByteArrayOutputStream printed = new ByteArrayOutputStream();
+                for (int channel = in.readByte(); channel != Daemon.EXIT;
+                     channel = in.readByte()) {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    if (channel == Daemon.STDOUT) {
+                        printed.write(bytes);
+                    }
+                }
+                assertEquals(0, in.readInt());
+                return printed.toString(StandardCharsets.UTF_8);
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    @Test
+    public void daemonBatchesReadFilesFromTheClientsDirectory()
+        throws IOException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        Utils.join(dir, ".gitlet").mkdir();
+        try {
+            Repository.open(dir);
+            Repository.lockForWriting();
+            String id = Repository.writeCommit(
+                new Commit("first", new Date(0), List.of(), Map.of()));
+            Repository.writeBranch("master", id);
+            Repository.setCurrentBranch("master");
+            Repository.flush();
+            Utils.writeContents(Utils.join(dir, "script"), "find first\n");
+
+            assertEquals(id + System.lineSeparator(),
+                         viaDaemon(dir, "batch", "script"));
+            assertEquals("The daemon cannot read commands from standard "
+                         + "input." + System.lineSeparator(),
+                         viaDaemon(dir, "batch"));
+        } finally {
+            Repository.open(new File(System.getProperty("user.dir")));
+        }
+    }
+}
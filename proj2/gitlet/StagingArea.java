@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The files staged for the next commit: a map from each file name staged
+ *  for addition to its blob id, and the set of names staged for removal.
+ *  It is kept in .gitlet/staging in the binary form described in Codec.
+ */
+class StagingArea {
+
+    /** Magic number beginning an encoded staging area ("GS"). */
+    static final int MAGIC = 0x4753;
+    /** Current version of the encoding. */
+    static final int VERSION = 1;
+
+    /** Stage NAME, whose contents have blob id ID, for addition, and
+     *  unstage any removal of NAME. */
+    void add(String name, String id) {
+        removals.remove(name);
+        additions.put(name, id);
+    }
+
+    /** Stage NAME for removal, and unstage any addition of NAME. */
+    void remove(String name) {
+        additions.remove(name);
+        removals.add(name);
+    }
+
+    /** Unstage NAME entirely.  Returns true iff it was staged. */
+    boolean unstage(String name) {
+        return additions.remove(name) != null | removals.remove(name);
+    }
+
+    /** Unstage everything. */
+    void clear() {
+        additions.clear();
+        removals.clear();
+    }
+
+    /** Return true iff nothing is staged. */
+    boolean isEmpty() {
+        return additions.isEmpty() && removals.isEmpty();
+    }
+
+    /** Return the files staged for addition, mapped to their blob ids. */
+    Map<String, String> getAdditions() {
+        return Collections.unmodifiableMap(additions);
+    }
+
+    /** Return the names of the files staged for removal. */
+    Set<String> getRemovals() {
+        return Collections.unmodifiableSet(removals);
+    }
+
+    /** Return the encoding of this staging area. */
+    byte[] encode() {
+        Codec.Writer out = new Codec.Writer(MAGIC, VERSION);
+        out.varint(additions.size());
+        for (Map.Entry<String, String> e : additions.entrySet()) {
+            out.string(e.getKey()).id(e.getValue());
+        }
+        out.varint(removals.size());
+        for (String name : removals) {
+            out.string(name);
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the staging area encoded in DATA.  Throws
+     *  IllegalArgumentException if DATA is not a valid encoding. */
+    static StagingArea decode(byte[] data) {
+        Codec.Reader in = new Codec.Reader(data, MAGIC);
+        if (in.version() != VERSION) {
+            throw new IllegalArgumentException("unknown staging version");
+        }
+        StagingArea result = new StagingArea();
+        for (int n = in.count(); n > 0; n -= 1) {
+            String name = in.string();
+            result.additions.put(name, in.id());
+        }
+        for (int n = in.count(); n > 0; n -= 1) {
+            result.removals.add(in.string());
+        }
+        in.end();
+        return result;
+    }
+
+    /** Files staged for addition, mapped to their blob ids. */
+    private final TreeMap<String, String> additions = new TreeMap<>();
+    /** Files staged for removal. */
+    private final TreeSet<String> removals = new TreeSet<>();
+}
@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static gitlet.Utils.*;
+
+/** A persistent record, kept in .gitlet/index, of the size, modification
+ *  time, file key (device and inode) and blob id of each working file that
+ *  has been hashed.  When a file's current attributes match its record,
+ *  its blob id is taken from the record without reading the file, so that
+ *  status and commit need only stat unchanged files.
+ *
+ *  As in Git, a file modified within the timestamp granularity of the
+ *  moment the index was last written cannot be told apart from its
+ *  recorded state by its attributes.  Such "racily clean" records are
+ *  never trusted; the file is rehashed until a later save of the index.
+ *
+ *  Lookups may be made concurrently from several threads (see
+ *  TreeScanner); saving must not overlap with them.
+ */
+class StatCache {
+
+    /** Magic number beginning the index file. */
+    private static final int MAGIC = 0x47494458;
+    /** Current version of the index format. */
+    private static final int VERSION = 1;
+
+    /** A cache persisted in FILE, loading its current contents if FILE
+     *  exists. */
+    StatCache(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        _savedAt = TimeUnit.MILLISECONDS.toNanos(file.lastModified());
+        try (DataInputStream in =
+                 new DataInputStream(new BufferedInputStream(
+                     Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                int key = in.readInt();
+                byte[] id = new byte[UID_LENGTH / 2];
+                in.readFully(id);
+                _entries.put(path, new Entry(size, mtime, key, toHex(id)));
+            }
+        } catch (IOException excp) {
+            _entries.clear();
+        }
+    }
+
+    /** Return the blob id of the working file FILE, recorded under PATH.
+     *  Uses the recorded id if FILE's attributes are unchanged, and
+     *  otherwise hashes FILE and records the result.  Returns null if FILE
+     *  is not a normal file. */
+    String blobId(String path, File file) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(),
+                                         BasicFileAttributes.class);
+        } catch (IOException excp) {
+            forget(path);
+            return null;
+        }
+        if (!attrs.isRegularFile()) {
+            forget(path);
+            return null;
+        }
+        long size = attrs.size();
+        long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        int key = attrs.fileKey() == null ? 0 : attrs.fileKey().hashCode();
+        Entry e = _entries.get(path);
+        if (e != null && e.size == size && e.mtime == mtime && e.key == key
+            && mtime < _savedAt) {
+            _hits.incrementAndGet();
+            return e.id;
+        }
+        _misses.incrementAndGet();
+        e = new Entry(size, mtime, key, sha1(file));
+        _entries.put(path, e);
+        _dirty = true;
+        return e.id;
+    }
+
+    /** Remove any record for PATH. */
+    void forget(String path) {
+        if (_entries.remove(path) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Remove the records of all paths for which KEEP is false. */
+    void retain(Predicate<String> keep) {
+        Iterator<Map.Entry<String, Entry>> iter =
+            _entries.entrySet().iterator();
+        while (iter.hasNext()) {
+            if (!keep.test(iter.next().getKey())) {
+                iter.remove();
+                _dirty = true;
+            }
+        }
+    }
+
+    /** Return the number of lookups answered without hashing. */
+    int hits() {
+        return _hits.get();
+    }
+
+    /** Return the number of lookups that had to hash the file. */
+    int misses() {
+        return _misses.get();
+    }
+
+    /** Write this cache back to its file if it has changed. */
+    void save() {
+        if (!_dirty) {
+            return;
+        }
+        try {
+            File tmp = File.createTempFile("index", ".tmp",
+                                           _file.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(
+                         Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_entries.size());
+                for (Map.Entry<String, Entry> me : _entries.entrySet()) {
+                    Entry e = me.getValue();
+                    out.writeUTF(me.getKey());
+                    out.writeLong(e.size);
+                    out.writeLong(e.mtime);
+                    out.writeInt(e.key);
+                    out.write(fromHex(e.id));
+                }
+            }
+            Files.move(tmp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            _savedAt = TimeUnit.MILLISECONDS.toNanos(_file.lastModified());
+            _dirty = false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The recorded state of one working file. */
+    private static class Entry {
+        /** A record of a file of SIZE bytes, modified at MTIME, with file
+         *  key hash KEY and contents whose blob id is ID. */
+        Entry(long size, long mtime, int key, String id) {
+            this.size = size;
+            this.mtime = mtime;
+            this.key = key;
+            this.id = id;
+        }
+
+        /** Size in bytes. */
+        final long size;
+        /** Modification time in nanoseconds since the epoch. */
+        final long mtime;
+        /** Hash of the file key (device and inode), or 0 if unavailable. */
+        final int key;
+        /** Blob id of the contents. */
+        final String id;
+    }
+
+    /** The index file. */
+    private final File _file;
+    /** Records by working-directory path, in path order. */
+    private final Map<String, Entry> _entries =
+        new ConcurrentSkipListMap<>();
+    /** Time at which the index file was last written, in nanoseconds, or
+     *  0 if it has not been. */
+    private long _savedAt;
+    /** True iff _entries differs from the index file. */
+    private volatile boolean _dirty;
+    /** Number of lookups answered from the records. */
+    private final AtomicInteger _hits = new AtomicInteger();
+    /** Number of lookups that hashed the file. */
+    private final AtomicInteger _misses = new AtomicInteger();
+}
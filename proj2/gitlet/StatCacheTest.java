@@ -0,0 +1,82 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/** Tests of the stat cache kept in .gitlet/index. */
+public class StatCacheTest {
+
+    @Test
+    public void unchangedFilesAreNotRehashed() throws IOException,
+                                                      InterruptedException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        File index = Utils.join(dir, "index");
+        File a = Utils.join(dir, "a.txt");
+        File b = Utils.join(dir, "b.txt");
+        Utils.writeContents(a, "alpha");
+        Utils.writeContents(b, "beta");
+        Thread.sleep(20);
+
+        StatCache cache = new StatCache(index);
+        assertEquals(Utils.sha1("alpha"), cache.blobId("a.txt", a));
+        assertEquals(Utils.sha1("beta"), cache.blobId("b.txt", b));
+        assertNull(cache.blobId("c.txt", Utils.join(dir, "c.txt")));
+        assertEquals(0, cache.hits());
+        cache.save();
+        Thread.sleep(20);
+
+        cache = new StatCache(index);
+        assertEquals(Utils.sha1("alpha"), cache.blobId("a.txt", a));
+        assertEquals(1, cache.hits());
+        Utils.writeContents(b, "gamma!");
+        assertEquals(Utils.sha1("gamma!"), cache.blobId("b.txt", b));
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void raceWithSaveIsDetected() throws IOException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        File index = Utils.join(dir, "index");
+        File a = Utils.join(dir, "a.txt");
+        Utils.writeContents(a, "one");
+        StatCache cache = new StatCache(index);
+        cache.blobId("a.txt", a);
+        cache.save();
+        Utils.writeContents(a, "two");
+        a.setLastModified(index.lastModified());
+        cache = new StatCache(index);
+        assertEquals(Utils.sha1("two"), cache.blobId("a.txt", a));
+    }
+
+    @Test
+    public void recordsOfRemovedFilesAreDropped() throws IOException,
+                                                        InterruptedException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        File index = Utils.join(dir, "index");
+        File a = Utils.join(dir, "a.txt");
+        File b = Utils.join(dir, "b.txt");
+        Utils.writeContents(a, "alpha");
+        Utils.writeContents(b, "beta");
+        Thread.sleep(20);
+
+        StatCache cache = new StatCache(index);
+        cache.blobId("a.txt", a);
+        cache.blobId("b.txt", b);
+        cache.save();
+        long full = index.length();
+        Thread.sleep(20);
+
+        cache = new StatCache(index);
+        cache.retain("a.txt"::equals);
+        cache.save();
+        assertTrue(index.length() < full);
+        cache = new StatCache(index);
+        cache.blobId("a.txt", a);
+        cache.blobId("b.txt", b);
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+}
@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** A line-based three-way merge of two versions of a file, OURS (in the
+ *  current branch) and THEIRS (in the given branch), against BASE, their
+ *  version at the split point.  Each version is compared with BASE by
+ *  LineDiff, and the two lists of hunks are swept together in order of
+ *  position in BASE.  A stretch of BASE changed by only one side takes
+ *  that side's lines; a stretch changed identically by both takes them
+ *  once; and a stretch whose changes overlap, or touch, is a conflict,
+ *  written as
+ *      <<<<<<< HEAD
+ *      OUR LINES
+ *      =======
+ *      THEIR LINES
+ *      >>>>>>>
+ *  Everything outside conflicts is merged cleanly, so only the lines
+ *  that both sides changed need resolving by hand.
+ */
+class ThreeWayMerge {
+
+    /** Marker beginning a conflict. */
+    static final String OURS_MARKER = "<<<<<<< HEAD\n";
+    /** Marker separating the two sides of a conflict. */
+    static final String SEPARATOR = "=======\n";
+    /** Marker ending a conflict. */
+    static final String THEIRS_MARKER = ">>>>>>>\n";
+
+    /** The merge of OURS and THEIRS against BASE.  Lines are sequences of
+     *  bytes ending in a newline or at the end of a file, and are compared
+     *  as bytes. */
+    ThreeWayMerge(byte[] base, byte[] ours, byte[] theirs) {
+        HashMap<Line, Integer> ids = new HashMap<>();
+        Line[] b = lines(base), o = lines(ours), t = lines(theirs);
+        int[] bIds = intern(b, ids), oIds = intern(o, ids);
+        int[] tIds = intern(t, ids);
+        List<LineDiff.Hunk> oHunks = LineDiff.diff(bIds, oIds);
+        List<LineDiff.Hunk> tHunks = LineDiff.diff(bIds, tIds);
+
+        int pos = 0, p = 0, q = 0;
+        while (p < oHunks.size() || q < tHunks.size()) {
+            boolean oursFirst = q == tHunks.size()
+                || (p < oHunks.size()
+                    && oHunks.get(p).aStart <= tHunks.get(q).aStart);
+            LineDiff.Hunk first = oursFirst ? oHunks.get(p) : tHunks.get(q);
+            int start = first.aStart, end = first.aEnd;
+            int p0 = p, q0 = q;
+            if (oursFirst) {
+                p += 1;
+            } else {
+                q += 1;
+            }
+            while (true) {
+                if (p < oHunks.size() && oHunks.get(p).aStart <= end) {
+                    end = Math.max(end, oHunks.get(p).aEnd);
+                    p += 1;
+                } else if (q < tHunks.size()
+                           && tHunks.get(q).aStart <= end) {
+                    end = Math.max(end, tHunks.get(q).aEnd);
+                    q += 1;
+                } else {
+                    break;
+                }
+            }
+            copy(b, pos, start);
+            int[] oRange = range(oHunks, p0, p, start, end);
+            int[] tRange = range(tHunks, q0, q, start, end);
+            if (p == p0) {
+                copy(t, tRange[0], tRange[1]);
+            } else if (q == q0 || same(oIds, oRange, tIds, tRange)) {
+                copy(o, oRange[0], oRange[1]);
+            } else {
+                conflict(o, oRange, t, tRange);
+            }
+            pos = end;
+        }
+        copy(b, pos, b.length);
+    }
+
+    /** Return the merged contents. */
+    byte[] contents() {
+        return _out.toByteArray();
+    }
+
+    /** Return the number of conflicts in the merged contents. */
+    int conflicts() {
+        return _conflicts;
+    }
+
+    /** Return the range of lines of one side corresponding to lines
+     *  [START, END) of the base, given that HUNKS[FROM..TO-1] are that
+     *  side's hunks within it.  Lines of the base outside the hunks are
+     *  unchanged, so the range begins and ends the same distance from
+     *  the first and last hunk as the base's does. */
+    private static int[] range(List<LineDiff.Hunk> hunks, int from, int to,
+                               int start, int end) {
+        if (from == to) {
+            return new int[] { start, end };
+        }
+        LineDiff.Hunk first = hunks.get(from), last = hunks.get(to - 1);
+        return new int[] { first.bStart - (first.aStart - start),
+                           last.bEnd + (end - last.aEnd) };
+    }
+
+    /** Return true iff lines R1 of X are the same as lines R2 of Y. */
+    private static boolean same(int[] x, int[] r1, int[] y, int[] r2) {
+        return Arrays.equals(x, r1[0], r1[1], y, r2[0], r2[1]);
+    }
+
+    /** Write a conflict between lines R1 of OURS and lines R2 of
+     *  THEIRS. */
+    private void conflict(Line[] ours, int[] r1, Line[] theirs, int[] r2) {
+        _conflicts += 1;
+        endLine();
+        _out.writeBytes(OURS_MARKER.getBytes());
+        copy(ours, r1[0], r1[1]);
+        endLine();
+        _out.writeBytes(SEPARATOR.getBytes());
+        copy(theirs, r2[0], r2[1]);
+        endLine();
+        _out.writeBytes(THEIRS_MARKER.getBytes());
+    }
+
+    /** Write LINES[FROM..TO-1]. */
+    private void copy(Line[] lines, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            Line line = lines[i];
+            _out.write(line.data, line.start, line.length);
+            _endsLine = line.data[line.start + line.length - 1] == '\n';
+        }
+    }
+
+    /** Write a newline unless the output already ends with one, so that a
+     *  marker following a last line that lacks its newline is on a line
+     *  of its own. */
+    private void endLine() {
+        if (!_endsLine) {
+            _out.write('\n');
+            _endsLine = true;
+        }
+    }
+
+    /** Return the lines of DATA. */
+    private static Line[] lines(byte[] data) {
+        List<Line> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < data.length; i += 1) {
+            if (data[i] == '\n') {
+                result.add(new Line(data, start, i + 1 - start));
+                start = i + 1;
+            }
+        }
+        if (start < data.length) {
+            result.add(new Line(data, start, data.length - start));
+        }
+        return result.toArray(new Line[0]);
+    }
+
+    /** Return the numbers of LINES, numbering new lines in IDS. */
+    private static int[] intern(Line[] lines, HashMap<Line, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            Integer id = ids.putIfAbsent(lines[i], ids.size());
+            result[i] = id == null ? ids.size() - 1 : id;
+        }
+        return result;
+    }
+
+    /** A line: LENGTH bytes of DATA starting at START. */
+    private static class Line {
+
+        /** The line of LENGTH bytes at START in DATA. */
+        Line(byte[] data, int start, int length) {
+            this.data = data;
+            this.start = start;
+            this.length = length;
+            int h = 1;
+            for (int i = start; i < start + length; i += 1) {
+                h = 31 * h + data[i];
+            }
+            _hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return _hash == other._hash
+                && Arrays.equals(data, start, start + length, other.data,
+                                 other.start, other.start + other.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** Bytes holding the line. */
+        final byte[] data;
+        /** Position of the line in data. */
+        final int start;
+        /** Length of the line, including any newline. */
+        final int length;
+        /** Hash of the line's bytes. */
+        private final int _hash;
+    }
+
+    /** The merged contents. */
+    private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+    /** True iff the merged contents are empty or end with a newline. */
+    private boolean _endsLine = true;
+    /** Number of conflicts written. */
+    private int _conflicts;
+}
@@ -0,0 +1,42 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/** Tests of three-way merges of file contents. */
+public class ThreeWayMergeTest {
+
+    /** Return the merge of OURS and THEIRS against BASE. */
+    private static ThreeWayMerge merge(String base, String ours,
+                                       String theirs) {
+        return new ThreeWayMerge(base.getBytes(), ours.getBytes(),
+                                 theirs.getBytes());
+    }
+
+    @Test
+    public void separateEditsMergeCleanly() {
+        ThreeWayMerge m = merge("a\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n",
+                                "a\nb\nc\nd\nE\nf\n");
+        assertEquals(0, m.conflicts());
+        assertEquals("A\nb\nc\nd\nE\nf\n", new String(m.contents()));
+        m = merge("a\nb\n", "a\nb\n", "x\n");
+        assertEquals("x\n", new String(m.contents()));
+        m = merge("a\nb\nc\n", "a\nB\nc\n", "a\nB\nc\n");
+        assertEquals(0, m.conflicts());
+        assertEquals("a\nB\nc\n", new String(m.contents()));
+    }
+
+    @Test
+    public void overlappingEditsConflict() {
+        ThreeWayMerge m = merge("a\nb\nc\nd\ne\nf\ng\n",
+                                "a\nB\nc\nd\ne\nF\ng\n",
+                                "a\nb\nc\nd\nX\nY\ng\n");
+        assertEquals(1, m.conflicts());
+        assertEquals("a\nB\nc\nd\n<<<<<<< HEAD\ne\nF\n=======\nX\nY\n"
+                     + ">>>>>>>\ng\n", new String(m.contents()));
+        m = merge("", "ours", "theirs\n");
+        assertEquals(1, m.conflicts());
+        assertEquals("<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\n",
+                     new String(m.contents()));
+    }
+}
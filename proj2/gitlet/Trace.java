@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Per-phase timing of a Gitlet command, enabled by giving Main the option
+ *      --trace           print a report on the standard error,
+ *      --trace=json      print the report as one line of JSON instead, or
+ *      --trace=json:FILE append that line to FILE,
+ *  before the command name.  For each Phase, the report gives the time
+ *  spent in it, the bytes it processed, and the number of times it was
+ *  entered, along with the hits and misses of the commit cache and the
+ *  stat cache.  JSON lines from many runs (see tester.py --trace) can be
+ *  concatenated and aggregated with any JSON tool.
+ *
+ *  Instrumented code brackets a phase with
+ *      long start = Trace.start();
+ *      ...
+ *      Trace.end(Trace.Phase.HASH, start, BYTES);
+ *  which, when tracing is off, costs a test of a static flag.  Phases
+ *  measured on several threads at once (as by TreeScanner) report the sum
+ *  of their threads' times, which may exceed the command's elapsed time.
+ */
+class Trace {
+
+    /** The phases of a command that are timed. */
+    enum Phase {
+        /** Listing and statting the working tree. */
+        SCAN,
+        /** Computing SHA-1 ids of contents. */
+        HASH,
+        /** Reading stored objects. */
+        READ,
+        /** Writing (and compressing) objects. */
+        WRITE,
+        /** Encoding and decoding commits and the staging area. */
+        SERIALIZE,
+        /** Forcing written files to disk and installing them. */
+        FLUSH,
+        /** Writing to the standard output. */
+        OUTPUT;
+
+        /** Return the name of this phase in reports. */
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /** Start tracing the command named COMMAND as requested by OPTION,
+     *  "--trace" with an optional "=json" or "=json:FILE" suffix, and
+     *  clear the counts of any earlier command.  Throws a GitletException
+     *  for any other option. */
+    static void begin(String option, String command) {
+        String mode = option.equals("--trace") ? ""
+            : option.startsWith("--trace=") ? option.substring(8) : null;
+        if (mode == null || !(mode.isEmpty() || mode.equals("json")
+                              || mode.startsWith("json:"))) {
+            throw Utils.error("Incorrect operands.");
+        }
+        _json = !mode.isEmpty();
+        _file = mode.startsWith("json:") ? mode.substring(5) : null;
+        _command = command;
+        for (int k = 0; k < PHASES; k += 1) {
+            NANOS[k].set(0);
+            BYTES[k].set(0);
+            CALLS[k].set(0);
+        }
+        _commitHits = Repository.commitCacheHits();
+        _commitMisses = Repository.commitCacheMisses();
+        _began = System.nanoTime();
+        _enabled = true;
+    }
+
+    /** Return true iff a command is being traced. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Return the time at which a phase begins, or 0 if tracing is off. */
+    static long start() {
+        return _enabled ? System.nanoTime() : 0;
+    }
+
+    /** Record that PHASE, which began at START (from start()), has just
+     *  ended after processing BYTES bytes. */
+    static void end(Phase phase, long start, long bytes) {
+        if (_enabled) {
+            int k = phase.ordinal();
+            NANOS[k].addAndGet(System.nanoTime() - start);
+            BYTES[k].addAndGet(bytes);
+            CALLS[k].incrementAndGet();
+        }
+    }
+
+    /** Return OUT, wrapped, if tracing is on, so that what is written to it
+     *  is counted as OUTPUT. */
+    static OutputStream output(OutputStream out) {
+        if (!_enabled) {
+            return out;
+        }
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                long start = start();
+                out.write(b);
+                end(Phase.OUTPUT, start, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                long start = start();
+                out.write(b, off, len);
+                end(Phase.OUTPUT, start, len);
+            }
+        };
+    }
+
+    /** Stop tracing and report on the command, which exited with STATUS,
+     *  as requested by begin.  Does nothing if tracing is off. */
+    static void finish(int status) {
+        if (!_enabled) {
+            return;
+        }
+        _enabled = false;
+        long total = System.nanoTime() - _began;
+        long commitHits = Repository.commitCacheHits() - _commitHits;
+        long commitMisses = Repository.commitCacheMisses() - _commitMisses;
+        int statHits = Repository.statCacheHits();
+        int statMisses = Repository.statCacheMisses();
+        String report;
+        if (_json) {
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("{\"command\":\"%s\",\"status\":%d,"
+                                      + "\"nanos\":%d,\"phases\":{",
+                                      escape(_command), status, total));
+            for (Phase p : Phase.values()) {
+                int k = p.ordinal();
+                line.append(String.format("%s\"%s\":{\"nanos\":%d,"
+                                          + "\"bytes\":%d,\"calls\":%d}",
+                                          k == 0 ? "" : ",", p.label(),
+                                          NANOS[k].get(), BYTES[k].get(),
+                                          CALLS[k].get()));
+            }
+            line.append(String.format("},\"caches\":{\"commit\":{\"hits\":%d,"
+                                      + "\"misses\":%d},\"stat\":{\"hits\":%d,"
+                                      + "\"misses\":%d}}}%n", commitHits,
+                                      commitMisses, statHits, statMisses));
+            report = line.toString();
+        } else {
+            StringBuilder table = new StringBuilder();
+            table.append(String.format("trace: %s (status %d) %.3f ms%n",
+                                       _command, status, total / 1e6));
+            for (Phase p : Phase.values()) {
+                int k = p.ordinal();
+                if (CALLS[k].get() > 0) {
+                    table.append(String.format("  %-10s %10.3f ms %12d bytes "
+                                               + "%8d calls%n", p.label(),
+                                               NANOS[k].get() / 1e6,
+                                               BYTES[k].get(),
+                                               CALLS[k].get()));
+                }
+            }
+            table.append(String.format("  commit cache: %d hits, %d misses%n"
+                                       + "  stat cache: %d hits, %d hashed%n",
+                                       commitHits, commitMisses, statHits,
+                                       statMisses));
+            report = table.toString();
+        }
+        if (_file == null) {
+            System.err.print(report);
+            System.err.flush();
+            return;
+        }
+        try (PrintStream out =
+                 new PrintStream(new FileOutputStream(_file, true), false,
+                                 StandardCharsets.UTF_8)) {
+            out.print(report);
+        } catch (IOException excp) {
+            System.err.printf("trace: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Return S with the characters that JSON strings may not contain
+     *  escaped. */
+    private static String escape(String s) {
+        StringBuilder result = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Number of phases. */
+    private static final int PHASES = Phase.values().length;
+    /** Nanoseconds spent in each phase, by ordinal. */
+    private static final AtomicLong[] NANOS = counters();
+    /** Bytes processed by each phase, by ordinal. */
+    private static final AtomicLong[] BYTES = counters();
+    /** Number of times each phase was entered, by ordinal. */
+    private static final AtomicLong[] CALLS = counters();
+
+    /** Return a new array of zero counters, one per phase. */
+    private static AtomicLong[] counters() {
+        AtomicLong[] result = new AtomicLong[PHASES];
+        for (int k = 0; k < PHASES; k += 1) {
+            result[k] = new AtomicLong();
+        }
+        return result;
+    }
+
+    /** True iff a command is being traced. */
+    private static boolean _enabled;
+    /** True iff the report is JSON. */
+    private static boolean _json;
+    /** File to which to append the report, or null for the standard
+     *  error. */
+    private static String _file;
+    /** Name of the command being traced. */
+    private static String _command;
+    /** Time at which tracing began. */
+    private static long _began;
+    /** Commit cache counts when tracing began. */
+    private static long _commitHits, _commitMisses;
+}
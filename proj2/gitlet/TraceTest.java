@@ -0,0 +1,84 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/** Tests of per-phase command tracing. */
+public class TraceTest {
+
+    @Test
+    public void appendsOneJsonLinePerCommand() throws IOException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        File log = Utils.join(dir, "trace.jsonl");
+        Utils.join(dir, ".gitlet").mkdir();
+        Repository.open(dir);
+        try {
+            for (int i = 0; i < 2; i += 1) {
+                Main.run(new String[] { "--trace=json:" + log, "gc" });
+            }
+        } finally {
+            Repository.open(new File(System.getProperty("user.dir")));
+        }
+        assertFalse(Trace.enabled());
+        List<String> lines =
+            List.of(Utils.readContentsAsString(log).split("\n"));
+        assertEquals(2, lines.size());
+        for (String line : lines) {
+            assertTrue(line.startsWith("{\"command\":\"gc\",\"status\":0,"));
+            assertTrue(line.contains("\"flush\":{\"nanos\":"));
+            assertTrue(line.endsWith("}}}"));
+        }
+        long start = Trace.start();
+        Trace.end(Trace.Phase.HASH, start, 10);
+        assertEquals(0, start);
+    }
+
+    @Test
+    public void batchesAreTracedAsOneCommand() throws IOException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        File log = Utils.join(dir, "trace.jsonl");
+        Utils.join(dir, ".gitlet").mkdir();
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String id;
+        try {
+            Repository.open(dir);
+            Repository.lockForWriting();
+            id = Repository.writeCommit(
+                new Commit("first", new Date(0), List.of(), Map.of()));
+            Repository.writeBranch("master", id);
+            Repository.setCurrentBranch("master");
+            Repository.flush();
+            Utils.writeContents(Utils.join(dir, "script"),
+                                "find first\nfind first\n");
+            System.setOut(new PrintStream(out, true));
+            Main.run(new String[] { "--trace=json:" + log, "batch",
+                                    "script" });
+            Main.run(new String[] { "--trace" });
+        } finally {
+            System.setOut(stdout);
+            Repository.open(new File(System.getProperty("user.dir")));
+        }
+        assertFalse(Trace.enabled());
+        String found = id + System.lineSeparator();
+        assertEquals(found + found + "Please enter a command."
+                     + System.lineSeparator(), out.toString());
+        List<String> lines =
+            List.of(Utils.readContentsAsString(log).split("\n"));
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0),
+                   lines.get(0).startsWith("{\"command\":\"batch\","));
+        assertTrue(lines.get(0),
+                   lines.get(0).matches(".*\"output\":\\{\"nanos\":\\d+,"
+                                        + "\"bytes\":" + 2 * found.length()
+                                        + ",.*"));
+    }
+}
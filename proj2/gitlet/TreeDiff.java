@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/** The differences between two trees, each a map from file name to blob
+ *  id as kept by a Commit: the names present only in the second tree
+ *  (added), those present in both with different blob ids (changed), and
+ *  those present only in the first (removed).  Since blob ids are hashes
+ *  of contents, names with equal ids in both trees are unchanged and need
+ *  no further examination.  The trees are compared in one merge-like pass
+ *  over their names in order.
+ */
+class TreeDiff {
+
+    /** The differences from tree FROM to tree TO. */
+    TreeDiff(SortedMap<String, String> from, SortedMap<String, String> to) {
+        Iterator<Map.Entry<String, String>> a = from.entrySet().iterator();
+        Iterator<Map.Entry<String, String>> b = to.entrySet().iterator();
+        Map.Entry<String, String> x = a.hasNext() ? a.next() : null;
+        Map.Entry<String, String> y = b.hasNext() ? b.next() : null;
+        while (x != null || y != null) {
+            int c = x == null ? 1 : y == null ? -1
+                : x.getKey().compareTo(y.getKey());
+            if (c < 0) {
+                _removed.add(x.getKey());
+            } else if (c > 0) {
+                _added.add(y.getKey());
+            } else if (!x.getValue().equals(y.getValue())) {
+                _changed.add(x.getKey());
+            }
+            if (c <= 0) {
+                x = a.hasNext() ? a.next() : null;
+            }
+            if (c >= 0) {
+                y = b.hasNext() ? b.next() : null;
+            }
+        }
+    }
+
+    /** Return the names, in order, present only in the second tree. */
+    List<String> added() {
+        return Collections.unmodifiableList(_added);
+    }
+
+    /** Return the names, in order, present in both trees with different
+     *  blob ids. */
+    List<String> changed() {
+        return Collections.unmodifiableList(_changed);
+    }
+
+    /** Return the names, in order, present only in the first tree. */
+    List<String> removed() {
+        return Collections.unmodifiableList(_removed);
+    }
+
+    /** Return true iff the two trees are identical. */
+    boolean isEmpty() {
+        return _added.isEmpty() && _changed.isEmpty() && _removed.isEmpty();
+    }
+
+    /** Names only in the second tree. */
+    private final List<String> _added = new ArrayList<>();
+    /** Names in both trees with different ids. */
+    private final List<String> _changed = new ArrayList<>();
+    /** Names only in the first tree. */
+    private final List<String> _removed = new ArrayList<>();
+}
@@ -0,0 +1,42 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/** Tests of differences between commit trees. */
+public class TreeDiffTest {
+
+    /** Return a tree mapping NAMESANDIDS[2k] to NAMESANDIDS[2k+1]. */
+    private static TreeMap<String, String> tree(String... namesAndIds) {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int k = 0; k < namesAndIds.length; k += 2) {
+            result.put(namesAndIds[k], namesAndIds[k + 1]);
+        }
+        return result;
+    }
+
+    @Test
+    public void classifiesNames() {
+        TreeDiff diff = new TreeDiff(tree("a", "1", "b", "2", "d", "4",
+                                          "f", "6"),
+                                     tree("b", "2", "c", "3", "d", "5",
+                                          "g", "7"));
+        assertEquals(List.of("c", "g"), diff.added());
+        assertEquals(List.of("d"), diff.changed());
+        assertEquals(List.of("a", "f"), diff.removed());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    public void emptyAndIdentical() {
+        assertTrue(new TreeDiff(tree(), tree()).isEmpty());
+        assertTrue(new TreeDiff(tree("a", "1"), tree("a", "1")).isEmpty());
+        assertEquals(List.of("a"), new TreeDiff(tree(), tree("a", "1"))
+                     .added());
+        assertEquals(List.of("a"), new TreeDiff(tree("a", "1"), tree())
+                     .removed());
+    }
+}
@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Enumerates the plain files of a working directory and finds their blob
+ *  ids, statting and hashing the files on a fork-join pool.  Results are
+ *  always returned in lexicographic order of file name, however many
+ *  threads are used, so that output built from them is deterministic.
+ *
+ *  The number of threads is taken from the system property
+ *  gitlet.threads, defaulting to the number of available processors.  With
+ *  one thread, all work is done in the calling thread.
+ */
+class TreeScanner {
+
+    /** Name of the system property giving the number of threads. */
+    static final String THREADS_PROPERTY = "gitlet.threads";
+
+    /** Number of files below which a task is not split further. */
+    private static final int SPLIT_THRESHOLD = 64;
+
+    /** A scanner using the number of threads given by gitlet.threads. */
+    TreeScanner() {
+        this(Integer.getInteger(THREADS_PROPERTY,
+                                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** A scanner using THREADS threads (at least one). */
+    TreeScanner(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /** Return the names of all entries in DIR in lexicographic order,
+     *  without statting them.  Returns an empty list if DIR is not a
+     *  directory. */
+    static List<String> list(File dir) {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> entries =
+                 Files.newDirectoryStream(dir.toPath())) {
+            for (Path entry : entries) {
+                names.add(entry.getFileName().toString());
+            }
+        } catch (IOException excp) {
+            return names;
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Return a map from the name of each plain file in DIR to its blob id,
+     *  in order of name, looking up ids in CACHE. */
+    TreeMap<String, String> scan(File dir, StatCache cache) {
+        List<String> names = list(dir);
+        String[] ids = new String[names.size()];
+        if (_threads == 1) {
+            hash(dir, cache, names, ids, 0, ids.length);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(_threads);
+            try {
+                pool.invoke(new HashTask(dir, cache, names, ids, 0,
+                                         ids.length));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int i = 0; i < ids.length; i += 1) {
+            if (ids[i] != null) {
+                result.put(names.get(i), ids[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Set IDS[K] to the blob id of file NAMES[K] in DIR, looked up in
+     *  CACHE, for FROM <= K < TO, in the calling thread.  Entries for names
+     *  that are not plain files are set to null. */
+    private static void hash(File dir, StatCache cache, List<String> names,
+                             String[] ids, int from, int to) {
+        for (int k = from; k < to; k += 1) {
+            String name = names.get(k);
+            ids[k] = cache.blobId(name, new File(dir, name));
+        }
+    }
+
+    /** A task filling in the blob ids of a range of file names. */
+    private static class HashTask extends RecursiveAction {
+
+        /** Serialization version; tasks are never serialized. */
+        private static final long serialVersionUID = 1L;
+
+        /** A task that does what hash(DIR, CACHE, NAMES, IDS, FROM, TO)
+         *  does, splitting the range among the pool's threads. */
+        HashTask(File dir, StatCache cache, List<String> names,
+                 String[] ids, int from, int to) {
+            _dir = dir;
+            _cache = cache;
+            _names = names;
+            _ids = ids;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= SPLIT_THRESHOLD) {
+                hash(_dir, _cache, _names, _ids, _from, _to);
+            } else {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new HashTask(_dir, _cache, _names, _ids, _from, mid),
+                          new HashTask(_dir, _cache, _names, _ids, mid, _to));
+            }
+        }
+
+        /** Directory containing the files. */
+        private final File _dir;
+        /** Cache through which ids are found. */
+        private final StatCache _cache;
+        /** All file names being scanned. */
+        private final List<String> _names;
+        /** Results, parallel to _names. */
+        private final String[] _ids;
+        /** Bounds of the range handled by this task. */
+        private final int _from, _to;
+    }
+
+    /** Number of threads to use. */
+    private final int _threads;
+}
@@ -0,0 +1,53 @@
+package gitlet;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Tests of the parallel working-tree scanner. */
+public class TreeScannerTest {
+
+    @Test
+    public void resultsIndependentOfThreads() throws IOException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        Utils.join(dir, ".gitlet").mkdir();
+        for (int i = 0; i < 500; i += 1) {
+            Utils.writeContents(Utils.join(dir, "file" + i), "contents " + i);
+        }
+        File index = Utils.join(dir, ".gitlet", "index");
+        TreeMap<String, String> serial =
+            new TreeScanner(1).scan(dir, new StatCache(index));
+        TreeMap<String, String> parallel =
+            new TreeScanner(8).scan(dir, new StatCache(index));
+        assertEquals(500, serial.size());
+        assertEquals(serial, parallel);
+        assertEquals(Utils.plainFilenamesIn(dir),
+                     new ArrayList<>(serial.keySet()));
+        assertEquals(Utils.sha1("contents 7"), serial.get("file7"));
+        assertFalse(serial.containsKey(".gitlet"));
+    }
+
+    @Test
+    public void oneThreadHashesInTheCallingThread() throws IOException {
+        File dir = ObjectStoreTest.tempGitletDir();
+        for (int i = 0; i < 500; i += 1) {
+            Utils.writeContents(Utils.join(dir, "file" + i), "contents " + i);
+        }
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        StatCache cache = new StatCache(Utils.join(dir, "index")) {
+            @Override
+            String blobId(String path, File file) {
+                threads.add(Thread.currentThread());
+                return super.blobId(path, file);
+            }
+        };
+        assertEquals(500, new TreeScanner(1).scan(dir, cache).size());
+        assertEquals(Set.of(Thread.currentThread()), threads);
+    }
+}
@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** A group of file writes that become visible, and durable, together.
+ *  Each write goes to a temporary file beside its destination.  On
+ *  commit, all temporary files are forced to disk in one pass, so that a
+ *  command writing many objects waits for the disk once rather than once
+ *  per object; then each is renamed over its destination and the
+ *  affected directories, including the parents of any directories the
+ *  batch created, are forced.  Files written with writeLast (branch
+ *  references and HEAD) are handled in a second phase, after everything
+ *  else is durable, so that a crash at any point leaves every reference
+ *  pointing at complete objects.  Until commit, nothing is visible at the
+ *  destinations, but pending(DEST) gives the temporary file holding the
+ *  pending contents of DEST.
+ */
+class WriteBatch {
+
+    /** Prepare to write CONTENTS (byte arrays and Strings, as for
+     *  Utils.writeContents) to DEST when this batch commits. */
+    void write(File dest, Object... contents) {
+        writeContents(stage(dest, _files), contents);
+    }
+
+    /** Prepare to write CONTENTS to DEST after all files written with
+     *  write are durable. */
+    void writeLast(File dest, Object... contents) {
+        writeContents(stage(dest, _lastFiles), contents);
+    }
+
+    /** Return a temporary file to be filled with the new contents of DEST
+     *  before this batch commits, reusing any already staged for DEST.
+     *  This allows large contents to be streamed. */
+    File stage(File dest) {
+        return stage(dest, _files);
+    }
+
+    /** Return the temporary file holding the pending contents of DEST, or
+     *  null if DEST has not been written in this batch. */
+    File pending(File dest) {
+        File tmp = _files.get(dest);
+        return tmp != null ? tmp : _lastFiles.get(dest);
+    }
+
+    /** Return the destinations of the files written in this batch with
+     *  write or stage, in the order first written. */
+    Set<File> destinations() {
+        return Collections.unmodifiableSet(_files.keySet());
+    }
+
+    /** Return true iff nothing has been written in this batch. */
+    boolean isEmpty() {
+        return _files.isEmpty() && _lastFiles.isEmpty();
+    }
+
+    /** Make all writes in this batch durable and visible, references
+     *  last. */
+    void commit() {
+        install(_files);
+        install(_lastFiles);
+        _files.clear();
+        _lastFiles.clear();
+    }
+
+    /** Discard all writes in this batch. */
+    void abort() {
+        for (Map<File, File> files : List.of(_files, _lastFiles)) {
+            for (File tmp : files.values()) {
+                tmp.delete();
+            }
+            files.clear();
+        }
+        _newDirs.clear();
+    }
+
+    /** Return the temporary file for DEST in FILES, creating it, and any
+     *  missing directories above it, if needed. */
+    private File stage(File dest, Map<File, File> files) {
+        File tmp = files.get(dest);
+        if (tmp == null) {
+            makeDirs(dest.getParentFile());
+            try {
+                tmp = File.createTempFile(".tmp-", "", dest.getParentFile());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            files.put(dest, tmp);
+        }
+        return tmp;
+    }
+
+    /** Create DIR and any missing directories above it, recording each
+     *  one created, so that the entry for it in its parent is forced to
+     *  disk when this batch commits. */
+    private void makeDirs(File dir) {
+        if (dir.isDirectory()) {
+            return;
+        }
+        makeDirs(dir.getAbsoluteFile().getParentFile());
+        if (dir.mkdir()) {
+            _newDirs.add(dir);
+        }
+    }
+
+    /** Force each temporary file in FILES to disk, then rename it over its
+     *  destination and force the destinations' directories, together with
+     *  the parent of each directory this batch created, so that a new
+     *  shard is durable before any reference to an object in it. */
+    private void install(Map<File, File> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        List<File> temps = new ArrayList<>(files.values());
+        temps.parallelStream().forEach(f -> force(f, false));
+        Set<File> dirs = new LinkedHashSet<>();
+        for (Map.Entry<File, File> e : files.entrySet()) {
+            rename(e.getValue(), e.getKey());
+            dirs.add(e.getKey().getParentFile());
+        }
+        for (File dir : _newDirs) {
+            dirs.add(dir.getAbsoluteFile().getParentFile());
+        }
+        _newDirs.clear();
+        for (File dir : dirs) {
+            force(dir, true);
+        }
+    }
+
+    /** Atomically replace DEST with SRC. */
+    static void rename(File src, File dest) {
+        try {
+            try {
+                Files.move(src.toPath(), dest.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(src.toPath(), dest.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Force FILE, a directory if ISDIR, to disk.  Directories cannot be
+     *  opened on some systems; failure to force one is ignored. */
+    static void force(File file, boolean isDir) {
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            if (!isDir) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Temporary files by destination, for ordinary writes. */
+    private final Map<File, File> _files = new LinkedHashMap<>();
+    /** Temporary files by destination, for writes made visible last. */
+    private final Map<File, File> _lastFiles = new LinkedHashMap<>();
+    /** Directories created by this batch whose entries in their parents
+     *  have not yet been forced to disk. */
+    private final Set<File> _newDirs = new LinkedHashSet<>();
+}
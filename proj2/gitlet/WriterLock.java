@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** The lock that a command must hold to change a repository: an exclusive
+ *  lock on the file .gitlet/lock, held from before the command reads the
+ *  Refs snapshot it will replace until after it has replaced it.  Only
+ *  writers take it; readers never do, and so never wait.  Derived files
+ *  that any command may extend (the commit graph and message index) are
+ *  saved only under the lock, which a reader takes only if it is free.
+ *
+ *  Since an operating-system file lock is held by a whole process, threads
+ *  of one process (a Daemon, or a test) are also excluded from one another
+ *  by an in-process lock per lock file.  A thread that already holds the
+ *  lock gets a handle whose release does nothing: opening, and then
+ *  closing, a second channel on the file would release the process's
+ *  file lock while the outer holder still relies on it.
+ */
+class WriterLock {
+
+    /** Acquire the lock in the file FILE, waiting while another writer
+     *  holds it. */
+    static WriterLock acquire(File file) {
+        ReentrantLock local = local(file);
+        if (local.isHeldByCurrentThread()) {
+            return new WriterLock(null, null, null);
+        }
+        local.lock();
+        FileChannel ch = null;
+        try {
+            ch = open(file);
+            return new WriterLock(local, ch, ch.lock());
+        } catch (IOException | OverlappingFileLockException excp) {
+            closeQuietly(ch);
+            local.unlock();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Acquire the lock in the file FILE if no other writer holds it, and
+     *  otherwise return null at once. */
+    static WriterLock tryAcquire(File file) {
+        ReentrantLock local = local(file);
+        if (local.isHeldByCurrentThread()) {
+            return new WriterLock(null, null, null);
+        }
+        if (!local.tryLock()) {
+            return null;
+        }
+        FileLock lock = null;
+        FileChannel ch = null;
+        try {
+            ch = open(file);
+            lock = ch.tryLock();
+        } catch (IOException | OverlappingFileLockException excp) {
+            lock = null;
+        }
+        if (lock == null) {
+            closeQuietly(ch);
+            local.unlock();
+            return null;
+        }
+        return new WriterLock(local, ch, lock);
+    }
+
+    /** Release this lock, unless it was taken by a thread already holding
+     *  it. */
+    void release() {
+        if (_channel != null && _channel.isOpen()) {
+            try {
+                _lock.release();
+            } catch (IOException excp) {
+                /* Closing the channel releases it anyway. */
+            }
+            closeQuietly(_channel);
+            _local.unlock();
+        }
+    }
+
+    /** A held lock: LOCAL within this process and LOCK, on CHANNEL,
+     *  between processes, or all null for a nested acquisition. */
+    private WriterLock(ReentrantLock local, FileChannel channel,
+                       FileLock lock) {
+        _local = local;
+        _channel = channel;
+        _lock = lock;
+    }
+
+    /** Return the in-process lock for the lock file FILE. */
+    private static ReentrantLock local(File file) {
+        return LOCAL.computeIfAbsent(file.getAbsolutePath(),
+                                     k -> new ReentrantLock());
+    }
+
+    /** Return a channel on the lock file FILE, creating it if needed. */
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE);
+    }
+
+    /** Close CH, if not null, ignoring errors. */
+    private static void closeQuietly(FileChannel ch) {
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException excp) {
+                /* Nothing more can be done. */
+            }
+        }
+    }
+
+    /** In-process locks by absolute lock-file path. */
+    private static final ConcurrentHashMap<String, ReentrantLock> LOCAL =
+        new ConcurrentHashMap<>();
+
+    /** The in-process lock held. */
+    private final ReentrantLock _local;
+    /** The open lock file. */
+    private final FileChannel _channel;
+    /** The lock held on it. */
+    private final FileLock _lock;
+}
@@ -0,0 +1,56 @@
+#!/usr/bin/env python3
+"""Usage: python3 gitlet_client.py [--socket=SOCKET] ARG...
+
+Run the Gitlet command ARG... in the current directory by sending it to a
+running daemon (java gitlet.Daemon [SOCKET]) rather than starting a JVM.
+The command's standard output, standard error and exit status are passed
+through unchanged.  SOCKET defaults to $GITLET_SOCKET, or else to
+gitlet-daemon.sock in the temporary directory.  See gitlet/Daemon.java for
+the protocol."""
+
+import os, socket, struct, sys, tempfile
+
+DEFAULT_SOCKET = "gitlet-daemon.sock"
+
+def socket_path(argv):
+    """Return the socket named by an initial --socket= option in ARGV,
+    removing it, or else the default."""
+    if argv and argv[0].startswith("--socket="):
+        return argv.pop(0)[len("--socket="):]
+    return os.environ.get("GITLET_SOCKET",
+                          os.path.join(tempfile.gettempdir(), DEFAULT_SOCKET))
+
+def read_exactly(conn, n):
+    """Return the next N bytes received on CONN."""
+    data = b""
+    while len(data) < n:
+        chunk = conn.recv(n - len(data))
+        if not chunk:
+            raise EOFError("daemon closed the connection")
+        data += chunk
+    return data
+
+def run(path, cwd, args):
+    """Run the command ARGS in directory CWD on the daemon at PATH,
+    copying its output to ours, and return its exit status."""
+    conn = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+    try:
+        conn.connect(path)
+        request = [s.encode("utf-8") for s in [cwd] + args]
+        conn.sendall(struct.pack(">i", len(request))
+                     + b"".join(struct.pack(">i", len(s)) + s
+                                for s in request))
+        streams = { 1: sys.stdout.buffer, 2: sys.stderr.buffer }
+        while True:
+            channel, n = struct.unpack(">bi", read_exactly(conn, 5))
+            if channel == 0:
+                return n
+            streams[channel].write(read_exactly(conn, n))
+            streams[channel].flush()
+    finally:
+        conn.close()
+
+if __name__ == "__main__":
+    argv = sys.argv[1:]
+    path = socket_path(argv)
+    sys.exit(run(path, os.getcwd(), argv))
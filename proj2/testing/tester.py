@@ -24,6 +24,11 @@ Usage: python3 tester.py OPTIONS TEST.in ...
        --tolerance=N  Set the maximum allowed edit distance between program
                       output and expected output to N (default 3).
        --verbose      Print extra information about execution.
+       --daemon=SOCK  Run commands on the Gitlet daemon listening on SOCK
+                      (started with java gitlet.Daemon SOCK) rather than in
+                      a fresh JVM each.
+       --trace=FILE   Append a JSON line timing each gitlet command, by
+                      phase, to FILE (see gitlet/Trace.java).
 """
 
 USAGE = SHORT_USAGE + """\
@@ -90,6 +95,9 @@ TIMEOUT = 10
 
 JAVA_COMMAND = "java -ea"
 GITLET_CLASS = "gitlet.Main"
+DAEMON_SOCKET = None
+TRACE_FILE = None
+CLIENT = join(dirname(abspath(__file__)), "gitlet_client.py")
 JVM_OPTIONS = "-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=5005"
 
 DEBUG = False
@@ -161,7 +169,12 @@ def doExecute(cmnd, dir, timeout, line_num):
     out = ""
     try:
         chdir(dir)
+        if TRACE_FILE is not None:
+            cmnd = "--trace=json:{} {}".format(TRACE_FILE, cmnd)
         full_cmnd = "{} {} {}".format(JAVA_COMMAND, GITLET_CLASS, cmnd)
+        if DAEMON_SOCKET is not None:
+            full_cmnd = "{} {} --socket={} {}".format(sys.executable, CLIENT,
+                                                     DAEMON_SOCKET, cmnd)
         skip_first_line = False
 
         if DEBUG:
@@ -400,7 +413,7 @@ if __name__ == "__main__":
         opts, files = \
             getopt(sys.argv[1:], '',
                    ['show=', 'keep', 'progdir=', 'verbose', 'src=',
-                    'tolerance=', 'debug'])
+                    'tolerance=', 'debug', 'daemon=', 'trace='])
         for opt, val in opts:
             if opt == '--show':
                 val = val.lower()
@@ -422,6 +435,10 @@ if __name__ == "__main__":
                 output_tolerance = int(val)
             elif opt == "--debug":
                 DEBUG = True
+            elif opt == "--daemon":
+                DAEMON_SOCKET = abspath(val)
+            elif opt == "--trace":
+                TRACE_FILE = abspath(val)
         if prog_dir is None:
             prog_dir = abspath(getcwd())
             k = 10